@@ -1,11 +1,16 @@
 package com.sinuxvr.sample;
 
 import android.os.Bundle;
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.backends.android.AndroidApplication;
 import com.badlogic.gdx.backends.android.AndroidApplicationConfiguration;
+import java.io.IOException;
 
 public class AndroidLauncher extends AndroidApplication {
 
+	/** Записывать ли показания датчиков в трассу для воспроизведения на десктопе */
+	private static final boolean RECORD_SENSOR_TRACE = false;
+
 	private VRSensorManagerAndroid vrSensorManagerAndroid;    // Менеджер датчиков
 
 	/** Инициализация приложения */
@@ -19,7 +24,8 @@ public class AndroidLauncher extends AndroidApplication {
 		config.useAccelerometer = false;
 		config.useGyroscope = false;
 		config.useCompass = false;
-		config.numSamples = 2;
+		// Сглаживание буфера экрана не касается сцены, если глаза рисуются во внеэкранные буферы
+		config.numSamples = GdxVR.OFFSCREEN_EYES ? 0 : 2;
 
 		// Создание своего листенера данных с датчиков (поэтому useAccelerometer и т.п. не нужны)
 		vrSensorManagerAndroid = new VRSensorManagerAndroid(this.getContext());
@@ -30,6 +36,7 @@ public class AndroidLauncher extends AndroidApplication {
 	@Override
 	public void onPause() {
 		vrSensorManagerAndroid.endTracking();
+		vrSensorManagerAndroid.stopRecording();
 		super.onPause();
 	}
 
@@ -38,5 +45,13 @@ public class AndroidLauncher extends AndroidApplication {
 	public void onResume() {
 		super.onResume();
 		vrSensorManagerAndroid.startTracking();
+		if (RECORD_SENSOR_TRACE) {
+			try {
+				// Каждая сессия (до паузы) пишется в свой файл
+				vrSensorManagerAndroid.startRecording(SensorTraceWriter.sessionFile(getContext().getExternalFilesDir(null)));
+			} catch (IOException e) {
+				Gdx.app.error("AndroidLauncher", "Sensor trace recording failed", e);
+			}
+		}
 	}
 }
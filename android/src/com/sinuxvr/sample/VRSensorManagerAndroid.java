@@ -5,44 +5,40 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Quaternion;
-import com.badlogic.gdx.math.Vector2;
-import com.badlogic.gdx.math.Vector3;
+import java.io.File;
+import java.io.IOException;
 
-/** Реализация листенера датчиков под Android. Вычисляет и предоставляет готовый кватернион
- * ориентации устройства в пространстве для камеры в зависимости от имеющихся датчиков в телефоне.
- * Поддерживаемые варианты: акселерометр, акселерометр + магнитометр, гироскоп + акселерометр,
- * гироскоп + акселерометр + магнитометр */
+/** Реализация листенера датчиков под Android. Складывает показания датчиков в SensorFusion,
+ * который вычисляет готовый кватернион ориентации устройства в пространстве для камеры
+ * в зависимости от имеющихся датчиков в телефоне.
+ * Листенеры работают в отдельном потоке, где ориентация вычисляется с частотой датчика
+ * и публикуется снимками через PoseBuffer - поток рендера только читает готовый снимок */
 
 class VRSensorManagerAndroid implements VRSensorManager {
 
-    /** Перечень режимов работы в зависимости от наличия датчиков */
-    private enum VRControlMode { ACC_ONLY, ACC_GYRO, ACC_MAG, ACC_GYRO_MAG }
-
     private SensorManager sensorManager;                // Сенсорный менеджер
     private SensorEventListener accelerometerListener;  // Листенер акселерометра
     private SensorEventListener gyroscopeListener;      // Листенер гироскопа
     private SensorEventListener compassListener;        // Листенер магнитометра
     private Context context;                            // Контекст приложения
 
-    /** Массивы для получения данных */
-    private final float[] accelerometerValues = new float[3];   // Акселерометр
-    private final float[] gyroscopeValues = new float[3];       // Гироскоп
-    private final float[] magneticFieldValues = new float[3];   // Магнитометр
-    private final boolean gyroAvailable;                        // Флаг наличия гироскопа
-    private final boolean magAvailable;                         // Флаг наличия магнитометра
-    private volatile boolean useDC;                             // Использовать ли магнитометр
+    private final boolean gyroAvailable;                // Флаг наличия гироскопа
+    private final boolean magAvailable;                 // Флаг наличия магнитометра
+    private final SensorFusion sensorFusion;            // Вычисление ориентации
+    private long clockOffset = Long.MAX_VALUE;          // Сдвиг меток времени датчиков к System.nanoTime() (поток датчиков)
+    private volatile SensorTraceWriter traceWriter;     // Запись трассы датчиков (null - не пишется)
 
-    /** Кватернионы и векторы для нахождения ориентации, итоговый результат в headOrientation */
-    private final Quaternion gyroQuaternion;
-    private final Quaternion deltaQuaternion;
-    private final Vector3 accInVector;
-    private final Vector3 accInVectorTilt;
-    private final Vector3 magInVector;
-    private final Quaternion headQuaternion;
-    private VRControlMode vrControlMode;
+    /** Поток вычисления ориентации и передача ее в поток рендера */
+    private HandlerThread fusionThread;                 // Поток листенеров и SensorFusion
+    private final PoseBuffer poseBuffer = new PoseBuffer();
+    private long lastFusionNanos;                       // Момент предыдущего шага вычисления (поток датчиков)
+    private final PoseSnapshot snapshot = new PoseSnapshot();       // Снимок для getHeadQuaternion (поток рендера)
+    private final Quaternion headQuaternion = new Quaternion();     // Результат getHeadQuaternion (поток рендера)
 
     /** Конструктор */
     VRSensorManagerAndroid(Context context) {
@@ -53,24 +49,10 @@ class VRSensorManagerAndroid implements VRSensorManager {
         // Проверка наличия датчиков (акселерометр есть всегда 100%, наверное)
         magAvailable = (sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD) != null);
         gyroAvailable = (sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE) != null);
-        useDC = false;
-
-        // Определение режима работы в зависимости от имеющихся датчиков
-        vrControlMode = VRControlMode.ACC_ONLY;
-        if (gyroAvailable) vrControlMode = VRControlMode.ACC_GYRO;
-        if (magAvailable) vrControlMode = VRControlMode.ACC_MAG;
-        if (gyroAvailable && magAvailable) vrControlMode = VRControlMode.ACC_GYRO_MAG;
-
-        // Инициализация кватернионов
-        gyroQuaternion = new Quaternion(0, 0, 0, 1);
-        deltaQuaternion = new Quaternion(0, 0, 0, 1);
-        accInVector = new Vector3(0, 10, 0);
-        accInVectorTilt = new Vector3(0, 0, 0);
-        magInVector = new Vector3(1, 0, 0);
-        headQuaternion = new Quaternion(0, 0, 0, 1);
 
-        // Регистрация датчиков
-        startTracking();
+        // Режим работы определяется по имеющимся датчикам
+        sensorFusion = new SensorFusion(gyroAvailable, magAvailable);
+        // Датчики регистрируются в startTracking() из onResume() активности
     }
 
     /** Возврат наличия гироскопа */
@@ -85,27 +67,35 @@ class VRSensorManagerAndroid implements VRSensorManager {
         return magAvailable;
     }
 
-    /** Старт трекинга - регистрация листенеров */
+    /** Старт трекинга - запуск потока вычисления ориентации и регистрация листенеров в нем
+     * Повторный вызов без endTracking() ничего не делает: у колец SensorFusion и PoseBuffer
+     * должен быть ровно один поток-писатель */
     @Override
     public void startTracking() {
+        if (fusionThread != null) return;
+        fusionThread = new HandlerThread("VRSensorFusion", Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        fusionThread.start();
+        Handler handler = new Handler(fusionThread.getLooper());
+        lastFusionNanos = 0;
+
         // Акселерометр инициализируется при любом раскладе
         sensorManager = (SensorManager)context.getSystemService(Context.SENSOR_SERVICE);
         Sensor accelerometer = sensorManager.getSensorList(Sensor.TYPE_ACCELEROMETER).get(0);
-        accelerometerListener = new SensorListener(this.accelerometerValues, this.magneticFieldValues, this.gyroscopeValues);
-        sensorManager.registerListener(accelerometerListener, accelerometer, SensorManager.SENSOR_DELAY_GAME);
+        accelerometerListener = new SensorListener(sensorFusion);
+        sensorManager.registerListener(accelerometerListener, accelerometer, SensorManager.SENSOR_DELAY_GAME, handler);
         // Магнитометр
         if (magAvailable) {
             sensorManager = (SensorManager)context.getSystemService(Context.SENSOR_SERVICE);
             Sensor compass = sensorManager.getSensorList(Sensor.TYPE_MAGNETIC_FIELD).get(0);
-            compassListener = new SensorListener(this.accelerometerValues, this.magneticFieldValues, this.gyroscopeValues);
-            sensorManager.registerListener(compassListener, compass, SensorManager.SENSOR_DELAY_GAME);
+            compassListener = new SensorListener(sensorFusion);
+            sensorManager.registerListener(compassListener, compass, SensorManager.SENSOR_DELAY_GAME, handler);
         }
         // Гироскоп
         if (gyroAvailable) {
             sensorManager = (SensorManager)context.getSystemService(Context.SENSOR_SERVICE);
             Sensor gyroscope = sensorManager.getSensorList(Sensor.TYPE_GYROSCOPE).get(0);
-            gyroscopeListener = new SensorListener(this.gyroscopeValues, this.magneticFieldValues, this.gyroscopeValues);
-            sensorManager.registerListener(gyroscopeListener, gyroscope, SensorManager.SENSOR_DELAY_GAME);
+            gyroscopeListener = new SensorListener(sensorFusion);
+            sensorManager.registerListener(gyroscopeListener, gyroscope, SensorManager.SENSOR_DELAY_GAME, handler);
         }
     }
 
@@ -127,143 +117,158 @@ class VRSensorManagerAndroid implements VRSensorManager {
             }
             sensorManager = null;
         }
+        // Дожидаемся завершения потока, чтобы при следующем старте SensorFusion не трогали два потока сразу
+        if (fusionThread != null) {
+            fusionThread.quit();
+            try {
+                fusionThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            fusionThread = null;
+        }
     }
 
     /** Включение-выключение использования магнитометра на лету */
     @Override
     public void useDriftCorrection(boolean useDC) {
-        // Реально листенер магнитометра не отключается, просто игнорируем его при вычислениях
-        this.useDC = useDC;
+        sensorFusion.useDriftCorrection(useDC);
     }
 
-    /** Вычисление и возврат кватерниона ориентации */
+    /** Включение-выключение интегрирования гироскопа по меткам времени показаний */
     @Override
-    public synchronized Quaternion getHeadQuaternion() {
-        // Выбираем последовательность действий в зависимости от режима управления
-        switch (vrControlMode) {
-            // Управление одним акселерометром
-            case ACC_ONLY: updateAccData(0.1f);
-                // Вращение по Yaw наклонами головы из стороны в сторону (как во всяких гонках)
-                headQuaternion.setFromAxisRad(0, 1, 0, -MathUtils.sin(accelerometerValues[0] / 200f)).mul(gyroQuaternion).nor();
-                gyroQuaternion.set(headQuaternion);
-                break;
+    public void useTimestampIntegration(boolean use) {
+        sensorFusion.useTimestampIntegration(use);
+    }
 
-            // Акселерометр + магнитометр (если в телефоне стоит вменяемый компас, то данная комбинация
-            // ведет себя почти как гироскоп, получается этакая эмуляция гиро)
-            case ACC_MAG: updateAccData(0.2f);
-                if (!useDC) {
-                    headQuaternion.setFromAxisRad(0, 1, 0, -MathUtils.sin(accelerometerValues[0] / 200f)).mul(gyroQuaternion).nor();
-                    gyroQuaternion.set(headQuaternion);
-                } else updateMagData(1f, 0.05f);
-                break;
+    /** Выбор алгоритма вычисления ориентации (применяется потоком датчиков на следующем шаге) */
+    @Override
+    public boolean setOrientationFilter(OrientationFilter.Type type) {
+        return sensorFusion.setFilter(type);
+    }
 
-            // Гироскоп + акселерометр
-            case ACC_GYRO: updateGyroData(0.1f);
-                updateAccData(0.02f);
-                break;
+    /** Начало записи показаний датчиков в файл трассы (существующий файл перезаписывается)
+     * @param file - файл трассы для VRSensorManagerReplay (обычно SensorTraceWriter.sessionFile()) */
+    void startRecording(File file) throws IOException {
+        stopRecording();
+        traceWriter = new SensorTraceWriter(file, gyroAvailable, magAvailable);
+    }
 
-            // Все три датчика - must have, но только если компас откалиброван
-            case ACC_GYRO_MAG: float dQLen = updateGyroData(0.1f);
-                updateAccData(0.02f);
-                if (useDC) updateMagData(dQLen, 0.005f);
+    /** Остановка записи трассы */
+    void stopRecording() {
+        SensorTraceWriter writer = traceWriter;
+        if (writer == null) return;
+        traceWriter = null;
+        // Листенер мог еще не закончить запись, поэтому закрываем под тем же монитором
+        synchronized (writer) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                Gdx.app.error("VRSensorManager", "Sensor trace close failed", e);
+            }
         }
-
-        return headQuaternion;
     }
 
-    /** Логика определения ориентации
-     * Интегрирование показаний гироскопа в кватернион
-     * @param driftThreshold - порог для отсечения дрифта покоя
-     * @return - длина кватерниона deltaQuaternion */
-    private synchronized float updateGyroData(float driftThreshold) {
-        float wX = gyroscopeValues[0];
-        float wY = gyroscopeValues[1];
-        float wZ = gyroscopeValues[2];
-
-        // Интегрирование показаний гироскопа
-        float l = Vector3.len(wX, wY, wZ);
-        float dtl2 = Gdx.graphics.getDeltaTime() * l * 0.5f;
-        if (l > driftThreshold) {
-            float sinVal = MathUtils.sin(dtl2) / l;
-            deltaQuaternion.set(sinVal * wX, sinVal * wY, sinVal * wZ, MathUtils.cos(dtl2));
-        } else deltaQuaternion.set(0, 0, 0, 1);
-        gyroQuaternion.mul(deltaQuaternion);
-        return l;
+    /** Число показаний, отброшенных из-за переполнения кольцевых буферов */
+    long getDroppedCount() {
+        return sensorFusion.getDroppedCount();
     }
 
-    /** Коррекция Tilt при помощи акселерометра
-     * @param filterAlpha - коэффициент фильтрации */
-    private synchronized void updateAccData(float filterAlpha) {
-        // Преобразование значений акселерометра в инерциальные координаты
-        accInVector.set(accelerometerValues[0], accelerometerValues[1], accelerometerValues[2]);
-        gyroQuaternion.transform(accInVector);
-        accInVector.nor();
-
-        // Вычисление нормализованной оси вращения между accInVector и UP(0, 1, 0)
-        float xzLen = 1f / Vector2.len(accInVector.x, accInVector.z);
-        accInVectorTilt.set(-accInVector.z * xzLen, 0, accInVector.x * xzLen);
-
-        // Вычисление угла между вектором accInVector и UP(0, 1, 0)
-        float fi = (float)Math.acos(accInVector.y);
+    /** Число показаний, замененных более свежими до того, как их успели использовать */
+    long getOverwrittenCount() {
+        return sensorFusion.getOverwrittenCount();
+    }
 
-        // Получение Tilt-скорректированного кватерниона по данным акселерометра
-        headQuaternion.setFromAxisRad(accInVectorTilt, filterAlpha * fi).mul(gyroQuaternion).nor();
-        gyroQuaternion.set(headQuaternion);
+    /** Копирование последнего снимка ориентации, опубликованного потоком датчиков */
+    @Override
+    public PoseSnapshot getPoseSnapshot(PoseSnapshot out) {
+        return out.set(poseBuffer.read());
     }
 
-    /** Коррекция угла по Yaw магнитометром
-     * @param dQLen - длина кватерниона deltaQuaternion
-     * @param filterAlpha - коэффициент фильтрации
-     * Коррекция производится только в движении */
-    private synchronized void updateMagData(float dQLen, float filterAlpha) {
-        // Проверка длины deltaQuaternion для коррекции только в движении
-        if (dQLen < 0.1f) return;
-        // Преобразование значений магнитометра в инерциальные координаты
-        magInVector.set(magneticFieldValues[0], magneticFieldValues[1], magneticFieldValues[2]);
-        gyroQuaternion.transform(magInVector);
+    /** Кватернион ориентации из последнего снимка */
+    @Override
+    public Quaternion getHeadQuaternion() {
+        return getPoseSnapshot(snapshot).getOrientation(headQuaternion);
+    }
 
-        // Вычисление корректирующего Yaw угла с магнитометра
-        float theta = MathUtils.atan2(magInVector.z, magInVector.x);
+    /** Прогноз ориентации последнего снимка на момент вывода кадра */
+    @Override
+    public Quaternion getPredictedHeadQuaternion(long targetNanos) {
+        return getPoseSnapshot(snapshot).predict(targetNanos, headQuaternion);
+    }
 
-        // Коррекция ориентации
-        headQuaternion.setFromAxisRad(0, 1, 0, filterAlpha * theta).mul(gyroQuaternion).nor();
-        gyroQuaternion.set(headQuaternion);
+    /** Шаг вычисления ориентации по накопившимся показаниям и публикация снимка (поток датчиков) */
+    private void fuse() {
+        long now = System.nanoTime();
+        float deltaTime = (lastFusionNanos == 0) ? 0 : (now - lastFusionNanos) * 1e-9f;
+        lastFusionNanos = now;
+        sensorFusion.update(deltaTime);
+        sensorFusion.fillSnapshot(poseBuffer.beginWrite());
+        poseBuffer.publish();
+        if (Telemetry.ENABLED) Telemetry.since(Telemetry.FUSION_STEP, now);
     }
 
-    /** Своя имплементация класса сенсорного листенера (копипаст из AndroidInput) */
+    /** Своя имплементация класса сенсорного листенера (копипаст из AndroidInput)
+     * Показания складываются в кольцевые буферы SensorFusion. Шаг вычисления ориентации делается
+     * по приходу показания гироскопа (без него - акселерометра), остальные показания ждут в кольцах */
     private class SensorListener implements SensorEventListener {
-        final float[] accelerometerValues;
-        final float[] magneticFieldValues;
-        final float[] gyroscopeValues;
+        final SensorFusion sensorFusion;
 
-        SensorListener (float[] accelerometerValues, float[] magneticFieldValues, float[] gyroscopeValues) {
-            this.accelerometerValues = accelerometerValues;
-            this.magneticFieldValues = magneticFieldValues;
-            this.gyroscopeValues = gyroscopeValues;
+        SensorListener (SensorFusion sensorFusion) {
+            this.sensorFusion = sensorFusion;
         }
 
         // Смена точности (нас не интересует)
         @Override
         public void onAccuracyChanged (Sensor arg0, int arg1) { }
 
-        // Получение данных от датчиков
+        // Получение данных от датчиков (оси переводятся в систему координат камеры)
         @Override
-        public synchronized void onSensorChanged (SensorEvent event) {
-            if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-                accelerometerValues[0] = -event.values[1];
-                accelerometerValues[1] = event.values[0];
-                accelerometerValues[2] = event.values[2];
-            }
-            if (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD) {
-                magneticFieldValues[0] = -event.values[1];
-                magneticFieldValues[1] = event.values[0];
-                magneticFieldValues[2] = event.values[2];
+        public void onSensorChanged (SensorEvent event) {
+            // Часы меток времени датчиков зависят от устройства, поэтому переводим их в System.nanoTime():
+            // минимальная наблюдаемая разница соответствует событию, доставленному без задержки
+            long offset = System.nanoTime() - event.timestamp;
+            if (offset < clockOffset) clockOffset = offset;
+            long timestamp = event.timestamp + clockOffset;
+            float x = -event.values[1];
+            float y = event.values[0];
+            float z = event.values[2];
+
+            byte traceType;
+            boolean drives;
+            switch (event.sensor.getType()) {
+                case Sensor.TYPE_ACCELEROMETER:
+                    sensorFusion.accelerometerRing.offer(timestamp, x, y, z);
+                    traceType = SensorTraceWriter.TYPE_ACCELEROMETER;
+                    drives = !gyroAvailable;
+                    break;
+                case Sensor.TYPE_MAGNETIC_FIELD:
+                    sensorFusion.magneticFieldRing.offer(timestamp, x, y, z);
+                    traceType = SensorTraceWriter.TYPE_MAGNETIC_FIELD;
+                    drives = false;
+                    break;
+                case Sensor.TYPE_GYROSCOPE:
+                    sensorFusion.gyroscopeRing.offer(timestamp, x, y, z);
+                    traceType = SensorTraceWriter.TYPE_GYROSCOPE;
+                    drives = true;
+                    break;
+                default: return;
             }
-            if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE) {
-                gyroscopeValues[0] = -event.values[1];
-                gyroscopeValues[1] = event.values[0];
-                gyroscopeValues[2] = event.values[2];
+            if (drives) fuse();
+
+            // Запись трассы (монитор захватывается только во время записи)
+            SensorTraceWriter writer = traceWriter;
+            if (writer != null) {
+                synchronized (writer) {
+                    if (writer != traceWriter) return;
+                    try {
+                        writer.write(traceType, timestamp, x, y, z);
+                    } catch (IOException e) {
+                        traceWriter = null;
+                        Gdx.app.error("VRSensorManager", "Sensor trace write failed, recording stopped", e);
+                    }
+                }
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,44 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Стоимость VRCamera.update() - построение матриц обоих глаз по готовой ориентации,
+ * в сравнении с прежним способом (LegacyStereoView) */
+
+@State(Scope.Thread)
+public class CameraBenchmark {
+
+    private InMemorySensorSource source;
+    private VRCamera vrCamera;
+    private LegacyStereoView legacy;
+
+    @Setup
+    public void setup() {
+        // Matrix4.mul реализован нативно
+        GdxNativesLoader.load();
+        source = new InMemorySensorSource();
+        GdxVR.vrSensorManager = source;
+        vrCamera = new VRCamera(90, 0.4f, 0.1f, 30f, 1920, 1080);
+        vrCamera.setPosition(-1.7f, 3f, 3f);
+        legacy = new LegacyStereoView(0.4f, vrCamera.getPosition());
+    }
+
+    @Benchmark
+    public Matrix4 update() {
+        vrCamera.update();
+        return vrCamera.getRightCam().combined;
+    }
+
+    @Benchmark
+    public Matrix4 updateLegacy() {
+        Quaternion q = source.getHeadQuaternion();
+        legacy.update(q, vrCamera.getLeftCam(), vrCamera.getRightCam());
+        return vrCamera.getRightCam().combined;
+    }
+}
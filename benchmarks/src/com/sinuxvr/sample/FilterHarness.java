@@ -0,0 +1,175 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Quaternion;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/** Сравнение фильтров ориентации: стоимость шага и ошибка ориентации
+ * Показания подаются в SensorFusion так же, как в потоке датчиков на Android: шаг вычисления
+ * на каждое показание гироскопа (без него - акселерометра). На синтетической трассе ошибка
+ * считается относительно истинной ориентации, на записанной - относительно комплементарного фильтра.
+ * Запуск: gradlew benchmarks:filterHarness [-Ptrace=путь/к/sensors.trace] */
+
+public class FilterHarness {
+    /** Начало трассы, не учитываемое в ошибке (схождение фильтров), с */
+    private static final float SETTLE_SECONDS = 5;
+    /** Число прогонов для замера времени (берется лучший) */
+    private static final int TIMING_RUNS = 7;
+
+    private final int count;
+    private final byte[] types;
+    private final long[] timestamps;
+    private final float[] values;
+    private final boolean gyroAvailable;
+    private final boolean magAvailable;
+    private final SyntheticMotion truth;        // null - записанная трасса
+    private Quaternion[] reference;             // Ориентации эталонного фильтра (записанная трасса)
+
+    private FilterHarness(SyntheticMotion motion) {
+        count = motion.count;
+        types = motion.types;
+        timestamps = motion.timestamps;
+        values = motion.values;
+        gyroAvailable = magAvailable = true;
+        truth = motion;
+    }
+
+    private FilterHarness(File traceFile) throws IOException {
+        SensorTraceReader reader = new SensorTraceReader(traceFile);
+        try {
+            count = (int)Math.min(reader.getRecordCount(), Integer.MAX_VALUE / 3);
+            types = new byte[count];
+            timestamps = new long[count];
+            values = new float[count * 3];
+            SensorSample sample = new SensorSample();
+            for (int i = 0; i < count; i++) {
+                types[i] = reader.next(sample);
+                timestamps[i] = sample.timestamp;
+                values[i * 3] = sample.x;
+                values[i * 3 + 1] = sample.y;
+                values[i * 3 + 2] = sample.z;
+            }
+            gyroAvailable = reader.isGyroAvailable();
+            magAvailable = reader.isMagAvailable();
+        } finally {
+            reader.close();
+        }
+        truth = null;
+    }
+
+    public static void main(String[] args) throws IOException {
+        FilterHarness harness = args.length > 0
+                ? new FilterHarness(new File(args[0]))
+                : new FilterHarness(new SyntheticMotion(120, 42));
+        harness.run();
+    }
+
+    private void run() {
+        System.out.println(truth != null
+                ? "Synthetic trace, error vs ground truth"
+                : "Recorded trace, error vs COMPLEMENTARY (no ground truth)");
+        System.out.println(String.format(Locale.US, "%d samples, gyro %b, mag %b", count, gyroAvailable, magAvailable));
+        System.out.println(String.format(Locale.US, "%-18s %10s %12s %10s %10s %10s",
+                "filter", "ns/step", "ns/sample", "mean deg", "rms deg", "max deg"));
+        // Прогрев JIT всеми фильтрами, чтобы первый в таблице не платил за компиляцию общего кода
+        for (int r = 0; r < TIMING_RUNS; r++) {
+            for (OrientationFilter.Type type : OrientationFilter.Type.values()) {
+                if (new SensorFusion(gyroAvailable, magAvailable).setFilter(type)) replay(type, magAvailable, null);
+            }
+        }
+
+        for (OrientationFilter.Type type : OrientationFilter.Type.values()) {
+            for (int drift = 1; drift >= 0; drift--) {
+                boolean useMag = drift == 1;
+                if (useMag && !magAvailable) continue;
+                String name = type + (useMag ? "+MAG" : "");
+                if (!new SensorFusion(gyroAvailable, magAvailable).setFilter(type)) {
+                    System.out.println(String.format(Locale.US, "%-18s unsupported by trace sensors", name));
+                    continue;
+                }
+
+                long best = Long.MAX_VALUE;
+                int steps = 0;
+                for (int r = 0; r < TIMING_RUNS; r++) {
+                    long start = System.nanoTime();
+                    steps = replay(type, useMag, null);
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                double[] error = new double[3];
+                replay(type, useMag, error);
+                System.out.println(String.format(Locale.US, "%-18s %10.1f %12.1f %10.3f %10.3f %10.3f",
+                        name, (double)best / steps, (double)best / count, error[0], error[1], error[2]));
+            }
+        }
+    }
+
+    /** Прогон трассы через SensorFusion с заданным фильтром
+     * @param error - null - только замер времени, иначе средняя, среднеквадратичная и максимальная ошибка (град)
+     * @return число шагов вычисления */
+    private int replay(OrientationFilter.Type type, boolean useMag, double[] error) {
+        SensorFusion fusion = new SensorFusion(gyroAvailable, magAvailable);
+        fusion.setFilter(type);
+        fusion.useDriftCorrection(useMag);
+        fusion.useTimestampIntegration(true);
+        boolean recordReference = error != null && truth == null && type == OrientationFilter.Type.COMPLEMENTARY && useMag == magAvailable;
+        if (recordReference) reference = new Quaternion[count];
+
+        Quaternion expected = new Quaternion();
+        long settle = timestamps.length > 0 ? timestamps[0] + (long)(SETTLE_SECONDS * 1e9f) : 0;
+        double sum = 0, sumSq = 0, max = 0;
+        int measured = 0, steps = 0;
+        long lastStep = 0;
+        for (int i = 0; i < count; i++) {
+            long ts = timestamps[i];
+            float x = values[i * 3], y = values[i * 3 + 1], z = values[i * 3 + 2];
+            boolean drives;
+            switch (types[i]) {
+                case SensorTraceWriter.TYPE_ACCELEROMETER:
+                    fusion.accelerometerRing.offer(ts, x, y, z);
+                    drives = !gyroAvailable;
+                    break;
+                case SensorTraceWriter.TYPE_GYROSCOPE:
+                    fusion.gyroscopeRing.offer(ts, x, y, z);
+                    drives = true;
+                    break;
+                default:
+                    fusion.magneticFieldRing.offer(ts, x, y, z);
+                    drives = false;
+            }
+            if (!drives) continue;
+
+            Quaternion q = fusion.update(lastStep == 0 ? 0 : (ts - lastStep) * 1e-9f);
+            lastStep = ts;
+            steps++;
+            if (error == null) continue;
+
+            if (recordReference) reference[i] = new Quaternion(q);
+            if (ts < settle) continue;
+            if (truth != null) truth.truth(ts, expected);
+            else if (reference != null && reference[i] != null) expected.set(reference[i]);
+            else continue;
+            double angle = Math.toDegrees(angle(q, expected));
+            sum += angle;
+            sumSq += angle * angle;
+            max = Math.max(max, angle);
+            measured++;
+        }
+        if (error != null) {
+            error[0] = measured > 0 ? sum / measured : 0;
+            error[1] = measured > 0 ? Math.sqrt(sumSq / measured) : 0;
+            error[2] = max;
+        }
+        return steps;
+    }
+
+    /** Угол между ориентациями (рад), кватернионы могут быть не нормированы
+     * 2 * atan2(|vec(a^-1 * b)|, |w(a^-1 * b)|) точнее acos скалярного произведения на малых углах */
+    static double angle(Quaternion a, Quaternion b) {
+        double w = (double)a.w * b.w + (double)a.x * b.x + (double)a.y * b.y + (double)a.z * b.z;
+        double x = (double)a.w * b.x - (double)a.x * b.w - (double)a.y * b.z + (double)a.z * b.y;
+        double y = (double)a.w * b.y - (double)a.y * b.w - (double)a.z * b.x + (double)a.x * b.z;
+        double z = (double)a.w * b.z - (double)a.z * b.w - (double)a.x * b.y + (double)a.y * b.x;
+        return 2 * Math.atan2(Math.sqrt(x * x + y * y + z * z), Math.abs(w));
+    }
+}
@@ -0,0 +1,320 @@
+package com.sinuxvr.sample;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/** Подбор коэффициентов фильтра ориентации по записанным трассам датчиков
+ * Перебираются наборы коэффициентов (сетка или случайный поиск, набор 0 - текущие значения
+ * по умолчанию), каждый набор прогоняется по всем трассам и оценивается TuningScore.
+ * Пары (набор, трасса) считаются параллельно в ForkJoinPool на всех ядрах, строки CSV выводятся
+ * по мере готовности наборов. Каждая пара заново открывает и отображает в память свою трассу
+ * собственным SensorTraceReader, то есть каждая трасса читается configCount раз (по разу на набор).
+ * Трассы без гироскопа отбрасываются сразу (оценивать в них нечего), наборы без участков покоя и окон
+ * слежения в выбор лучшего не попадают. При равной оценке лучшим считается набор с меньшим номером,
+ * поэтому итог не зависит от порядка, в котором потоки заканчивают наборы.
+ * Запуск: FilterTuner [параметры] трасса|каталог...
+ *   -filter COMPLEMENTARY|MADGWICK|MAHONY|EKF  фильтр (по умолчанию COMPLEMENTARY)
+ *   -search grid|random   поиск (grid)
+ *   -steps N              значений каждого коэффициента в сетке (5)
+ *   -samples N            наборов случайного поиска (256)
+ *   -seed N               зерно случайного поиска (1)
+ *   -weights D,J,T        веса дрифта, дрожания и ошибки слежения в оценке (1,1,1)
+ *   -threads N            потоков (по числу ядер)
+ *   -out файл             CSV в файл (иначе в стандартный вывод, итог - в stderr)
+ * Из каталогов берутся все файлы *.trace */
+
+public class FilterTuner {
+
+    /** Настраиваемый коэффициент фильтра */
+    private static class Parameter {
+        final String name;
+        final float min, max;           // Диапазон поиска
+        final float defaultValue;       // Значение по умолчанию в фильтре
+        final boolean logScale;         // Перебирать ли по логарифмической шкале (min > 0)
+
+        Parameter(String name, float min, float max, float defaultValue, boolean logScale) {
+            this.name = name;
+            this.min = min;
+            this.max = max;
+            this.defaultValue = defaultValue;
+            this.logScale = logScale;
+        }
+
+        /** Значение в доле t (0..1) диапазона */
+        float at(double t) {
+            return logScale ? (float)(min * Math.pow(max / min, t)) : (float)(min + (max - min) * t);
+        }
+    }
+
+    /** Коэффициенты фильтров (значения по умолчанию - как в самих фильтрах) */
+    private static Parameter[] parameters(OrientationFilter.Type type) {
+        switch (type) {
+            case MADGWICK: return new Parameter[] {
+                    new Parameter("beta", 0.005f, 0.5f, 0.05f, true) };
+            case MAHONY: return new Parameter[] {
+                    new Parameter("kp", 0.1f, 5f, 1f, true),
+                    new Parameter("ki", 0f, 0.1f, 0.02f, false) };
+            case EKF: return new Parameter[] {
+                    new Parameter("gyroNoise", 0.002f, 0.2f, 0.02f, true),
+                    new Parameter("accNoise", 0.05f, 2f, 0.3f, true),
+                    new Parameter("magNoise", 0.02f, 1f, 0.2f, true) };
+            default: return new Parameter[] {
+                    new Parameter("accAlpha", 0.002f, 0.1f, 0.02f, true),
+                    new Parameter("magAlpha", 0.0005f, 0.05f, 0.005f, true),
+                    new Parameter("driftThreshold", 0f, 0.2f, 0.1f, false),
+                    new Parameter("magMotionThreshold", 0f, 0.5f, 0.1f, false) };
+        }
+    }
+
+    /** Создание фильтра с заданными коэффициентами (порядок - как в parameters()) */
+    private static OrientationFilter create(OrientationFilter.Type type, float[] v, boolean gyroAvailable, boolean magAvailable) {
+        OrientationFilter filter = type.create(gyroAvailable, magAvailable);
+        switch (type) {
+            case MADGWICK: ((MadgwickFilter)filter).setBeta(v[0]); break;
+            case MAHONY: ((MahonyFilter)filter).setGains(v[0], v[1]); break;
+            case EKF: ((EkfFilter)filter).setNoise(v[0], v[1], v[2]); break;
+            default: ((ComplementaryFilter)filter).setGains(v[0], v[1], v[2], v[3]);
+        }
+        return filter;
+    }
+
+    private final OrientationFilter.Type type;
+    private final Parameter[] parameters;
+    private final List<File> traces;
+    private final boolean random;
+    private final int steps;
+    private final long seed;
+    private final int configCount;
+    private final double[] weights;
+    private final PrintWriter out;
+
+    /** Лучший набор (под блокировкой this) */
+    private double bestScore = Double.POSITIVE_INFINITY;
+    private float[] bestValues;
+    private TuningScore bestTuningScore;
+    private int bestConfig = -1;
+    private TuningScore baseline;
+
+    private FilterTuner(OrientationFilter.Type type, List<File> traces, boolean random, int steps, int samples,
+                        long seed, double[] weights, PrintWriter out) {
+        this.type = type;
+        this.parameters = parameters(type);
+        this.traces = traces;
+        this.random = random;
+        this.steps = steps;
+        this.seed = seed;
+        this.weights = weights;
+        this.out = out;
+        long count = 1;
+        if (random) count += samples;
+        else count += (long)Math.pow(steps, parameters.length);
+        if (count > Integer.MAX_VALUE) throw new IllegalArgumentException("Too many configurations: " + count);
+        configCount = (int)count;
+    }
+
+    public static void main(String[] args) throws IOException {
+        OrientationFilter.Type type = OrientationFilter.Type.COMPLEMENTARY;
+        boolean random = false;
+        int steps = 5, samples = 256, threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        double[] weights = { 1, 1, 1 };
+        File outFile = null;
+        List<File> traces = new ArrayList<File>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-filter")) type = OrientationFilter.Type.valueOf(args[++i]);
+            else if (arg.equals("-search")) random = args[++i].equals("random");
+            else if (arg.equals("-steps")) steps = Integer.parseInt(args[++i]);
+            else if (arg.equals("-samples")) samples = Integer.parseInt(args[++i]);
+            else if (arg.equals("-seed")) seed = Long.parseLong(args[++i]);
+            else if (arg.equals("-threads")) threads = Integer.parseInt(args[++i]);
+            else if (arg.equals("-out")) outFile = new File(args[++i]);
+            else if (arg.equals("-weights")) {
+                String[] w = args[++i].split(",");
+                if (w.length != 3) throw new IllegalArgumentException("Expected 3 weights: " + args[i]);
+                for (int k = 0; k < 3; k++) weights[k] = Double.parseDouble(w[k]);
+            } else addTraces(new File(arg), traces);
+        }
+        if (traces.isEmpty()) throw new IllegalArgumentException("No sensor traces given");
+        for (int i = traces.size() - 1; i >= 0; i--) {
+            if (TuningScore.isScoreable(traces.get(i))) continue;
+            System.err.println("Skipping " + traces.get(i) + ": no gyroscope, nothing to score");
+            traces.remove(i);
+        }
+        if (traces.isEmpty()) throw new IllegalArgumentException("No scoreable sensor traces given");
+        if (steps < 1 || samples < 0 || threads < 1) throw new IllegalArgumentException("Invalid search settings");
+
+        PrintWriter out = new PrintWriter(outFile != null
+                ? new OutputStreamWriter(new FileOutputStream(outFile), "UTF-8")
+                : new OutputStreamWriter(System.out, "UTF-8"));
+        try {
+            new FilterTuner(type, traces, random, steps, samples, seed, weights, out).run(threads);
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Трасса или все трассы каталога */
+    private static void addTraces(File file, List<File> traces) {
+        if (!file.isDirectory()) {
+            if (!file.isFile()) throw new IllegalArgumentException("No such trace: " + file);
+            traces.add(file);
+            return;
+        }
+        File[] files = file.listFiles();
+        if (files == null) return;
+        Arrays.sort(files);
+        for (File f : files) {
+            if (f.isFile() && f.getName().endsWith(".trace")) traces.add(f);
+        }
+    }
+
+    private void run(int threads) {
+        StringBuilder header = new StringBuilder("config,filter");
+        for (Parameter p : parameters) header.append(',').append(p.name);
+        header.append(",traces,steps,still_s,drift_deg_min,jitter_deg_s,tracking_deg,score");
+        out.println(header);
+        out.flush();
+
+        long start = System.nanoTime();
+        new ForkJoinPool(threads).invoke(new ConfigRange(0, configCount));
+        double seconds = (System.nanoTime() - start) * 1e-9;
+
+        System.err.println(String.format(Locale.US, "%d configurations x %d traces in %.1f s on %d threads",
+                configCount, traces.size(), seconds, threads));
+        if (baseline != null && baseline.unscoredTraces > 0) {
+            System.err.println(baseline.unscoredTraces + " of " + baseline.traces
+                    + " traces have no still periods or tracking windows and do not affect the score");
+        }
+        if (bestValues == null) {
+            System.err.println("No trace could be replayed and scored with " + type);
+            return;
+        }
+        if (baseline != null) {
+            System.err.println(String.format(Locale.US, "default  drift %.3f deg/min, jitter %.3f deg/s, tracking %.3f deg, score %.4f",
+                    baseline.getDrift(), baseline.getJitter(), baseline.getTracking(), score(baseline)));
+        }
+        StringBuilder best = new StringBuilder(String.format(Locale.US, "best #%d", bestConfig));
+        for (int i = 0; i < parameters.length; i++) {
+            best.append(String.format(Locale.US, " %s=%.5g", parameters[i].name, bestValues[i]));
+        }
+        System.err.println(best);
+        System.err.println(String.format(Locale.US, "         drift %.3f deg/min, jitter %.3f deg/s, tracking %.3f deg, score %.4f",
+                bestTuningScore.getDrift(), bestTuningScore.getJitter(), bestTuningScore.getTracking(), bestScore));
+    }
+
+    /** Коэффициенты набора (0 - по умолчанию, далее узлы сетки или случайные точки) */
+    private float[] config(int index) {
+        float[] values = new float[parameters.length];
+        if (index == 0) {
+            for (int i = 0; i < values.length; i++) values[i] = parameters[i].defaultValue;
+            return values;
+        }
+        // У каждого набора свое зерно, поэтому результат не зависит от порядка вычисления
+        Random rnd = random ? new Random(seed * 0x9E3779B97F4A7C15L + index) : null;
+        int rest = index - 1;
+        for (int i = 0; i < values.length; i++) {
+            double t;
+            if (random) t = rnd.nextDouble();
+            else {
+                t = steps > 1 ? (double)(rest % steps) / (steps - 1) : 0.5;
+                rest /= steps;
+            }
+            values[i] = parameters[i].at(t);
+        }
+        return values;
+    }
+
+    private double score(TuningScore score) {
+        return score.getScore(weights[0], weights[1], weights[2]);
+    }
+
+    /** Вывод строки набора и учет лучшего */
+    private synchronized void report(int index, float[] values, TuningScore score) {
+        StringBuilder row = new StringBuilder();
+        row.append(index).append(',').append(type);
+        for (float v : values) row.append(',').append(String.format(Locale.US, "%.6g", v));
+        double total = score(score);
+        row.append(String.format(Locale.US, ",%d,%d,%.1f,%.4f,%.4f,%.4f,%.5f", score.traces, score.steps,
+                score.stillSeconds, score.getDrift(), score.getJitter(), score.getTracking(), total));
+        out.println(row);
+        out.flush();
+        if (!score.isScored()) return;
+        if (index == 0) baseline = score;
+        // При равенстве - меньший номер, независимо от порядка готовности наборов
+        if (total < bestScore || total == bestScore && index < bestConfig) {
+            bestScore = total;
+            bestValues = values;
+            bestTuningScore = score;
+            bestConfig = index;
+        }
+    }
+
+    /** Диапазон наборов, делится пополам до одного набора */
+    private class ConfigRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from, to;
+
+        ConfigRange(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ConfigRange(from, middle), new ConfigRange(middle, to));
+                return;
+            }
+            // Один набор: трассы прогоняются параллельно, затем оценки складываются
+            final float[] values = config(from);
+            List<TraceReplay> replays = new ArrayList<TraceReplay>(traces.size());
+            for (File trace : traces) replays.add(new TraceReplay(trace, values));
+            invokeAll(replays);
+            TuningScore total = new TuningScore();
+            for (TraceReplay replay : replays) {
+                TuningScore score = replay.join();
+                if (score != null) total.add(score);
+            }
+            report(from, values, total);
+        }
+    }
+
+    /** Прогон одной трассы с одним набором */
+    private class TraceReplay extends RecursiveTask<TuningScore> {
+        private static final long serialVersionUID = 1L;
+        private final File trace;
+        private final float[] values;
+
+        TraceReplay(File trace, float[] values) {
+            this.trace = trace;
+            this.values = values;
+        }
+
+        @Override
+        protected TuningScore compute() {
+            try {
+                return TuningScore.replay(trace, type, new TuningScore.FilterFactory() {
+                    @Override
+                    public OrientationFilter create(boolean gyroAvailable, boolean magAvailable) {
+                        return FilterTuner.create(type, values, gyroAvailable, magAvailable);
+                    }
+                });
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot replay " + trace, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Quaternion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Стоимость одного кадра вычисления ориентации (подача показаний кадра + SensorFusion.update)
+ * для каждого режима VRControlMode, а так же передачи снимка ориентации через PoseBuffer */
+
+@State(Scope.Thread)
+public class FusionBenchmark {
+
+    @Param({"ACC_ONLY", "ACC_MAG", "ACC_GYRO", "ACC_GYRO_MAG"})
+    public String mode;
+
+    @Param({"true", "false"})
+    public boolean timestampIntegration;
+
+    private InMemorySensorSource source;
+    private SensorFusion fusion;
+    private final PoseBuffer poseBuffer = new PoseBuffer();
+    private final PoseSnapshot snapshot = new PoseSnapshot();
+
+    @Setup
+    public void setup() {
+        ComplementaryFilter.VRControlMode controlMode = ComplementaryFilter.VRControlMode.valueOf(mode);
+        boolean gyro = controlMode == ComplementaryFilter.VRControlMode.ACC_GYRO || controlMode == ComplementaryFilter.VRControlMode.ACC_GYRO_MAG;
+        boolean mag = controlMode == ComplementaryFilter.VRControlMode.ACC_MAG || controlMode == ComplementaryFilter.VRControlMode.ACC_GYRO_MAG;
+        source = new InMemorySensorSource();
+        fusion = new SensorFusion(gyro, mag);
+        fusion.useDriftCorrection(true);
+        fusion.useTimestampIntegration(timestampIntegration);
+    }
+
+    @Benchmark
+    public Quaternion update() {
+        source.feed(fusion);
+        return fusion.update(1 / 60f);
+    }
+
+    @Benchmark
+    public PoseSnapshot publishAndRead() {
+        fusion.fillSnapshot(poseBuffer.beginWrite());
+        poseBuffer.publish();
+        return snapshot.set(poseBuffer.read());
+    }
+}
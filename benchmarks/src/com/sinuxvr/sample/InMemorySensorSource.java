@@ -0,0 +1,124 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Quaternion;
+
+/** Детерминированный источник показаний датчиков в памяти для бенчмарков
+ * Заранее вычисляет показания плавного движения головы (рыскание + тангаж) на FRAMES кадров,
+ * затем по кругу отдает их в SensorFusion или готовыми кватернионами через VRSensorManager */
+
+class InMemorySensorSource implements VRSensorManager {
+    static final int FRAMES = 1024;             // Длина цикла (степень двойки)
+    static final int GYRO_PER_FRAME = 4;        // ~240 Гц
+    static final int ACC_PER_FRAME = 2;         // ~120 Гц
+    static final int MAG_PER_FRAME = 1;         // ~60 Гц
+    static final long FRAME_NANOS = 1000000000L / 60;
+
+    private final float[] gyro = new float[FRAMES * GYRO_PER_FRAME * 3];
+    private final float[] acc = new float[FRAMES * ACC_PER_FRAME * 3];
+    private final float[] mag = new float[FRAMES * MAG_PER_FRAME * 3];
+    private final Quaternion[] poses = new Quaternion[FRAMES];
+    private long frame;                         // Счетчик кадров (метки времени растут непрерывно)
+
+    InMemorySensorSource() {
+        fill(gyro, GYRO_PER_FRAME, 0);
+        fill(acc, ACC_PER_FRAME, 1);
+        fill(mag, MAG_PER_FRAME, 2);
+        for (int i = 0; i < FRAMES; i++) {
+            float t = i / 60f;
+            poses[i] = new Quaternion().setEulerAnglesRad(yaw(t), pitch(t), 0);
+        }
+    }
+
+    /** Рыскание и тангаж головы (рад) и их производные */
+    private static float yaw(float t) { return 0.8f * (float)Math.sin(1.3f * t); }
+    private static float pitch(float t) { return 0.3f * (float)Math.sin(0.7f * t); }
+    private static float yawRate(float t) { return 0.8f * 1.3f * (float)Math.cos(1.3f * t); }
+    private static float pitchRate(float t) { return 0.3f * 0.7f * (float)Math.cos(0.7f * t); }
+
+    /** Заполнение показаний датчика
+     * @param kind - 0 - гироскоп, 1 - акселерометр, 2 - магнитометр */
+    private static void fill(float[] values, int perFrame, int kind) {
+        for (int i = 0; i < FRAMES * perFrame; i++) {
+            float t = i / (60f * perFrame);
+            float yaw = yaw(t), pitch = pitch(t);
+            switch (kind) {
+                case 0:
+                    values[i * 3] = pitchRate(t);
+                    values[i * 3 + 1] = yawRate(t);
+                    values[i * 3 + 2] = 0.01f * (float)Math.sin(37f * t); // шум
+                    break;
+                case 1:
+                    values[i * 3] = 0.05f * (float)Math.sin(23f * t);
+                    values[i * 3 + 1] = 9.81f * (float)Math.cos(pitch);
+                    values[i * 3 + 2] = 9.81f * (float)Math.sin(pitch);
+                    break;
+                default:
+                    values[i * 3] = 40f * (float)Math.cos(yaw);
+                    values[i * 3 + 1] = -20f;
+                    values[i * 3 + 2] = 40f * (float)Math.sin(yaw);
+            }
+        }
+    }
+
+    /** Подача в SensorFusion показаний очередного кадра */
+    void feed(SensorFusion fusion) {
+        int f = (int)(frame & (FRAMES - 1));
+        long start = frame * FRAME_NANOS;
+        offer(fusion.gyroscopeRing, gyro, f, GYRO_PER_FRAME, start);
+        offer(fusion.accelerometerRing, acc, f, ACC_PER_FRAME, start);
+        offer(fusion.magneticFieldRing, mag, f, MAG_PER_FRAME, start);
+        frame++;
+    }
+
+    private static void offer(SensorRingBuffer ring, float[] values, int f, int perFrame, long start) {
+        long step = FRAME_NANOS / perFrame;
+        for (int i = 0; i < perFrame; i++) {
+            int j = (f * perFrame + i) * 3;
+            ring.offer(start + (i + 1) * step, values[j], values[j + 1], values[j + 2]);
+        }
+    }
+
+    @Override
+    public boolean isGyroAvailable() { return true; }
+
+    @Override
+    public boolean isMagAvailable() { return true; }
+
+    @Override
+    public void startTracking() { }
+
+    @Override
+    public void endTracking() { }
+
+    @Override
+    public void useDriftCorrection(boolean use) { }
+
+    @Override
+    public void useTimestampIntegration(boolean use) { }
+
+    @Override
+    public boolean setOrientationFilter(OrientationFilter.Type type) { return true; }
+
+    /** Снимок с готовой ориентацией очередного кадра */
+    @Override
+    public PoseSnapshot getPoseSnapshot(PoseSnapshot out) {
+        Quaternion q = getHeadQuaternion();
+        out.x = q.x;
+        out.y = q.y;
+        out.z = q.z;
+        out.w = q.w;
+        out.timestamp = System.nanoTime();
+        return out;
+    }
+
+    /** Готовая ориентация очередного кадра (без вычислений) */
+    @Override
+    public Quaternion getHeadQuaternion() {
+        return poses[(int)(frame++ & (FRAMES - 1))];
+    }
+
+    @Override
+    public Quaternion getPredictedHeadQuaternion(long targetNanos) {
+        return getHeadQuaternion();
+    }
+}
@@ -0,0 +1,44 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+
+/** Прежний способ построения матриц глаз в VRCamera (ось/угол через acos и sqrt,
+ * матрица вида каждого глаза с нуля и два полных умножения 4x4) - точка отсчета для сравнения */
+
+class LegacyStereoView {
+    private final float parallax;
+    private final Vector3 position;
+
+    LegacyStereoView(float parallax, Vector3 position) {
+        this.parallax = parallax;
+        this.position = position;
+    }
+
+    void update(Quaternion headQuaternion, PerspectiveCamera leftCam, PerspectiveCamera rightCam) {
+        // Вычисление углов вращения камер из кватерниона
+        float angle = 2 * (float)Math.acos(headQuaternion.w);
+        float s = 1f / (float)Math.sqrt(1 - headQuaternion.w * headQuaternion.w);
+        float vx = headQuaternion.x * s;
+        float vy = headQuaternion.y * s;
+        float vz = headQuaternion.z * s;
+
+        // Вращение левой камеры
+        leftCam.view.idt();
+        leftCam.view.translate(parallax, 0, 0);
+        leftCam.view.rotateRad(vx, vy, vz, -angle);
+        leftCam.view.translate(-position.x, -position.y, -position.z);
+        leftCam.combined.set(leftCam.projection);
+        Matrix4.mul(leftCam.combined.val, leftCam.view.val);
+
+        // Вращение правой камеры
+        rightCam.view.idt();
+        rightCam.view.translate(-parallax, 0, 0);
+        rightCam.view.rotateRad(vx, vy, vz, -angle);
+        rightCam.view.translate(-position.x, -position.y, -position.z);
+        rightCam.combined.set(rightCam.projection);
+        Matrix4.mul(rightCam.combined.val, rightCam.view.val);
+    }
+}
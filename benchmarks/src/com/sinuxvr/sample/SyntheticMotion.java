@@ -0,0 +1,127 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Quaternion;
+import java.util.Random;
+
+/** Синтетическая трасса датчиков с известной истинной ориентацией
+ * Голова поворачивается по сумме синусоид (рыскание, тангаж, крен), показания датчиков
+ * вычисляются из истинного движения и зашумляются, у гироскопа есть смещение нуля.
+ * Оси как у показаний после листенера: Y - вверх, магнитный север - вдоль +X */
+
+class SyntheticMotion {
+    static final int GYRO_RATE = 200;           // Частоты датчиков (Гц)
+    static final int ACC_RATE = 100;
+    static final int MAG_RATE = 50;
+    static final long START_NANOS = 1000000000L;
+
+    private static final double G = 9.81;
+    private static final double FIELD = 45;                     // Модуль поля (мкТл)
+    private static final double DIP = Math.toRadians(60);       // Магнитное наклонение
+    private static final float GYRO_NOISE = 0.01f;              // Шумы (рад/с, м/с^2, мкТл)
+    private static final float ACC_NOISE = 0.08f;
+    private static final float MAG_NOISE = 0.6f;
+    private static final float[] GYRO_BIAS = { 0.01f, -0.008f, 0.005f };
+
+    final int count;            // Число показаний
+    final byte[] types;         // Тип датчика (SensorTraceWriter.TYPE_*)
+    final long[] timestamps;    // Метки времени (нс), по возрастанию
+    final float[] values;       // Показания, по 3 числа
+
+    private final double[] q = new double[4];
+    private final double[] q2 = new double[4];
+
+    /** Генерация трассы
+     * @param seconds - длительность
+     * @param seed - зерно шума */
+    SyntheticMotion(float seconds, long seed) {
+        Random random = new Random(seed);
+        int gyro = (int)(seconds * GYRO_RATE), acc = (int)(seconds * ACC_RATE), mag = (int)(seconds * MAG_RATE);
+        count = gyro + acc + mag;
+        types = new byte[count];
+        timestamps = new long[count];
+        values = new float[count * 3];
+
+        // Слияние трех равномерных потоков по времени
+        int g = 0, a = 0, m = 0;
+        double[] v = new double[3];
+        for (int i = 0; i < count; i++) {
+            long tg = g < gyro ? time(g, GYRO_RATE) : Long.MAX_VALUE;
+            long ta = a < acc ? time(a, ACC_RATE) : Long.MAX_VALUE;
+            long tm = m < mag ? time(m, MAG_RATE) : Long.MAX_VALUE;
+            long ts;
+            if (tg <= ta && tg <= tm) {
+                ts = tg;
+                g++;
+                types[i] = SensorTraceWriter.TYPE_GYROSCOPE;
+                angularVelocity((ts - START_NANOS) * 1e-9, v);
+                for (int k = 0; k < 3; k++) values[i * 3 + k] = (float)v[k] + GYRO_BIAS[k] + GYRO_NOISE * (float)random.nextGaussian();
+            } else if (ta <= tm) {
+                ts = ta;
+                a++;
+                types[i] = SensorTraceWriter.TYPE_ACCELEROMETER;
+                orientation((ts - START_NANOS) * 1e-9, q);
+                toBody(q, 0, G, 0, v);
+                for (int k = 0; k < 3; k++) values[i * 3 + k] = (float)v[k] + ACC_NOISE * (float)random.nextGaussian();
+            } else {
+                ts = tm;
+                m++;
+                types[i] = SensorTraceWriter.TYPE_MAGNETIC_FIELD;
+                orientation((ts - START_NANOS) * 1e-9, q);
+                toBody(q, FIELD * Math.cos(DIP), -FIELD * Math.sin(DIP), 0, v);
+                for (int k = 0; k < 3; k++) values[i * 3 + k] = (float)v[k] + MAG_NOISE * (float)random.nextGaussian();
+            }
+            timestamps[i] = ts;
+        }
+    }
+
+    private static long time(int index, int rate) {
+        return START_NANOS + index * 1000000000L / rate;
+    }
+
+    /** Истинная ориентация на момент метки времени
+     * @return out */
+    Quaternion truth(long timestamp, Quaternion out) {
+        orientation((timestamp - START_NANOS) * 1e-9, q);
+        return out.set((float)q[1], (float)q[2], (float)q[3], (float)q[0]);
+    }
+
+    /** Ориентация в момент t: рыскание (Y), затем тангаж (X), затем крен (Z)
+     * @param out - w, x, y, z */
+    private static void orientation(double t, double[] out) {
+        double yaw = 1.2 * Math.sin(0.9 * t) + 0.4 * Math.sin(2.3 * t);
+        double pitch = 0.4 * Math.sin(0.7 * t) + 0.1 * Math.sin(3.1 * t);
+        double roll = 0.15 * Math.sin(1.1 * t);
+        double cy = Math.cos(yaw * 0.5), sy = Math.sin(yaw * 0.5);
+        double cp = Math.cos(pitch * 0.5), sp = Math.sin(pitch * 0.5);
+        double cr = Math.cos(roll * 0.5), sr = Math.sin(roll * 0.5);
+        // qY * qX
+        double w = cy * cp, x = cy * sp, y = sy * cp, z = -sy * sp;
+        // * qZ
+        out[0] = w * cr - z * sr;
+        out[1] = x * cr + y * sr;
+        out[2] = y * cr - x * sr;
+        out[3] = z * cr + w * sr;
+    }
+
+    /** Угловая скорость в осях тела: 2 * vec(q(t - h)^-1 * q(t + h)) / 2h */
+    private void angularVelocity(double t, double[] out) {
+        double h = 1e-5;
+        orientation(t - h, q);
+        orientation(t + h, q2);
+        double w0 = q[0], x0 = -q[1], y0 = -q[2], z0 = -q[3];
+        double x = w0 * q2[1] + x0 * q2[0] + y0 * q2[3] - z0 * q2[2];
+        double y = w0 * q2[2] + y0 * q2[0] + z0 * q2[1] - x0 * q2[3];
+        double z = w0 * q2[3] + z0 * q2[0] + x0 * q2[2] - y0 * q2[1];
+        out[0] = x / h;
+        out[1] = y / h;
+        out[2] = z / h;
+    }
+
+    /** Перевод мирового вектора в оси тела: R^T * v */
+    private static void toBody(double[] q, double vx, double vy, double vz, double[] out) {
+        double w = q[0], x = q[1], y = q[2], z = q[3];
+        out[0] = (1 - 2 * (y * y + z * z)) * vx + 2 * (x * y + w * z) * vy + 2 * (x * z - w * y) * vz;
+        out[1] = 2 * (x * y - w * z) * vx + (1 - 2 * (x * x + z * z)) * vy + 2 * (y * z + w * x) * vz;
+        out[2] = 2 * (x * z + w * y) * vx + 2 * (y * z - w * x) * vy + (1 - 2 * (x * x + y * y)) * vz;
+    }
+}
@@ -0,0 +1,222 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+import java.io.File;
+import java.io.IOException;
+
+/** Оценка фильтра ориентации на записанной трассе без истинной ориентации
+ * Трасса читается потоково (SensorTraceReader) и подается в SensorFusion так же, как в FilterHarness.
+ * Участки покоя - не короче STILL_SECONDS, пока гироскоп показывает меньше STILL_RATE:
+ * голова там неподвижна, поэтому поворот ориентации от начала до конца участка - дрифт (град/мин),
+ * а скорость поворота на каждом шаге - дрожание картинки (среднеквадратичное, град/с).
+ * Чтобы фильтр не выигрывал, просто не поворачиваясь, считается и ошибка слежения: расхождение
+ * поворота ориентации за окно TRACKING_SECONDS с поворотом по одному гироскопу (среднеквадратичное, град).
+ * Первые SETTLE_SECONDS трассы (схождение фильтра) не учитываются.
+ * Все показатели считаются по гироскопу, поэтому трасса без него (или короче схождения) оценки не дает:
+ * у нее нет ни участков покоя, ни окон слежения, и оценка 0 у всех наборов ничего не значит.
+ * Оценки нескольких трасс складываются с весом по длительности */
+
+class TuningScore {
+    /** Начало трассы, не учитываемое в оценке, с */
+    private static final float SETTLE_SECONDS = 5;
+    /** Порог покоя по модулю угловой скорости гироскопа (рад/с) и наименьшая длительность покоя (с) */
+    private static final float STILL_RATE = 0.05f;
+    private static final float STILL_SECONDS = 1;
+    /** Окно сравнения с гироскопом (с) */
+    private static final float TRACKING_SECONDS = 0.25f;
+    /** Интервал между шагами, больше которого шаг не оценивается (пауза в записи), с */
+    private static final float MAX_STEP_SECONDS = 0.1f;
+
+    int traces;                 // Число оцененных трасс
+    int unscoredTraces;         // Из них без участков покоя и окон слежения
+    long steps;                 // Шагов вычисления
+    double stillSeconds;        // Суммарная длительность покоя
+    double driftDegrees;        // Суммарный поворот за участки покоя
+    double jitterSumSq;         // Сумма квадратов скорости поворота в покое ((град/с)^2)
+    long jitterSteps;
+    double trackingSumSq;       // Сумма квадратов ошибки слежения (град^2)
+    long trackingWindows;
+
+    /** Добавление оценки другой трассы */
+    void add(TuningScore other) {
+        traces += other.traces;
+        unscoredTraces += other.unscoredTraces;
+        steps += other.steps;
+        stillSeconds += other.stillSeconds;
+        driftDegrees += other.driftDegrees;
+        jitterSumSq += other.jitterSumSq;
+        jitterSteps += other.jitterSteps;
+        trackingSumSq += other.trackingSumSq;
+        trackingWindows += other.trackingWindows;
+    }
+
+    /** Есть ли в оценке хотя бы один участок покоя или окно слежения */
+    boolean isScored() {
+        return stillSeconds > 0 || trackingWindows > 0;
+    }
+
+    /** Может ли трасса дать оценку (по заголовку: все показатели требуют гироскопа) */
+    static boolean isScoreable(File trace) throws IOException {
+        SensorTraceReader reader = new SensorTraceReader(trace);
+        try {
+            return reader.isGyroAvailable();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** Дрифт в покое (град/мин), NaN - участков покоя не было */
+    double getDrift() {
+        return stillSeconds > 0 ? driftDegrees / stillSeconds * 60 : Double.NaN;
+    }
+
+    /** Дрожание в покое (град/с), NaN - участков покоя не было */
+    double getJitter() {
+        return jitterSteps > 0 ? Math.sqrt(jitterSumSq / jitterSteps) : Double.NaN;
+    }
+
+    /** Ошибка слежения за гироскопом (град), NaN - в трассах нет гироскопа */
+    double getTracking() {
+        return trackingWindows > 0 ? Math.sqrt(trackingSumSq / trackingWindows) : Double.NaN;
+    }
+
+    /** Взвешенная сумма показателей (меньше - лучше), показатели NaN не учитываются
+     * (без участков покоя и окон слежения - 0, см. isScored()) */
+    double getScore(double driftWeight, double jitterWeight, double trackingWeight) {
+        double score = 0;
+        if (!Double.isNaN(getDrift())) score += driftWeight * getDrift();
+        if (!Double.isNaN(getJitter())) score += jitterWeight * getJitter();
+        if (!Double.isNaN(getTracking())) score += trackingWeight * getTracking();
+        return score;
+    }
+
+    /** Прогон трассы с фильтром
+     * @param trace - файл трассы
+     * @param type - тип фильтра
+     * @param filter - фильтр (новый экземпляр, создается под датчики трассы, см. FilterTuner)
+     * @return оценка или null, если для фильтра не хватает датчиков трассы */
+    static TuningScore replay(File trace, OrientationFilter.Type type, FilterFactory filter) throws IOException {
+        SensorTraceReader reader = new SensorTraceReader(trace);
+        try {
+            boolean gyroAvailable = reader.isGyroAvailable(), magAvailable = reader.isMagAvailable();
+            SensorFusion fusion = new SensorFusion(gyroAvailable, magAvailable);
+            if (!fusion.setFilter(type, filter.create(gyroAvailable, magAvailable))) return null;
+            fusion.useDriftCorrection(magAvailable);
+            fusion.useTimestampIntegration(true);
+            return new TuningScore().run(reader, fusion, gyroAvailable);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** Создание настроенного фильтра под датчики трассы */
+    interface FilterFactory {
+        OrientationFilter create(boolean gyroAvailable, boolean magAvailable);
+    }
+
+    private TuningScore run(SensorTraceReader reader, SensorFusion fusion, boolean gyroAvailable) throws IOException {
+        SensorSample sample = new SensorSample();
+        Quaternion previous = new Quaternion();
+        Quaternion stillStart = new Quaternion(), stillEnd = new Quaternion();
+        Quaternion windowStart = new Quaternion(), gyroDelta = new Quaternion(), step = new Quaternion();
+        Vector3 rate = new Vector3();
+        long first = -1, lastStep = 0;
+        long stillSince = -1, stillLast = 0, windowSince = -1;
+        double stillSumSq = 0;
+        long stillSteps = 0;
+
+        while (reader.hasNext()) {
+            byte type = reader.next(sample);
+            long ts = sample.timestamp;
+            boolean drives;
+            switch (type) {
+                case SensorTraceWriter.TYPE_ACCELEROMETER:
+                    fusion.accelerometerRing.offer(ts, sample.x, sample.y, sample.z);
+                    drives = !gyroAvailable;
+                    break;
+                case SensorTraceWriter.TYPE_GYROSCOPE:
+                    fusion.gyroscopeRing.offer(ts, sample.x, sample.y, sample.z);
+                    rate.set(sample.x, sample.y, sample.z);
+                    drives = true;
+                    break;
+                default:
+                    fusion.magneticFieldRing.offer(ts, sample.x, sample.y, sample.z);
+                    drives = false;
+            }
+            if (!drives) continue;
+
+            float dt = lastStep == 0 ? 0 : (ts - lastStep) * 1e-9f;
+            Quaternion q = fusion.update(dt);
+            lastStep = ts;
+            steps++;
+            if (first < 0) first = ts;
+            boolean valid = ts - first >= SETTLE_SECONDS * 1e9f && dt > 0 && dt <= MAX_STEP_SECONDS;
+            if (!valid) {
+                // Пауза в записи или схождение фильтра прерывают и покой, и окно слежения
+                stillSince = windowSince = -1;
+                stillSteps = 0;
+                stillSumSq = 0;
+                previous.set(q);
+                continue;
+            }
+
+            if (gyroAvailable) {
+                // Покой: скорость поворота ориентации на шаге - дрожание
+                if (rate.len() < STILL_RATE) {
+                    if (stillSince < 0) {
+                        stillSince = lastStepBefore(ts, dt);
+                        stillStart.set(previous);
+                    }
+                    double degreesPerSecond = Math.toDegrees(FilterHarness.angle(previous, q)) / dt;
+                    stillSumSq += degreesPerSecond * degreesPerSecond;
+                    stillSteps++;
+                    stillLast = ts;
+                    stillEnd.set(q);
+                } else if (stillSince >= 0) {
+                    closeStill(stillSince, stillLast, stillStart, stillEnd, stillSumSq, stillSteps);
+                    stillSince = -1;
+                    stillSteps = 0;
+                    stillSumSq = 0;
+                }
+
+                // Слежение: поворот ориентации за окно против поворота по гироскопу
+                if (windowSince < 0) {
+                    windowSince = lastStepBefore(ts, dt);
+                    windowStart.set(previous);
+                    gyroDelta.idt();
+                }
+                float l = rate.len(), half = l * dt * 0.5f;
+                float s = l > 0 ? (float)Math.sin(half) / l : 0;
+                gyroDelta.mul(step.set(s * rate.x, s * rate.y, s * rate.z, (float)Math.cos(half)));
+                if (ts - windowSince >= TRACKING_SECONDS * 1e9f) {
+                    step.set(windowStart).conjugate().mul(q);
+                    double error = Math.toDegrees(FilterHarness.angle(step, gyroDelta));
+                    trackingSumSq += error * error;
+                    trackingWindows++;
+                    windowSince = -1;
+                }
+            }
+            previous.set(q);
+        }
+        if (stillSince >= 0) closeStill(stillSince, stillLast, stillStart, stillEnd, stillSumSq, stillSteps);
+        traces = 1;
+        if (!isScored()) unscoredTraces = 1;
+        return this;
+    }
+
+    /** Метка времени предыдущего шага */
+    private static long lastStepBefore(long ts, float dt) {
+        return ts - (long)(dt * 1e9f);
+    }
+
+    /** Учет закончившегося участка покоя, если он достаточно длинный */
+    private void closeStill(long since, long last, Quaternion start, Quaternion end, double sumSq, long count) {
+        double seconds = (last - since) * 1e-9;
+        if (seconds < STILL_SECONDS) return;
+        stillSeconds += seconds;
+        driftDegrees += Math.toDegrees(FilterHarness.angle(start, end));
+        jitterSumSq += sumSq;
+        jitterSteps += count;
+    }
+}
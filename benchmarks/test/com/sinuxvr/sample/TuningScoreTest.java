@@ -0,0 +1,94 @@
+package com.sinuxvr.sample;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/** Оценка на синтетических трассах: дрифт от смещения нуля гироскопа в покое
+ * и трассы, по которым оценивать нечего */
+
+public class TuningScoreTest {
+    private static final long PERIOD = 10000000L;           // 100 Гц
+    private static final int SECONDS = 15;                  // 5 с схождения и 10 с покоя
+    private static final float BIAS = 0.01f;                // Смещение нуля гироскопа (рад/с), ниже порога покоя
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Неподвижное устройство: акселерометр видит только тяжесть по оси z,
+     * гироскоп (если есть) - смещение нуля вокруг той же оси, которое акселерометр не исправляет */
+    private File stillTrace(String name, boolean gyro, int seconds) throws IOException {
+        File file = folder.newFile(name);
+        SensorTraceWriter writer = new SensorTraceWriter(file, gyro, false);
+        long count = seconds * 1000000000L / PERIOD;
+        for (long i = 0; i <= count; i++) {
+            long timestamp = 1000000000L + i * PERIOD;
+            writer.write(SensorTraceWriter.TYPE_ACCELEROMETER, timestamp, 0, 0, 9.81f);
+            if (gyro) writer.write(SensorTraceWriter.TYPE_GYROSCOPE, timestamp, 0, 0, BIAS);
+        }
+        writer.close();
+        return file;
+    }
+
+    /** Комплементарный фильтр без отсечения малых скоростей: смещение интегрируется целиком */
+    private static TuningScore replay(File trace) throws IOException {
+        return TuningScore.replay(trace, OrientationFilter.Type.COMPLEMENTARY, new TuningScore.FilterFactory() {
+            @Override
+            public OrientationFilter create(boolean gyroAvailable, boolean magAvailable) {
+                ComplementaryFilter filter = (ComplementaryFilter)OrientationFilter.Type.COMPLEMENTARY
+                        .create(gyroAvailable, magAvailable);
+                filter.setGains(0.02f, 0.005f, 0, 0.1f);
+                return filter;
+            }
+        });
+    }
+
+    @Test
+    public void gyroBiasIsDrift() throws IOException {
+        File trace = stillTrace("bias.trace", true, SECONDS);
+        assertTrue(TuningScore.isScoreable(trace));
+        TuningScore score = replay(trace);
+        assertNotNull(score);
+        assertTrue(score.isScored());
+        assertEquals(1, score.traces);
+        assertEquals(0, score.unscoredTraces);
+
+        // Весь участок после схождения - покой
+        assertEquals(SECONDS - 5, score.stillSeconds, 0.05);
+        double degreesPerSecond = Math.toDegrees(BIAS);
+        assertEquals(degreesPerSecond * 60, score.getDrift(), degreesPerSecond * 60 * 0.01);
+        assertEquals(degreesPerSecond, score.getJitter(), degreesPerSecond * 0.01);
+        // Фильтр следует за гироскопом (с точностью float при повороте на 0.14 град за окно)
+        assertEquals(0, score.getTracking(), 0.05);
+    }
+
+    @Test
+    public void traceWithoutGyroscopeIsUnscoreable() throws IOException {
+        File trace = stillTrace("nogyro.trace", false, SECONDS);
+        assertFalse(TuningScore.isScoreable(trace));
+        TuningScore score = replay(trace);
+        assertNotNull(score);
+        assertFalse(score.isScored());
+        assertEquals(1, score.unscoredTraces);
+        assertEquals(0, score.getScore(1, 1, 1), 0);
+    }
+
+    /** Трасса с гироскопом, но короче схождения фильтра, тоже не дает оценки */
+    @Test
+    public void shortTraceIsUnscored() throws IOException {
+        TuningScore total = new TuningScore();
+        total.add(replay(stillTrace("short.trace", true, 3)));
+        assertFalse(total.isScored());
+        total.add(replay(stillTrace("long.trace", true, SECONDS)));
+        assertTrue(total.isScored());
+        assertEquals(2, total.traces);
+        assertEquals(1, total.unscoredTraces);
+    }
+}
@@ -0,0 +1,202 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.Vector3;
+
+/** Комплементарный фильтр (исходный алгоритм примера)
+ * Гироскоп интегрируется напрямую, наклон доворачивается к акселерометру, а рыскание -
+ * к магнитометру на долю угла за шаг. Без гироскопа рыскание управляется наклоном головы.
+ * Коэффициенты подобраны для 60 шагов в секунду и пересчитываются на фактический шаг */
+
+class ComplementaryFilter implements OrientationFilter {
+
+    /** Перечень режимов работы в зависимости от наличия датчиков */
+    enum VRControlMode { ACC_ONLY, ACC_GYRO, ACC_MAG, ACC_GYRO_MAG }
+
+    /** Частота обновлений, под которую подобраны коэффициенты (1/с) */
+    private static final float REFERENCE_RATE = 60f;
+    /** Коэффициенты режимов без гироскопа */
+    private static final float ACC_ONLY_ALPHA = 0.1f;
+    private static final float ACC_MAG_ALPHA = 0.2f;
+    private static final float ACC_MAG_YAW_ALPHA = 0.05f;
+
+    /** Настраиваемые коэффициенты режимов с гироскопом */
+    private float accAlpha = 0.02f;         // Доля коррекции наклона за шаг
+    private float magAlpha = 0.005f;        // Доля коррекции рыскания за шаг
+    private float driftThreshold = 0.1f;    // Порог для отсечения дрифта покоя (рад/с)
+    private float magMotionThreshold = 0.1f; // Скорость, ниже которой рыскание не корректируется (рад/с)
+
+    /** Кватернионы и векторы для нахождения ориентации, итоговый результат в headQuaternion */
+    private final Quaternion gyroQuaternion;
+    private final Quaternion deltaQuaternion;
+    private final Vector3 accInVector;
+    private final Vector3 accInVectorTilt;
+    private final Vector3 magInVector;
+    private final Quaternion headQuaternion;
+    private final VRControlMode vrControlMode;
+    private float lastRate;                 // Угловая скорость последнего показания гироскопа
+
+    /** Конструктор
+     * @param gyroAvailable - наличие гироскопа
+     * @param magAvailable - наличие магнитометра */
+    ComplementaryFilter(boolean gyroAvailable, boolean magAvailable) {
+        // Определение режима работы в зависимости от имеющихся датчиков
+        VRControlMode mode = VRControlMode.ACC_ONLY;
+        if (gyroAvailable) mode = VRControlMode.ACC_GYRO;
+        if (magAvailable) mode = VRControlMode.ACC_MAG;
+        if (gyroAvailable && magAvailable) mode = VRControlMode.ACC_GYRO_MAG;
+        vrControlMode = mode;
+
+        // Инициализация кватернионов
+        gyroQuaternion = new Quaternion(0, 0, 0, 1);
+        deltaQuaternion = new Quaternion(0, 0, 0, 1);
+        accInVector = new Vector3(0, 10, 0);
+        accInVectorTilt = new Vector3(0, 0, 0);
+        magInVector = new Vector3(1, 0, 0);
+        headQuaternion = new Quaternion(0, 0, 0, 1);
+    }
+
+    /** Текущий режим работы */
+    VRControlMode getControlMode() {
+        return vrControlMode;
+    }
+
+    /** Настройка коэффициентов режимов с гироскопом
+     * @param accAlpha - доля коррекции наклона за шаг (при 60 шагах в секунду)
+     * @param magAlpha - доля коррекции рыскания за шаг (при 60 шагах в секунду)
+     * @param driftThreshold - угловая скорость, ниже которой гироскоп не интегрируется (рад/с)
+     * @param magMotionThreshold - угловая скорость, ниже которой рыскание по магнитометру
+     * не корректируется (рад/с) */
+    void setGains(float accAlpha, float magAlpha, float driftThreshold, float magMotionThreshold) {
+        this.accAlpha = accAlpha;
+        this.magAlpha = magAlpha;
+        this.driftThreshold = driftThreshold;
+        this.magMotionThreshold = magMotionThreshold;
+    }
+
+    @Override
+    public int getRequiredSensors() {
+        return ACCELEROMETER;
+    }
+
+    @Override
+    public void reset(Quaternion orientation) {
+        gyroQuaternion.set(orientation);
+        headQuaternion.set(orientation);
+        lastRate = 0;
+    }
+
+    /** Логика определения ориентации
+     * Интегрирование показаний гироскопа в кватернион */
+    @Override
+    public void integrate(float wX, float wY, float wZ, float dt) {
+        // Интегрирование показаний гироскопа
+        float l = Vector3.len(wX, wY, wZ);
+        float dtl2 = dt * l * 0.5f;
+        if (l > driftThreshold) {
+            // Табличный MathUtils.sin слишком груб для малых углов одного показания
+            float sinVal = (float)Math.sin(dtl2) / l;
+            deltaQuaternion.set(sinVal * wX, sinVal * wY, sinVal * wZ, (float)Math.cos(dtl2));
+        } else deltaQuaternion.set(0, 0, 0, 1);
+        gyroQuaternion.mul(deltaQuaternion);
+        lastRate = l;
+    }
+
+    @Override
+    public void correct(float[] acc, float[] mag, boolean useMag, float dt) {
+        // Выбираем последовательность действий в зависимости от режима управления
+        switch (vrControlMode) {
+            // Управление одним акселерометром
+            case ACC_ONLY: updateAccData(acc, perStep(ACC_ONLY_ALPHA, dt));
+                // Вращение по Yaw наклонами головы из стороны в сторону (как во всяких гонках)
+                headQuaternion.setFromAxisRad(0, 1, 0, -MathUtils.sin(acc[0] / 200f) * dt * REFERENCE_RATE)
+                        .mul(gyroQuaternion).nor();
+                gyroQuaternion.set(headQuaternion);
+                break;
+
+            // Акселерометр + магнитометр (если в телефоне стоит вменяемый компас, то данная комбинация
+            // ведет себя почти как гироскоп, получается этакая эмуляция гиро)
+            case ACC_MAG: updateAccData(acc, perStep(ACC_MAG_ALPHA, dt));
+                if (!useMag) {
+                    headQuaternion.setFromAxisRad(0, 1, 0, -MathUtils.sin(acc[0] / 200f) * dt * REFERENCE_RATE)
+                            .mul(gyroQuaternion).nor();
+                    gyroQuaternion.set(headQuaternion);
+                } else updateMagData(mag, perStep(ACC_MAG_YAW_ALPHA, dt));
+                break;
+
+            // Гироскоп + акселерометр
+            case ACC_GYRO: updateAccData(acc, perStep(accAlpha, dt));
+                break;
+
+            // Все три датчика - must have, но только если компас откалиброван
+            // (рыскание корректируется только в движении)
+            case ACC_GYRO_MAG: updateAccData(acc, perStep(accAlpha, dt));
+                if (useMag && lastRate >= magMotionThreshold) updateMagData(mag, perStep(magAlpha, dt));
+        }
+    }
+
+    @Override
+    public Quaternion getOrientation() {
+        return headQuaternion;
+    }
+
+    /** Пересчет коэффициента, подобранного для REFERENCE_RATE обновлений в секунду, на шаг dt */
+    private static float perStep(float alpha, float dt) {
+        return 1f - (float)Math.pow(1f - alpha, dt * REFERENCE_RATE);
+    }
+
+    /** Поворот вектора кватернионом: q * v * q^-1 без нормировки q (как Quaternion.transform)
+     * Quaternion.transform использует статические временные кватернионы, а фильтры могут
+     * работать одновременно в нескольких потоках (поток датчиков, параллельный подбор коэффициентов) */
+    private static void transform(Quaternion q, Vector3 v) {
+        float uv = q.x * v.x + q.y * v.y + q.z * v.z;
+        float s = q.w * q.w - (q.x * q.x + q.y * q.y + q.z * q.z);
+        float cx = q.y * v.z - q.z * v.y, cy = q.z * v.x - q.x * v.z, cz = q.x * v.y - q.y * v.x;
+        v.set(s * v.x + 2 * uv * q.x + 2 * q.w * cx,
+                s * v.y + 2 * uv * q.y + 2 * q.w * cy,
+                s * v.z + 2 * uv * q.z + 2 * q.w * cz);
+    }
+
+    /** Коррекция Tilt при помощи акселерометра
+     * @param filterAlpha - коэффициент фильтрации */
+    private void updateAccData(float[] acc, float filterAlpha) {
+        // Преобразование значений акселерометра в инерциальные координаты
+        accInVector.set(acc[0], acc[1], acc[2]);
+        transform(gyroQuaternion, accInVector);
+        accInVector.nor();
+
+        // Вычисление нормализованной оси вращения между accInVector и UP(0, 1, 0)
+        // (если вектор уже смотрит строго вверх, то ось не определена и коррекция не нужна)
+        float xzLen = Vector2.len(accInVector.x, accInVector.z);
+        if (xzLen < MathUtils.FLOAT_ROUNDING_ERROR) {
+            headQuaternion.set(gyroQuaternion);
+            return;
+        }
+        xzLen = 1f / xzLen;
+        accInVectorTilt.set(-accInVector.z * xzLen, 0, accInVector.x * xzLen);
+
+        // Вычисление угла между вектором accInVector и UP(0, 1, 0)
+        float fi = (float)Math.acos(accInVector.y);
+
+        // Получение Tilt-скорректированного кватерниона по данным акселерометра
+        headQuaternion.setFromAxisRad(accInVectorTilt, filterAlpha * fi).mul(gyroQuaternion).nor();
+        gyroQuaternion.set(headQuaternion);
+    }
+
+    /** Коррекция угла по Yaw магнитометром
+     * @param filterAlpha - коэффициент фильтрации */
+    private void updateMagData(float[] mag, float filterAlpha) {
+        // Преобразование значений магнитометра в инерциальные координаты
+        magInVector.set(mag[0], mag[1], mag[2]);
+        transform(gyroQuaternion, magInVector);
+
+        // Вычисление корректирующего Yaw угла с магнитометра
+        float theta = MathUtils.atan2(magInVector.z, magInVector.x);
+
+        // Коррекция ориентации
+        headQuaternion.setFromAxisRad(0, 1, 0, filterAlpha * theta).mul(gyroQuaternion).nor();
+        gyroQuaternion.set(headQuaternion);
+    }
+}
@@ -0,0 +1,216 @@
+package com.sinuxvr.sample;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/** Сетка коррекции искажений линз (вычисляется на CPU, без GL)
+ * Линза растягивает изображение к краям (подушка): точка экрана на расстоянии r от оптического
+ * центра (в тангенсах угла) видна под углом distort(r) = r * (1 + k1 * r^2 + k2 * r^4).
+ * Поэтому вершина равномерной сетки на экране берет цвет из картинки глаза в точке distort(r),
+ * и после линзы картинка выглядит неискаженной (предыскажение бочкой). Картинка глаза строится
+ * камерой с заданным вертикальным углом обзора, сетка занимает весь viewport глаза [-1, 1].
+ * Вершина: x, y (NDC), u, v (текстурные координаты картинки глаза), яркость (0 вне картинки).
+ * При k1 = k2 = 0 сетка просто копирует картинку глаза на экран.
+ * Формат кэша (little-endian): magic (int), версия (int), k1, k2, fov, aspect (4 float),
+ * cols, rows (2 int), вершины (float), индексы (short) */
+
+class DistortionMesh {
+    /** Параметры формата кэша */
+    static final int MAGIC = 0x4D445647;        // "GVDM"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 * 8;
+    /** Число float на вершину */
+    static final int VERTEX_SIZE = 5;
+    /** Допуск на выход текстурных координат за картинку из-за погрешности округления */
+    private static final float EDGE_EPSILON = 1e-4f;
+
+    final float k1, k2;         // Коэффициенты искажения линзы
+    final float fov;            // Вертикальный угол обзора камеры глаза (град)
+    final float aspect;         // Отношение ширины viewport-а глаза к высоте
+    final int cols, rows;       // Число ячеек сетки
+    final float[] vertices;
+    final short[] indices;
+
+    /** Построение сетки
+     * @param k1, k2 - коэффициенты искажения линзы
+     * @param fov - вертикальный угол обзора камеры глаза (град)
+     * @param aspect - отношение ширины viewport-а глаза к высоте
+     * @param cols, rows - число ячеек сетки (вершин не больше 32767) */
+    DistortionMesh(float k1, float k2, float fov, float aspect, int cols, int rows) {
+        this(k1, k2, fov, aspect, cols, rows,
+                new float[(cols + 1) * (rows + 1) * VERTEX_SIZE], new short[cols * rows * 6]);
+        if ((cols + 1) * (rows + 1) > Short.MAX_VALUE) throw new IllegalArgumentException("Too many vertices");
+        generate();
+    }
+
+    private DistortionMesh(float k1, float k2, float fov, float aspect, int cols, int rows,
+                           float[] vertices, short[] indices) {
+        this.k1 = k1;
+        this.k2 = k2;
+        this.fov = fov;
+        this.aspect = aspect;
+        this.cols = cols;
+        this.rows = rows;
+        this.vertices = vertices;
+        this.indices = indices;
+    }
+
+    /** Видимый через линзу тангенс угла для точки экрана */
+    static float distort(float k1, float k2, float r) {
+        float r2 = r * r;
+        return r * (1 + k1 * r2 + k2 * r2 * r2);
+    }
+
+    /** Обратная функция: точка экрана, видимая под тангенсом угла r (метод Ньютона) */
+    static float undistort(float k1, float k2, float r) {
+        float s = r;
+        for (int i = 0; i < 10; i++) {
+            float s2 = s * s;
+            float f = s * (1 + k1 * s2 + k2 * s2 * s2) - r;
+            float df = 1 + 3 * k1 * s2 + 5 * k2 * s2 * s2;
+            if (df <= 0) break;
+            float step = f / df;
+            s -= step;
+            if (Math.abs(step) < 1e-7f) break;
+        }
+        return s;
+    }
+
+    /** Вершины и индексы */
+    private void generate() {
+        float tanV = (float)Math.tan(Math.toRadians(fov) * 0.5);
+        float tanH = tanV * aspect;
+        // Середины верхнего и нижнего краев экрана показывают края картинки глаза
+        float screenV = undistort(k1, k2, tanV);
+        float screenH = screenV * aspect;
+
+        int v = 0;
+        for (int j = 0; j <= rows; j++) {
+            float ndcY = -1 + 2f * j / rows;
+            for (int i = 0; i <= cols; i++) {
+                float ndcX = -1 + 2f * i / cols;
+                float x = ndcX * screenH, y = ndcY * screenV;
+                float r = (float)Math.sqrt(x * x + y * y);
+                float scale = r > 0 ? distort(k1, k2, r) / r : 1;
+                float u = 0.5f + x * scale / (2 * tanH);
+                float t = 0.5f + y * scale / (2 * tanV);
+                boolean inside = u >= -EDGE_EPSILON && u <= 1 + EDGE_EPSILON
+                        && t >= -EDGE_EPSILON && t <= 1 + EDGE_EPSILON;
+                vertices[v++] = ndcX;
+                vertices[v++] = ndcY;
+                vertices[v++] = Math.min(Math.max(u, 0), 1);
+                vertices[v++] = Math.min(Math.max(t, 0), 1);
+                vertices[v++] = inside ? 1 : 0;
+            }
+        }
+
+        int n = 0;
+        for (int j = 0; j < rows; j++) {
+            for (int i = 0; i < cols; i++) {
+                short a = (short)(j * (cols + 1) + i);
+                short b = (short)(a + 1);
+                short c = (short)(a + cols + 1);
+                short d = (short)(c + 1);
+                indices[n++] = a;
+                indices[n++] = b;
+                indices[n++] = d;
+                indices[n++] = a;
+                indices[n++] = d;
+                indices[n++] = c;
+            }
+        }
+    }
+
+    /** Имя файла кэша для набора параметров (хэш FNV-1a от их битового представления) */
+    static String cacheName(float k1, float k2, float fov, float aspect, int cols, int rows) {
+        long hash = 0xcbf29ce484222325L;
+        int[] words = { VERSION, Float.floatToIntBits(k1), Float.floatToIntBits(k2),
+                Float.floatToIntBits(fov), Float.floatToIntBits(aspect), cols, rows };
+        for (int word : words) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                hash ^= (word >>> shift) & 0xff;
+                hash *= 0x100000001b3L;
+            }
+        }
+        return "distortion-" + Long.toHexString(hash) + ".bin";
+    }
+
+    /** Сохранение сетки в файл кэша */
+    void save(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + vertices.length * 4 + indices.length * 2)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putFloat(k1);
+        buffer.putFloat(k2);
+        buffer.putFloat(fov);
+        buffer.putFloat(aspect);
+        buffer.putInt(cols);
+        buffer.putInt(rows);
+        buffer.asFloatBuffer().put(vertices);
+        buffer.position(buffer.position() + vertices.length * 4);
+        buffer.asShortBuffer().put(indices);
+        buffer.rewind();
+
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /** Чтение сетки из файла кэша
+     * @return сетка или null, если файла нет, он другой версии или построен для других параметров */
+    static DistortionMesh load(File file, float k1, float k2, float fov, float aspect, int cols, int rows) throws IOException {
+        if (!file.isFile()) return null;
+        int vertexCount = (cols + 1) * (rows + 1) * VERTEX_SIZE, indexCount = cols * rows * 6;
+        long size = HEADER_SIZE + vertexCount * 4L + indexCount * 2L;
+        if (file.length() != size) return null;
+
+        ByteBuffer buffer = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) return null;
+            }
+        } finally {
+            stream.close();
+        }
+        buffer.flip();
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+        // Параметры сравниваются побитово: хэш в имени файла мог совпасть случайно
+        if (Float.floatToIntBits(buffer.getFloat()) != Float.floatToIntBits(k1)
+                || Float.floatToIntBits(buffer.getFloat()) != Float.floatToIntBits(k2)
+                || Float.floatToIntBits(buffer.getFloat()) != Float.floatToIntBits(fov)
+                || Float.floatToIntBits(buffer.getFloat()) != Float.floatToIntBits(aspect)
+                || buffer.getInt() != cols || buffer.getInt() != rows) return null;
+
+        float[] vertices = new float[vertexCount];
+        short[] indices = new short[indexCount];
+        buffer.asFloatBuffer().get(vertices);
+        buffer.position(buffer.position() + vertexCount * 4);
+        buffer.asShortBuffer().get(indices);
+        return new DistortionMesh(k1, k2, fov, aspect, cols, rows, vertices, indices);
+    }
+
+    /** Сетка из кэша, а если ее там нет - построение и сохранение в кэш
+     * @param cacheDir - каталог кэша (создается при необходимости) */
+    static DistortionMesh obtain(File cacheDir, float k1, float k2, float fov, float aspect, int cols, int rows) throws IOException {
+        File file = new File(cacheDir, cacheName(k1, k2, fov, aspect, cols, rows));
+        DistortionMesh mesh = load(file, k1, k2, fov, aspect, cols, rows);
+        if (mesh != null) return mesh;
+        mesh = new DistortionMesh(k1, k2, fov, aspect, cols, rows);
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) throw new IOException("Cannot create " + cacheDir);
+        mesh.save(file);
+        return mesh;
+    }
+}
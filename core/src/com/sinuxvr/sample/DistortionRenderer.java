@@ -0,0 +1,136 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix3;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+/** Проход коррекции искажений линз
+ * Каждый глаз рисуется в свой FBO, затем картинки выводятся на экран через заранее построенную
+ * сетку DistortionMesh. Искажение вычислено в вершинах, во фрагментном шейдере остается одна
+ * выборка из текстуры, что на мобильных GPU намного дешевле попиксельного шейдера искажения.
+ * При масштабе разрешения меньше 1 глаз рисуется в левый нижний угол своего FBO (память не
+ * перевыделяется), а текстурные координаты сетки умножаются на ту же долю.
+ * Текстурные координаты вершин поворачиваются матрицей перепроекции (Timewarp) и проецируются
+ * заново в вершинном шейдере, так что выборка из текстуры остается независимой.
+ * Использование: begin(0), отрисовка левого глаза, end(0), то же для 1, present(...) */
+
+class DistortionRenderer implements Disposable {
+    private static final String VERTEX_SHADER =
+            "attribute vec2 a_position;\n" +
+            "attribute vec2 a_texCoord0;\n" +
+            "attribute float a_vignette;\n" +
+            "uniform vec2 u_uvScale;\n" +
+            "uniform vec2 u_tanHalf;\n" +
+            "uniform mat3 u_reprojection;\n" +
+            "varying vec2 v_texCoord;\n" +
+            "varying float v_vignette;\n" +
+            "void main() {\n" +
+            "    vec3 dir = u_reprojection * vec3((a_texCoord0 * 2.0 - 1.0) * u_tanHalf, -1.0);\n" +
+            "    vec2 uv = dir.xy / (-dir.z * 2.0 * u_tanHalf) + 0.5;\n" +
+            "    vec2 inside = step(vec2(-0.001), uv) * step(uv, vec2(1.001));\n" +
+            "    v_texCoord = clamp(uv, 0.0, 1.0) * u_uvScale;\n" +
+            "    v_vignette = a_vignette * inside.x * inside.y * step(0.001, -dir.z);\n" +
+            "    gl_Position = vec4(a_position, 0.0, 1.0);\n" +
+            "}\n";
+    private static final String FRAGMENT_SHADER =
+            "#ifdef GL_ES\n" +
+            "precision mediump float;\n" +
+            "#endif\n" +
+            "uniform sampler2D u_texture;\n" +
+            "varying vec2 v_texCoord;\n" +
+            "varying float v_vignette;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = vec4(texture2D(u_texture, v_texCoord).rgb * v_vignette, 1.0);\n" +
+            "}\n";
+
+    private final FrameBuffer[] eyeBuffers = new FrameBuffer[2];   // Картинки левого и правого глаза
+    private final Mesh mesh;
+    private final ShaderProgram shader;
+    private final int eyeWidth, eyeHeight;     // Полный размер FBO глаза (пикс)
+    private int scaledWidth, scaledHeight;     // Используемая часть FBO при текущем масштабе
+    private final float tanH, tanV;            // Тангенсы половины углов обзора картинки глаза
+    private final Matrix3 reprojection = new Matrix3();    // Поворот к текущей ориентации
+
+    /** Конструктор
+     * @param distortionMesh - сетка искажения (одна на оба глаза, линзы симметричны)
+     * @param eyeWidth, eyeHeight - размеры картинки глаза (пикс) */
+    DistortionRenderer(DistortionMesh distortionMesh, int eyeWidth, int eyeHeight) {
+        this.eyeWidth = scaledWidth = eyeWidth;
+        this.eyeHeight = scaledHeight = eyeHeight;
+        tanV = (float)Math.tan(Math.toRadians(distortionMesh.fov) * 0.5);
+        tanH = tanV * distortionMesh.aspect;
+        for (int i = 0; i < eyeBuffers.length; i++) {
+            eyeBuffers[i] = new FrameBuffer(Pixmap.Format.RGB888, eyeWidth, eyeHeight, true);
+            eyeBuffers[i].getColorBufferTexture().setFilter(Texture.TextureFilter.Linear, Texture.TextureFilter.Linear);
+        }
+        mesh = new Mesh(true, distortionMesh.vertices.length / DistortionMesh.VERTEX_SIZE, distortionMesh.indices.length,
+                new VertexAttribute(VertexAttributes.Usage.Position, 2, ShaderProgram.POSITION_ATTRIBUTE),
+                new VertexAttribute(VertexAttributes.Usage.TextureCoordinates, 2, ShaderProgram.TEXCOORD_ATTRIBUTE + "0"),
+                new VertexAttribute(VertexAttributes.Usage.Generic, 1, "a_vignette"));
+        mesh.setVertices(distortionMesh.vertices);
+        mesh.setIndices(distortionMesh.indices);
+        shader = new ShaderProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+        if (!shader.isCompiled()) throw new GdxRuntimeException("Distortion shader: " + shader.getLog());
+    }
+
+    /** Масштаб разрешения картинок глаз (применяется со следующего begin())
+     * @param scale - доля от полного размера FBO (до 1) */
+    void setScale(float scale) {
+        scaledWidth = Math.max(1, Math.min(eyeWidth, Math.round(eyeWidth * scale)));
+        scaledHeight = Math.max(1, Math.min(eyeHeight, Math.round(eyeHeight * scale)));
+    }
+
+    /** Матрица перепроекции для следующего present() (единичная - без поворота) */
+    void setReprojection(Matrix3 matrix) {
+        reprojection.set(matrix);
+    }
+
+    /** Начало отрисовки глаза в его FBO (viewport - используемая часть FBO)
+     * @param eye - 0 левый, 1 правый */
+    void begin(int eye) {
+        eyeBuffers[eye].begin();
+        Gdx.gl.glViewport(0, 0, scaledWidth, scaledHeight);
+        Gdx.gl.glClearColor(0f, 0f, 0f, 1f);
+        Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT | GL20.GL_DEPTH_BUFFER_BIT);
+    }
+
+    /** Конец отрисовки глаза, возврат к экрану */
+    void end(int eye) {
+        eyeBuffers[eye].end();
+    }
+
+    /** Вывод обеих картинок на экран через сетку искажения
+     * @param screenHalfWidth, screenHeight - размеры половины экрана на один глаз (пикс) */
+    void present(int screenHalfWidth, int screenHeight) {
+        Gdx.gl.glDisable(GL20.GL_DEPTH_TEST);
+        Gdx.gl.glDisable(GL20.GL_CULL_FACE);
+        Gdx.gl.glDisable(GL20.GL_BLEND);
+        shader.begin();
+        shader.setUniformi("u_texture", 0);
+        shader.setUniformf("u_uvScale", (float)scaledWidth / eyeWidth, (float)scaledHeight / eyeHeight);
+        shader.setUniformf("u_tanHalf", tanH, tanV);
+        shader.setUniformMatrix("u_reprojection", reprojection);
+        for (int eye = 0; eye < eyeBuffers.length; eye++) {
+            Gdx.gl.glViewport(eye * screenHalfWidth, 0, screenHalfWidth, screenHeight);
+            eyeBuffers[eye].getColorBufferTexture().bind(0);
+            mesh.render(shader, GL20.GL_TRIANGLES);
+        }
+        shader.end();
+    }
+
+    @Override
+    public void dispose() {
+        for (FrameBuffer buffer : eyeBuffers) buffer.dispose();
+        mesh.dispose();
+        shader.dispose();
+    }
+}
@@ -0,0 +1,192 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Quaternion;
+
+/** Мультипликативный фильтр Калмана (MEKF) с ошибкой ориентации из 3 компонент
+ * Гироскоп продвигает ориентацию и ковариацию ошибки, акселерометр корректирует наклон
+ * (измерение - направление вверх в осях устройства), магнитометр - только рыскание
+ * (измерение - угол горизонтальной проекции поля от севера). Смещение нуля гироскопа не оценивается */
+
+class EkfFilter implements OrientationFilter {
+    /** Начальная неопределенность ориентации (рад^2) */
+    private static final float INITIAL_VARIANCE = 0.1f;
+
+    private float gyroNoise = 0.02f;            // Шум гироскопа (рад/с/sqrt(Гц))
+    private float accNoise = 0.3f;              // Шум направления гравитации (в долях g)
+    private float magNoise = 0.2f;              // Шум угла рыскания по магнитометру (рад)
+
+    private float x, y, z, w = 1;               // Ориентация
+    private final float[] p = new float[9];     // Ковариация ошибки ориентации (3x3, по строкам)
+    private final float[] h = new float[9];     // Матрица измерения
+    private final float[] ph = new float[9];    // P * H^T
+    private final float[] s = new float[9];     // Ковариация невязки
+    private final float[] k = new float[9];     // Коэффициент усиления
+    private final float[] tmp = new float[9];
+    private final Quaternion orientation = new Quaternion(0, 0, 0, 1);
+
+    EkfFilter() {
+        reset(orientation);
+    }
+
+    /** Настройка шумов модели
+     * @param gyroNoise - шум гироскопа (рад/с/sqrt(Гц))
+     * @param accNoise - шум направления гравитации (доли g), включая линейные ускорения головы
+     * @param magNoise - шум рыскания по магнитометру (рад) */
+    void setNoise(float gyroNoise, float accNoise, float magNoise) {
+        this.gyroNoise = gyroNoise;
+        this.accNoise = accNoise;
+        this.magNoise = magNoise;
+    }
+
+    @Override
+    public int getRequiredSensors() {
+        return ACCELEROMETER | GYROSCOPE;
+    }
+
+    @Override
+    public void reset(Quaternion q) {
+        x = q.x;
+        y = q.y;
+        z = q.z;
+        w = q.w;
+        for (int i = 0; i < 9; i++) p[i] = (i % 4 == 0) ? INITIAL_VARIANCE : 0;
+    }
+
+    /** Прогноз: поворот ориентации и P = F * P * F^T + Q, F = I - [w*dt]x */
+    @Override
+    public void integrate(float wX, float wY, float wZ, float dt) {
+        rotate(wX * dt, wY * dt, wZ * dt);
+        skew(wX * dt, wY * dt, wZ * dt, h);
+        for (int i = 0; i < 9; i++) h[i] = ((i % 4 == 0) ? 1 : 0) - h[i];
+        multiply(h, p, tmp, false);
+        multiply(tmp, h, p, true);
+        float q = gyroNoise * gyroNoise * dt;
+        p[0] += q;
+        p[4] += q;
+        p[8] += q;
+    }
+
+    @Override
+    public void correct(float[] acc, float[] mag, boolean useMag, float dt) {
+        float aLen = (float)Math.sqrt(acc[0] * acc[0] + acc[1] * acc[1] + acc[2] * acc[2]);
+        if (aLen == 0) return;
+
+        // Ожидаемое направление вверх в осях устройства: v = R^T * (0, 1, 0)
+        float r10 = 2 * (x * y + w * z), r11 = 1 - 2 * (x * x + z * z), r12 = 2 * (y * z - w * x);
+        // Измерение: H = [v]x, невязка = a - v
+        skew(r10, r11, r12, h);
+        multiply(p, h, ph, true);
+        multiply(h, ph, s, false);
+        float r = accNoise * accNoise;
+        s[0] += r;
+        s[4] += r;
+        s[8] += r;
+        if (!invert(s, tmp)) return;
+        multiply(ph, tmp, k, false);
+        float ex = acc[0] / aLen - r10, ey = acc[1] / aLen - r11, ez = acc[2] / aLen - r12;
+        float dx = k[0] * ex + k[1] * ey + k[2] * ez;
+        float dy = k[3] * ex + k[4] * ey + k[5] * ez;
+        float dz = k[6] * ex + k[7] * ey + k[8] * ez;
+        rotate(dx, dy, dz);
+        // P = (I - K * H) * P
+        multiply(k, h, tmp, false);
+        for (int i = 0; i < 9; i++) tmp[i] = ((i % 4 == 0) ? 1 : 0) - tmp[i];
+        multiply(tmp, p, s, false);
+        symmetrize(s, p);
+
+        if (useMag) correctYaw(mag);
+    }
+
+    /** Коррекция рыскания: угол горизонтальной проекции поля в мировых осях от севера (+X)
+     * при ошибке ориентации d равен (R * d).y, то есть H = строка 1 матрицы R */
+    private void correctYaw(float[] mag) {
+        float r00 = 1 - 2 * (y * y + z * z), r01 = 2 * (x * y - w * z), r02 = 2 * (x * z + w * y);
+        float r10 = 2 * (x * y + w * z), r11 = 1 - 2 * (x * x + z * z), r12 = 2 * (y * z - w * x);
+        float r20 = 2 * (x * z - w * y), r21 = 2 * (y * z + w * x), r22 = 1 - 2 * (x * x + y * y);
+        float hx = r00 * mag[0] + r01 * mag[1] + r02 * mag[2];
+        float hz = r20 * mag[0] + r21 * mag[1] + r22 * mag[2];
+        if (hx == 0 && hz == 0) return;
+        float yaw = (float)Math.atan2(hz, hx);
+
+        // Скалярное измерение: P * H^T, S = H * P * H^T + r
+        float phX = p[0] * r10 + p[1] * r11 + p[2] * r12;
+        float phY = p[3] * r10 + p[4] * r11 + p[5] * r12;
+        float phZ = p[6] * r10 + p[7] * r11 + p[8] * r12;
+        float sv = r10 * phX + r11 * phY + r12 * phZ + magNoise * magNoise;
+        float kX = phX / sv, kY = phY / sv, kZ = phZ / sv;
+        // Измерение - yaw, ожидание - 0
+        rotate(kX * yaw, kY * yaw, kZ * yaw);
+        // P = P - K * (H * P), H * P = (P * H^T)^T для симметричной P
+        p[0] -= kX * phX; p[1] -= kX * phY; p[2] -= kX * phZ;
+        p[3] -= kY * phX; p[4] -= kY * phY; p[5] -= kY * phZ;
+        p[6] -= kZ * phX; p[7] -= kZ * phY; p[8] -= kZ * phZ;
+    }
+
+    @Override
+    public Quaternion getOrientation() {
+        return orientation.set(x, y, z, w);
+    }
+
+    /** Поворот ориентации на вектор поворота в осях устройства (умножение справа) */
+    private void rotate(float rx, float ry, float rz) {
+        float angle = (float)Math.sqrt(rx * rx + ry * ry + rz * rz);
+        if (angle < 1e-9f) return;
+        float sn = (float)Math.sin(angle * 0.5f) / angle;
+        float dx = rx * sn, dy = ry * sn, dz = rz * sn, dw = (float)Math.cos(angle * 0.5f);
+        float nx = w * dx + x * dw + y * dz - z * dy;
+        float ny = w * dy + y * dw + z * dx - x * dz;
+        float nz = w * dz + z * dw + x * dy - y * dx;
+        float nw = w * dw - x * dx - y * dy - z * dz;
+        float norm = 1f / (float)Math.sqrt(nx * nx + ny * ny + nz * nz + nw * nw);
+        x = nx * norm;
+        y = ny * norm;
+        z = nz * norm;
+        w = nw * norm;
+    }
+
+    /** Кососимметричная матрица векторного произведения [v]x */
+    private static void skew(float vx, float vy, float vz, float[] out) {
+        out[0] = 0; out[1] = -vz; out[2] = vy;
+        out[3] = vz; out[4] = 0; out[5] = -vx;
+        out[6] = -vy; out[7] = vx; out[8] = 0;
+    }
+
+    /** out = a * b (или a * b^T), out не должен совпадать с a и b */
+    private static void multiply(float[] a, float[] b, float[] out, boolean transposeB) {
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                float sum = 0;
+                for (int n = 0; n < 3; n++) sum += a[i * 3 + n] * (transposeB ? b[j * 3 + n] : b[n * 3 + j]);
+                out[i * 3 + j] = sum;
+            }
+        }
+    }
+
+    /** Обращение матрицы 3x3
+     * @return false, если матрица вырождена */
+    private static boolean invert(float[] m, float[] out) {
+        float c00 = m[4] * m[8] - m[5] * m[7];
+        float c01 = m[5] * m[6] - m[3] * m[8];
+        float c02 = m[3] * m[7] - m[4] * m[6];
+        float det = m[0] * c00 + m[1] * c01 + m[2] * c02;
+        if (Math.abs(det) < 1e-12f) return false;
+        float inv = 1f / det;
+        out[0] = c00 * inv;
+        out[1] = (m[2] * m[7] - m[1] * m[8]) * inv;
+        out[2] = (m[1] * m[5] - m[2] * m[4]) * inv;
+        out[3] = c01 * inv;
+        out[4] = (m[0] * m[8] - m[2] * m[6]) * inv;
+        out[5] = (m[2] * m[3] - m[0] * m[5]) * inv;
+        out[6] = c02 * inv;
+        out[7] = (m[1] * m[6] - m[0] * m[7]) * inv;
+        out[8] = (m[0] * m[4] - m[1] * m[3]) * inv;
+        return true;
+    }
+
+    /** out = (m + m^T) / 2 - против накопления несимметричности */
+    private static void symmetrize(float[] m, float[] out) {
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) out[i * 3 + j] = (m[i * 3 + j] + m[j * 3 + i]) * 0.5f;
+        }
+    }
+}
@@ -3,10 +3,20 @@ package com.sinuxvr.sample;
 import com.badlogic.gdx.ApplicationAdapter;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.resolvers.InternalFileHandleResolver;
+import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.g3d.Material;
 import com.badlogic.gdx.graphics.g3d.Model;
-import com.badlogic.gdx.graphics.g3d.ModelBatch;
 import com.badlogic.gdx.graphics.g3d.ModelInstance;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.attributes.ColorAttribute;
+import com.badlogic.gdx.graphics.g3d.utils.ModelBuilder;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Pool;
+
+import java.io.IOException;
 
 /** Главный класс приложения, здесь производим инициализацию камеры, модели и выполняем отрисовку
  * Этот пример распространяется под лицензией Apache License 2.0
@@ -23,16 +33,65 @@ import com.badlogic.gdx.graphics.g3d.ModelInstance;
 
 class GdxVR extends ApplicationAdapter {
 
+	/** Бюджет времени на загрузку ресурсов за кадр (мс) */
+	private static final int LOAD_BUDGET_MILLIS = 8;
+	/** Коррекция искажений линз и их коэффициенты (по умолчанию - Cardboard первой версии) */
+	private static final boolean LENS_DISTORTION = true;
+	private static final float LENS_K1 = 0.441f;
+	private static final float LENS_K2 = 0.156f;
+	/** Число ячеек сетки искажения по каждой оси */
+	private static final int DISTORTION_GRID = 40;
+	/** Динамическое разрешение картинок глаз и его пределы */
+	private static final boolean DYNAMIC_RESOLUTION = true;
+	private static final float MIN_RESOLUTION_SCALE = 0.5f;
+	private static final float RESOLUTION_STEP = 0.1f;
+	/** Перепроекция прошлых картинок глаз, если кадр не уложился в бюджет */
+	private static final boolean TIMEWARP = true;
+	/** Объединение частей неподвижной комнаты по материалам при загрузке (с кэшем результата) */
+	private static final boolean MERGE_STATIC_MESHES = true;
+	/** Выбор уровней детализации комнаты по размеру на экране (уровни строятся при объединении) */
+	private static final boolean LEVELS_OF_DETAIL = true;
+	/** Поздняя фиксация ориентации: матрицы обоих глаз уточняются по свежему снимку прямо перед
+	 * отрисовкой стереопары (один снимок на пару: глаза и перепроекция видят одну ориентацию) */
+	private static final boolean LATE_LATCH = true;
+	/** Запас угла обзора при отсечении на поворот головы между сбором сцены и фиксацией (град) */
+	private static final float LATCH_CULL_MARGIN = 5f;
+	/** Глаза рисуются во внеэкранные буферы (нужно и коррекции линз, и динамическому разрешению) */
+	static final boolean OFFSCREEN_EYES = LENS_DISTORTION || DYNAMIC_RESOLUTION;
+
 	static VRSensorManager vrSensorManager;  // Менеджер для получения данных с датчиков
+	private final long startNanos;           // Момент запуска (для замера времени до первого кадра)
+	private final boolean offscreenEyes;     // Рисуются ли глаза во внеэкранные буферы
+	private boolean firstFrameReported;      // Был ли уже выведен первый стереокадр
 	private int scrHeight, scrHalfWidth;     // Для хранения размеров viewport
 	private AssetManager assets;			 // Загрузчик ресурсов
-	private ModelBatch modelBatch;			 // Пакетник для модели
+	private StereoModelBatch modelBatch;	 // Пакетник для модели (один проход сборки на оба глаза)
 	private ModelInstance roomInstance;      // Экземпляр модели комнаты
+	private Array<Renderable> roomRenderables; // Объекты отрисовки неподвижной комнаты
+	private SceneIndex roomIndex;            // Пространственный индекс для отсечения по frustum-у
+	private LodSelector roomLods;            // Уровни детализации комнаты (null - полная детализация)
+	private int trianglesDrawn;              // Треугольников в последнем кадре (оба глаза)
 	private VRCamera vrCamera;               // VR камера
+	private Model placeholderModel;          // Простое окружение на время загрузки
+	private ModelInstance placeholderInstance;
+	private long lastFrameNanos;             // Начало предыдущего кадра
+	private DistortionRenderer distortion;   // Проход коррекции линз (null - глаза рисуются прямо на экран)
+	private ResolutionController resolutionController; // Регулятор разрешения глаз (null - полное разрешение)
+	private Timewarp timewarp;               // Перепроекция (null - сцена рисуется каждый кадр)
+	private long lastWorkNanos;              // Время работы предыдущего кадра
 
 	/** Конструктор */
 	GdxVR(VRSensorManager vrSensorManager) {
+		this(vrSensorManager, OFFSCREEN_EYES);
+	}
+
+	/** Конструктор
+	 * @param offscreenEyes - false - глаза рисуются прямо на экран без коррекции линз и динамического
+	 *                      разрешения (например, при запуске без GPU, где нет FBO) */
+	GdxVR(VRSensorManager vrSensorManager, boolean offscreenEyes) {
 		GdxVR.vrSensorManager = vrSensorManager;
+		this.offscreenEyes = offscreenEyes;
+		startNanos = System.nanoTime();
 	}
 
 	/** Инициализация и загрузка ресурсов */
@@ -42,49 +101,207 @@ class GdxVR extends ApplicationAdapter {
 		scrHalfWidth = Gdx.graphics.getWidth() / 2;
 		scrHeight = Gdx.graphics.getHeight();
 
-		// Загрузка модели из файла
-		modelBatch = new ModelBatch();
+		// Модель ставится в очередь загрузки, которая идет порциями в render(),
+		// а пока она грузится, отображается сетка пола
+		modelBatch = new StereoModelBatch();
+		if (LATE_LATCH) modelBatch.setCullMargin(LATCH_CULL_MARGIN);
 		assets = new  AssetManager();
+		if (MERGE_STATIC_MESHES) {
+			assets.setLoader(Model.class, ".g3db",
+					new StaticModelLoader(new InternalFileHandleResolver(), Gdx.files.local("cache").file()));
+		}
 		assets.load("room.g3db", Model.class);
-		assets.finishLoading();
-		Model roomModel = assets.get("room.g3db");
-		roomInstance = new ModelInstance(roomModel);
+		placeholderModel = new ModelBuilder().createLineGrid(20, 20, 1f, 1f,
+				new Material(ColorAttribute.createDiffuse(Color.GRAY)), VertexAttributes.Usage.Position);
+		placeholderInstance = new ModelInstance(placeholderModel);
 
 		// Создание камеры (fov, parallax, near, far) и установка позиции
 		vrCamera = new VRCamera(90, 0.4f, 0.1f, 30f);
 		vrCamera.setPosition(-1.7f, 3f, 3f);
+		// Ориентация прогнозируется на момент вывода кадра (примерно кадр рендера + развертка)
+		vrCamera.setLookAhead(0.025f);
+
+		// Сетка искажения берется из кэша, при смене линз или угла обзора строится заново
+		// (без коррекции линз - сетка просто копирует картинку глаза)
+		if (offscreenEyes) {
+			float fov = vrCamera.getLeftCam().fieldOfView, aspect = (float)scrHalfWidth / scrHeight;
+			DistortionMesh mesh;
+			if (LENS_DISTORTION) {
+				try {
+					mesh = DistortionMesh.obtain(Gdx.files.local("cache").file(), LENS_K1, LENS_K2, fov, aspect,
+							DISTORTION_GRID, DISTORTION_GRID);
+				} catch (IOException e) {
+					Gdx.app.error("GdxVR", "Distortion mesh cache unavailable", e);
+					mesh = new DistortionMesh(LENS_K1, LENS_K2, fov, aspect, DISTORTION_GRID, DISTORTION_GRID);
+				}
+			} else {
+				mesh = new DistortionMesh(0, 0, fov, aspect, DISTORTION_GRID, DISTORTION_GRID);
+			}
+			distortion = new DistortionRenderer(mesh, scrHalfWidth, scrHeight);
+		}
+
+		// Бюджет кадра - период обновления экрана
+		if (offscreenEyes) {
+			int refreshRate = Gdx.graphics.getDisplayMode().refreshRate;
+			if (refreshRate <= 0) refreshRate = 60;
+			long budgetNanos = 1000000000L / refreshRate;
+			if (DYNAMIC_RESOLUTION) {
+				resolutionController = new ResolutionController(MIN_RESOLUTION_SCALE, 1f, RESOLUTION_STEP, budgetNanos);
+			}
+			if (TIMEWARP) timewarp = new Timewarp(budgetNanos);
+		}
 
 		// Разрешаем коррекцию дрифта при помощи компаса
 		vrSensorManager.useDriftCorrection(true);
+		// Гироскоп интегрируется по меткам времени показаний, а не по времени кадра
+		vrSensorManager.useTimestampIntegration(true);
+
+		// Строки телеметрии дублируются в файл рядом с приложением
+		if (Telemetry.ENABLED) Telemetry.setDumpFile(Gdx.files.local("telemetry.log"));
+	}
+
+	/** Создание экземпляра загруженной комнаты */
+	private void onRoomLoaded() {
+		Model roomModel = assets.get("room.g3db");
+		roomInstance = new ModelInstance(roomModel);
+
+		// Комната неподвижна, поэтому объекты отрисовки собираются и индексируются один раз
+		roomRenderables = new Array<Renderable>();
+		roomInstance.getRenderables(roomRenderables, new Pool<Renderable>() {
+			@Override
+			protected Renderable newObject() {
+				return new Renderable();
+			}
+		});
+		roomIndex = SceneIndex.fromRenderables(roomRenderables);
+		if (LEVELS_OF_DETAIL) roomLods = new LodSelector(roomRenderables, roomModel);
+		Gdx.app.log("GdxVR", "Scene loaded in " + (System.nanoTime() - startNanos) / 1000000 + " ms");
+	}
+
+	/** Загружена ли уже комната (до этого рисуется сетка пола) */
+	boolean isSceneLoaded() {
+		return roomInstance != null;
+	}
+
+	/** Пакетник сцены (его статистика относится к последнему кадру с отрисовкой сцены) */
+	StereoModelBatch getModelBatch() {
+		return modelBatch;
 	}
 
-	/** Отрисовка стереопары осуществляется при помощи изменения viewport-а */
+	/** Треугольников, отрисованных в последнем кадре для обоих глаз (0 - кадр перепроецирован) */
+	int getTrianglesDrawn() {
+		return trianglesDrawn;
+	}
+
+	/** Возраст снимка ориентации, по которому построены матрицы стереопары (нс) */
+	long getLatchAge() {
+		return vrCamera.getLatchAge();
+	}
+
+	/** Поздняя фиксация ориентации перед отрисовкой стереопары */
+	private void latch() {
+		vrCamera.latch();
+		if (Telemetry.ENABLED) Telemetry.record(Telemetry.LATCH_AGE, vrCamera.getLatchAge());
+	}
+
+	/** Отрисовка стереопары: каждый глаз рисуется в свой FBO и выводится через сетку искажения
+	 * (без коррекции линз - прямо в свою половину экрана при помощи изменения viewport-а) */
 	@Override
 	public void render () {
+		long frameStart = System.nanoTime();
+		long frameInterval = lastFrameNanos != 0 ? frameStart - lastFrameNanos : 0;
+		lastFrameNanos = frameStart;
+		long mark = frameStart;
+		if (Telemetry.ENABLED && frameInterval != 0) Telemetry.record(Telemetry.FRAME, frameInterval);
+
+		// Порция загрузки ресурсов в пределах бюджета кадра
+		if (roomInstance == null && assets.update(LOAD_BUDGET_MILLIS)) onRoomLoaded();
+
 		// Очистка экрана
 		Gdx.gl.glClearColor(0f, 0f, 0f, 1f);
 		Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT | GL20.GL_DEPTH_BUFFER_BIT);
 
-		// Обновление параметров камеры
+		// Обновление параметров камеры (при поздней фиксации - предварительная ориентация для отсечения,
+		// сортировки и выбора уровней детализации)
+		if (Telemetry.ENABLED) mark = System.nanoTime();
 		vrCamera.update();
+		if (Telemetry.ENABLED) Telemetry.since(Telemetry.CAMERA_UPDATE, mark);
+
+		// Если предыдущий кадр не уложился в бюджет, сцена не рисуется, а прошлые картинки глаз
+		// поворачиваются к текущей ориентации
+		boolean fresh = timewarp == null || timewarp.beginFrame(frameInterval, lastWorkNanos);
+		if (fresh) {
+			// Сбор, отсечение и сортировка сцены один раз на оба глаза
+			modelBatch.begin(vrCamera);
+			if (roomLods != null) roomLods.select(vrCamera);
+			if (roomInstance != null) modelBatch.render(roomRenderables, roomIndex);
+			else modelBatch.render(placeholderInstance);
 
-		// Отрисовка сцены для левого глаза
-		Gdx.gl.glViewport(0, 0, scrHalfWidth, scrHeight);
-		modelBatch.begin(vrCamera.getLeftCam());
-		modelBatch.render(roomInstance);
-		modelBatch.end();
-
-		// Отрисовка сцены для правого глаза
-		Gdx.gl.glViewport(scrHalfWidth, 0, scrHalfWidth, scrHeight);
-		modelBatch.begin(vrCamera.getRightCam());
-		modelBatch.render(roomInstance);
-		modelBatch.end();
+			// Отрисовка сцены для левого глаза (в свой FBO или в левую половину экрана)
+			if (distortion != null) distortion.begin(0);
+			else Gdx.gl.glViewport(0, 0, scrHalfWidth, scrHeight);
+			// Ориентация фиксируется один раз на пару: правый глаз рисуется с той же ориентацией,
+			// и она же запоминается для перепроекции обеих картинок
+			if (LATE_LATCH) latch();
+			if (Telemetry.ENABLED) mark = System.nanoTime();
+			modelBatch.renderEye(vrCamera.getLeftCam());
+			if (Telemetry.ENABLED) mark = Telemetry.since(Telemetry.LEFT_EYE, mark);
+			if (distortion != null) distortion.end(0);
+
+			// Отрисовка сцены для правого глаза
+			if (distortion != null) distortion.begin(1);
+			else Gdx.gl.glViewport(scrHalfWidth, 0, scrHalfWidth, scrHeight);
+			if (Telemetry.ENABLED) mark = System.nanoTime();
+			modelBatch.renderEye(vrCamera.getRightCam());
+			if (Telemetry.ENABLED) mark = Telemetry.since(Telemetry.RIGHT_EYE, mark);
+			trianglesDrawn = modelBatch.getTriangles();
+			modelBatch.end();
+			if (distortion != null) distortion.end(1);
+			if (timewarp != null) timewarp.rendered(vrCamera.getOrientation());
+		} else trianglesDrawn = 0;
+
+		// Вывод картинок глаз на экран через сетку искажения (с поворотом, если картинки старые)
+		if (distortion != null) {
+			if (timewarp != null) distortion.setReprojection(timewarp.getMatrix(vrCamera.getOrientation()));
+			distortion.present(scrHalfWidth, scrHeight);
+		}
+
+		// Задержка от показания датчика, по которому построен кадр, до конца его отрисовки
+		if (Telemetry.ENABLED) {
+			PoseSnapshot pose = vrCamera.getPoseSnapshot();
+			if (pose.timestamp != 0) Telemetry.record(Telemetry.SENSOR_TO_RENDER, mark - pose.timestamp);
+			Telemetry.update(mark);
+		}
+
+		// Масштаб для следующего кадра (кадры с порциями загрузки и перепроекцией не показательны)
+		lastWorkNanos = System.nanoTime() - frameStart;
+		if (resolutionController != null && roomInstance != null && fresh
+				&& resolutionController.update(frameInterval, lastWorkNanos)) {
+			distortion.setScale(resolutionController.getScale());
+			Gdx.app.log("GdxVR", "Eye resolution scale " + resolutionController.getScale());
+		}
+
+		if (!firstFrameReported) {
+			firstFrameReported = true;
+			Gdx.app.log("GdxVR", "First stereo frame in " + (System.nanoTime() - startNanos) / 1000000 + " ms");
+		}
+	}
+
+	/** Пауза приложения - вывод счетчиков перепроекции */
+	@Override
+	public void pause () {
+		if (timewarp != null) {
+			Gdx.app.log("GdxVR", "Frames: " + timewarp.getFreshFrames() + " rendered, "
+					+ timewarp.getReprojectedFrames() + " reprojected");
+		}
 	}
 
 	/** Высвобождение ресурсов */
 	@Override
 	public void dispose () {
 		modelBatch.dispose();
+		if (distortion != null) distortion.dispose();
+		placeholderModel.dispose();
 		assets.dispose();
 	}
 }
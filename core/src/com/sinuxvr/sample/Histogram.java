@@ -0,0 +1,83 @@
+package com.sinuxvr.sample;
+
+/** Гистограмма длительностей с фиксированными корзинами
+ * Корзины логарифмические: на каждую степень двойки приходится SUB_COUNT равных корзин,
+ * поэтому относительная ошибка перцентиля не больше 1/SUB_COUNT при любом масштабе.
+ * Память выделяется один раз в конструкторе, record() - несколько арифметических операций.
+ * Запись и сброс - из одного потока; чтение из другого потока дает приблизительные значения */
+
+class Histogram {
+    /** Число корзин на степень двойки (2^SUB_BITS) */
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    /** Покрывает весь диапазон положительных long */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final int[] counts = new int[BUCKETS];
+    private int count;          // Число значений
+    private long max;           // Максимальное значение
+    private long sum;           // Сумма значений
+
+    /** Учет значения (отрицательные считаются нулем) */
+    void record(long value) {
+        if (value < 0) value = 0;
+        counts[index(value)]++;
+        count++;
+        sum += value;
+        if (value > max) max = value;
+    }
+
+    /** Сброс всех значений */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts[i] = 0;
+        count = 0;
+        max = 0;
+        sum = 0;
+    }
+
+    /** Число значений */
+    int getCount() {
+        return count;
+    }
+
+    /** Максимальное значение (точное) */
+    long getMax() {
+        return max;
+    }
+
+    /** Среднее значение (точное) */
+    long getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /** Перцентиль - верхняя граница корзины, в которую он попал (но не больше максимума)
+     * @param fraction - доля от 0 до 1 (0.5 - медиана) */
+    long getPercentile(float fraction) {
+        if (count == 0) return 0;
+        long rank = (long)Math.ceil(fraction * count);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+
+    /** Номер корзины: младшие SUB_COUNT значений точно, дальше по SUB_COUNT корзин на степень двойки */
+    static int index(long value) {
+        if (value < SUB_COUNT) return (int)value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int)(value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /** Наибольшее значение, попадающее в корзину */
+    static long upperBound(int index) {
+        if (index < SUB_COUNT) return index;
+        int exponent = index / SUB_COUNT + SUB_BITS - 1;
+        int sub = index % SUB_COUNT;
+        long lower = (long)(SUB_COUNT + sub) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
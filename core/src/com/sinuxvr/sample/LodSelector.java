@@ -0,0 +1,167 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.model.MeshPart;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+
+/** Уровни детализации (LOD) неподвижных частей сцены
+ * При загрузке StaticModelOptimizer упрощает каждую исходную часть отдельно (buildLevels,
+ * MeshSimplifier) и при объединении складывает уровни частей одной ячейки пространства
+ * в части того же меша с id "<часть>_lod1", "<часть>_lod2": вершины общие, отличаются индексы,
+ * поэтому уровни сохраняются в кэш модели вместе с ней и почти не занимают памяти.
+ * Объединенная часть ограничена своей ячейкой, поэтому дальние ячейки переходят на грубые уровни.
+ * Каждый стереокадр (один раз на оба глаза) select() оценивает размер ограничивающей сферы
+ * части в долях высоты картинки глаза при угле обзора VRCamera и переключает offset/size
+ * MeshPart ее объекта отрисовки на нужный уровень. Переход на более грубый уровень требует
+ * запаса HYSTERESIS, чтобы на границе уровни не мигали */
+
+class LodSelector {
+    /** Суффикс id упрощенных частей меша */
+    static final String LEVEL_SUFFIX = "_lod";
+    /** Доля треугольников исходной части на уровнях 1, 2, ... */
+    private static final float[] LEVEL_RATIOS = { 0.5f, 0.25f };
+    /** Наибольшее число упрощенных уровней */
+    static final int MAX_LEVELS = LEVEL_RATIOS.length;
+    /** Уровень не добавляется, если он сокращает треугольники предыдущего меньше чем до этой доли */
+    private static final float MIN_REDUCTION = 0.9f;
+    /** Уровень k выбирается, когда диаметр проекции сферы меньше SCREEN_FRACTIONS[k - 1] высоты глаза */
+    private static final float[] SCREEN_FRACTIONS = { 0.5f, 0.2f };
+    /** Запас при переходе на более грубый уровень (доля порога) */
+    private static final float HYSTERESIS = 0.1f;
+
+    private final Array<Renderable> renderables;
+    private final String[][] ids;           // id частей по уровням
+    private final int[][] offsets, sizes;   // Диапазоны индексов частей по уровням
+    private final float[] spheres;          // Ограничивающие сферы в мировых координатах: x, y, z, r
+    private final int[] levels;             // Текущий уровень каждого объекта
+    private int triangleCount;              // Треугольников на выбранных уровнях (все объекты, один глаз)
+
+    /** Упрощенные уровни одной части из треугольников
+     * @param vertices - вершины части
+     * @param vertexSize - число float на вершину
+     * @param positionOffset - смещение позиции в вершине
+     * @param indices - треугольники части
+     * @return индексы уровней 1, 2, ... в тех же вершинах (меньше MAX_LEVELS, если упрощение почти
+     * перестало сокращать треугольники) */
+    static short[][] buildLevels(float[] vertices, int vertexSize, int positionOffset, short[] indices) {
+        MeshSimplifier simplifier = new MeshSimplifier(vertices, vertexSize, positionOffset, indices);
+        int triangles = indices.length / 3, previous = triangles;
+        Array<short[]> levels = new Array<short[]>(short[].class);
+        for (int level = 1; level <= MAX_LEVELS; level++) {
+            short[] simplified = simplifier.simplify((int)(triangles * LEVEL_RATIOS[level - 1]));
+            // Маленькая часть может стянуться целиком, тогда она остается на прежнем уровне
+            if (simplified.length == 0 || simplified.length / 3 > previous * MIN_REDUCTION) break;
+            previous = simplified.length / 3;
+            levels.add(simplified);
+        }
+        return levels.toArray();
+    }
+
+    /** Конструктор
+     * @param renderables - объекты отрисовки неподвижной сцены (их MeshPart будут переключаться)
+     * @param model - модель, в которой ищутся части уровней */
+    LodSelector(Array<Renderable> renderables, Model model) {
+        this.renderables = renderables;
+        int count = renderables.size;
+        ids = new String[count][];
+        offsets = new int[count][];
+        sizes = new int[count][];
+        spheres = new float[count * 4];
+        levels = new int[count];
+        Vector3 center = new Vector3(), scale = new Vector3();
+        Array<MeshPart> found = new Array<MeshPart>();
+        for (int i = 0; i < count; i++) {
+            Renderable renderable = renderables.get(i);
+            MeshPart part = renderable.meshPart;
+            found.clear();
+            found.add(part);
+            for (int level = 1; ; level++) {
+                MeshPart lod = findPart(model, part.id + LEVEL_SUFFIX + level);
+                if (lod == null || lod.mesh != part.mesh) break;
+                found.add(lod);
+            }
+            ids[i] = new String[found.size];
+            offsets[i] = new int[found.size];
+            sizes[i] = new int[found.size];
+            for (int level = 0; level < found.size; level++) {
+                ids[i][level] = found.get(level).id;
+                offsets[i][level] = found.get(level).offset;
+                sizes[i][level] = found.get(level).size;
+            }
+            center.set(part.center).mul(renderable.worldTransform);
+            renderable.worldTransform.getScale(scale);
+            spheres[i * 4] = center.x;
+            spheres[i * 4 + 1] = center.y;
+            spheres[i * 4 + 2] = center.z;
+            spheres[i * 4 + 3] = part.radius * Math.max(scale.x, Math.max(scale.y, scale.z));
+            triangleCount += part.size / 3;
+        }
+    }
+
+    private static MeshPart findPart(Model model, String id) {
+        for (MeshPart part : model.meshParts) {
+            if (part.id.equals(id)) return part;
+        }
+        return null;
+    }
+
+    /** Выбор уровней для стереокадра (до сбора сцены в StereoModelBatch) */
+    void select(VRCamera vrCamera) {
+        select(vrCamera.getPosition(), vrCamera.getLeftCam().fieldOfView);
+    }
+
+    /** Выбор уровней по положению головы
+     * @param eye - середина между глазами
+     * @param fieldOfView - вертикальный угол обзора глаза (град) */
+    void select(Vector3 eye, float fieldOfView) {
+        float tanHalfFov = (float)Math.tan(fieldOfView * 0.5f * MathUtils.degreesToRadians);
+        triangleCount = 0;
+        for (int i = 0; i < levels.length; i++) {
+            float dx = spheres[i * 4] - eye.x, dy = spheres[i * 4 + 1] - eye.y, dz = spheres[i * 4 + 2] - eye.z;
+            float size = projectedSize((float)Math.sqrt(dx * dx + dy * dy + dz * dz), spheres[i * 4 + 3], tanHalfFov);
+            int current = levels[i], level = 0;
+            for (int k = 1; k < sizes[i].length; k++) {
+                float threshold = SCREEN_FRACTIONS[k - 1];
+                if (k > current) threshold *= 1 - HYSTERESIS;
+                if (size >= threshold) break;
+                level = k;
+            }
+            if (level != current) {
+                levels[i] = level;
+                MeshPart part = renderables.get(i).meshPart;
+                // Границы части (center, radius) остаются от исходного уровня
+                part.id = ids[i][level];
+                part.offset = offsets[i][level];
+                part.size = sizes[i][level];
+            }
+            triangleCount += sizes[i][level] / 3;
+        }
+    }
+
+    /** Диаметр проекции сферы в долях высоты картинки глаза (голова внутри сферы - бесконечность)
+     * @param distance - расстояние до центра сферы
+     * @param radius - радиус сферы
+     * @param tanHalfFov - тангенс половины вертикального угла обзора */
+    static float projectedSize(float distance, float radius, float tanHalfFov) {
+        if (distance <= radius) return Float.POSITIVE_INFINITY;
+        return radius / (distance * tanHalfFov);
+    }
+
+    /** Текущий уровень объекта */
+    int getLevel(int index) {
+        return levels[index];
+    }
+
+    /** Число уровней объекта (1 - без упрощенных копий) */
+    int getLevelCount(int index) {
+        return sizes[index].length;
+    }
+
+    /** Треугольников на выбранных уровнях у всех объектов (без отсечения, на один глаз) */
+    int getTriangleCount() {
+        return triangleCount;
+    }
+}
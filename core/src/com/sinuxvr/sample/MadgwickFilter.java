@@ -0,0 +1,136 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Quaternion;
+
+/** Фильтр Маджвика (S. Madgwick, 2010)
+ * Ориентация интегрируется по гироскопу и каждый шаг сдвигается на beta * dt вдоль градиента
+ * рассогласования измеренных векторов гравитации (и поля) с ожидаемыми.
+ * Формулы градиента записаны для осей Z - вверх, X - на север, поэтому внутри фильтра
+ * все векторы поворачиваются на 90 градусов вокруг X: (x, y, z) -> (x, -z, y) */
+
+class MadgwickFilter implements OrientationFilter {
+    private float beta = 0.05f;                 // Коэффициент коррекции (рад/с)
+    private float q0 = 1, q1, q2, q3;           // Ориентация во внутренних осях (w, x, y, z)
+    private final Quaternion orientation = new Quaternion(0, 0, 0, 1);
+
+    /** Настройка коэффициента коррекции
+     * @param beta - скорость схождения к измерениям (рад/с), порядка ошибки гироскопа */
+    void setBeta(float beta) {
+        this.beta = beta;
+    }
+
+    @Override
+    public int getRequiredSensors() {
+        return ACCELEROMETER | GYROSCOPE;
+    }
+
+    @Override
+    public void reset(Quaternion q) {
+        q0 = q.w;
+        q1 = q.x;
+        q2 = -q.z;
+        q3 = q.y;
+        orientation.set(q);
+    }
+
+    @Override
+    public void integrate(float wX, float wY, float wZ, float dt) {
+        float gx = wX, gy = -wZ, gz = wY;
+        // dq/dt = 0.5 * q * w
+        float d0 = 0.5f * (-q1 * gx - q2 * gy - q3 * gz);
+        float d1 = 0.5f * (q0 * gx + q2 * gz - q3 * gy);
+        float d2 = 0.5f * (q0 * gy - q1 * gz + q3 * gx);
+        float d3 = 0.5f * (q0 * gz + q1 * gy - q2 * gx);
+        q0 += d0 * dt;
+        q1 += d1 * dt;
+        q2 += d2 * dt;
+        q3 += d3 * dt;
+        normalize();
+    }
+
+    @Override
+    public void correct(float[] acc, float[] mag, boolean useMag, float dt) {
+        float ax = acc[0], ay = -acc[2], az = acc[1];
+        float norm = (float)Math.sqrt(ax * ax + ay * ay + az * az);
+        if (norm == 0 || dt <= 0) return;
+        norm = 1f / norm;
+        ax *= norm;
+        ay *= norm;
+        az *= norm;
+
+        float mx = mag[0], my = -mag[2], mz = mag[1];
+        float mNorm = (float)Math.sqrt(mx * mx + my * my + mz * mz);
+        float s0, s1, s2, s3;
+        if (useMag && mNorm > 0) {
+            mNorm = 1f / mNorm;
+            mx *= mNorm;
+            my *= mNorm;
+            mz *= mNorm;
+
+            float _2q0mx = 2f * q0 * mx, _2q0my = 2f * q0 * my, _2q0mz = 2f * q0 * mz, _2q1mx = 2f * q1 * mx;
+            float _2q0 = 2f * q0, _2q1 = 2f * q1, _2q2 = 2f * q2, _2q3 = 2f * q3;
+            float _2q0q2 = 2f * q0 * q2, _2q2q3 = 2f * q2 * q3;
+            float q0q0 = q0 * q0, q0q1 = q0 * q1, q0q2 = q0 * q2, q0q3 = q0 * q3;
+            float q1q1 = q1 * q1, q1q2 = q1 * q2, q1q3 = q1 * q3;
+            float q2q2 = q2 * q2, q2q3 = q2 * q3, q3q3 = q3 * q3;
+
+            // Опорное направление магнитного поля Земли (север + вертикальная составляющая)
+            float hx = mx * q0q0 - _2q0my * q3 + _2q0mz * q2 + mx * q1q1 + _2q1 * my * q2 + _2q1 * mz * q3 - mx * q2q2 - mx * q3q3;
+            float hy = _2q0mx * q3 + my * q0q0 - _2q0mz * q1 + _2q1mx * q2 - my * q1q1 + my * q2q2 + _2q2 * mz * q3 - my * q3q3;
+            float _2bx = (float)Math.sqrt(hx * hx + hy * hy);
+            float _2bz = -_2q0mx * q2 + _2q0my * q1 + mz * q0q0 + _2q1mx * q3 - mz * q1q1 + _2q2 * my * q3 - mz * q2q2 + mz * q3q3;
+            float _4bx = 2f * _2bx, _4bz = 2f * _2bz;
+
+            // Рассогласования по гравитации (fg) и полю (fb)
+            float fgx = 2f * q1q3 - _2q0q2 - ax;
+            float fgy = 2f * q0q1 + _2q2q3 - ay;
+            float fgz = 1f - 2f * q1q1 - 2f * q2q2 - az;
+            float fbx = _2bx * (0.5f - q2q2 - q3q3) + _2bz * (q1q3 - q0q2) - mx;
+            float fby = _2bx * (q1q2 - q0q3) + _2bz * (q0q1 + q2q3) - my;
+            float fbz = _2bx * (q0q2 + q1q3) + _2bz * (0.5f - q1q1 - q2q2) - mz;
+
+            // Градиент (транспонированный якобиан, умноженный на рассогласования)
+            s0 = -_2q2 * fgx + _2q1 * fgy - _2bz * q2 * fbx + (-_2bx * q3 + _2bz * q1) * fby + _2bx * q2 * fbz;
+            s1 = _2q3 * fgx + _2q0 * fgy - 4f * q1 * fgz + _2bz * q3 * fbx + (_2bx * q2 + _2bz * q0) * fby
+                    + (_2bx * q3 - _4bz * q1) * fbz;
+            s2 = -_2q0 * fgx + _2q3 * fgy - 4f * q2 * fgz + (-_4bx * q2 - _2bz * q0) * fbx + (_2bx * q1 + _2bz * q3) * fby
+                    + (_2bx * q0 - _4bz * q2) * fbz;
+            s3 = _2q1 * fgx + _2q2 * fgy + (-_4bx * q3 + _2bz * q1) * fbx + (-_2bx * q0 + _2bz * q2) * fby + _2bx * q1 * fbz;
+        } else {
+            float _2q0 = 2f * q0, _2q1 = 2f * q1, _2q2 = 2f * q2, _2q3 = 2f * q3;
+            float _4q0 = 4f * q0, _4q1 = 4f * q1, _4q2 = 4f * q2;
+            float _8q1 = 8f * q1, _8q2 = 8f * q2;
+            float q0q0 = q0 * q0, q1q1 = q1 * q1, q2q2 = q2 * q2, q3q3 = q3 * q3;
+
+            s0 = _4q0 * q2q2 + _2q2 * ax + _4q0 * q1q1 - _2q1 * ay;
+            s1 = _4q1 * q3q3 - _2q3 * ax + 4f * q0q0 * q1 - _2q0 * ay - _4q1 + _8q1 * q1q1 + _8q1 * q2q2 + _4q1 * az;
+            s2 = 4f * q0q0 * q2 + _2q0 * ax + _4q2 * q3q3 - _2q3 * ay - _4q2 + _8q2 * q1q1 + _8q2 * q2q2 + _4q2 * az;
+            s3 = 4f * q1q1 * q3 - _2q1 * ax + 4f * q2q2 * q3 - _2q2 * ay;
+        }
+
+        // Шаг против нормированного градиента
+        float sNorm = (float)Math.sqrt(s0 * s0 + s1 * s1 + s2 * s2 + s3 * s3);
+        if (sNorm == 0) return;
+        float step = beta * dt / sNorm;
+        q0 -= s0 * step;
+        q1 -= s1 * step;
+        q2 -= s2 * step;
+        q3 -= s3 * step;
+        normalize();
+    }
+
+    @Override
+    public Quaternion getOrientation() {
+        // Обратный поворот осей: (x, y, z) -> (x, z, -y)
+        return orientation.set(q1, q3, -q2, q0);
+    }
+
+    /** Нормализация внутреннего кватерниона */
+    private void normalize() {
+        float norm = 1f / (float)Math.sqrt(q0 * q0 + q1 * q1 + q2 * q2 + q3 * q3);
+        q0 *= norm;
+        q1 *= norm;
+        q2 *= norm;
+        q3 *= norm;
+    }
+}
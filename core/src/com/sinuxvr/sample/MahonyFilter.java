@@ -0,0 +1,103 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Quaternion;
+
+/** Фильтр Махони (R. Mahony, 2008) - нелинейный комплементарный фильтр на SO(3)
+ * Ошибка между измеренными и ожидаемыми направлениями гравитации (и поля) в осях устройства
+ * возвращается в угловую скорость пропорционально (kp) и через интеграл (ki),
+ * интеграл при этом оценивает смещение нуля гироскопа */
+
+class MahonyFilter implements OrientationFilter {
+    private float kp = 1f;                      // Пропорциональный коэффициент (1/с)
+    private float ki = 0.02f;                   // Интегральный коэффициент (1/с^2)
+    private float x, y, z, w = 1;               // Ориентация
+    private float biasX, biasY, biasZ;          // Оценка смещения гироскопа с обратным знаком (рад/с)
+    private final Quaternion orientation = new Quaternion(0, 0, 0, 1);
+
+    /** Настройка коэффициентов обратной связи
+     * @param kp - пропорциональный (1/с)
+     * @param ki - интегральный (1/с^2), 0 - без оценки смещения гироскопа */
+    void setGains(float kp, float ki) {
+        this.kp = kp;
+        this.ki = ki;
+    }
+
+    @Override
+    public int getRequiredSensors() {
+        return ACCELEROMETER | GYROSCOPE;
+    }
+
+    @Override
+    public void reset(Quaternion q) {
+        x = q.x;
+        y = q.y;
+        z = q.z;
+        w = q.w;
+        biasX = biasY = biasZ = 0;
+    }
+
+    @Override
+    public void integrate(float wX, float wY, float wZ, float dt) {
+        rotate(wX + biasX, wY + biasY, wZ + biasZ, dt);
+    }
+
+    @Override
+    public void correct(float[] acc, float[] mag, boolean useMag, float dt) {
+        float aLen = (float)Math.sqrt(acc[0] * acc[0] + acc[1] * acc[1] + acc[2] * acc[2]);
+        if (aLen == 0 || dt <= 0) return;
+        float ax = acc[0] / aLen, ay = acc[1] / aLen, az = acc[2] / aLen;
+
+        // Матрица поворота (нужны строки - мировые оси в осях устройства)
+        float r00 = 1 - 2 * (y * y + z * z), r01 = 2 * (x * y - w * z), r02 = 2 * (x * z + w * y);
+        float r10 = 2 * (x * y + w * z), r11 = 1 - 2 * (x * x + z * z), r12 = 2 * (y * z - w * x);
+        float r20 = 2 * (x * z - w * y), r21 = 2 * (y * z + w * x), r22 = 1 - 2 * (x * x + y * y);
+
+        // Ошибка по гравитации: a x v, где v - ожидаемое направление вверх в осях устройства
+        float ex = ay * r12 - az * r11;
+        float ey = az * r10 - ax * r12;
+        float ez = ax * r11 - ay * r10;
+
+        float mLen = (float)Math.sqrt(mag[0] * mag[0] + mag[1] * mag[1] + mag[2] * mag[2]);
+        if (useMag && mLen > 0) {
+            float mx = mag[0] / mLen, my = mag[1] / mLen, mz = mag[2] / mLen;
+            // Поле в мировых осях, его горизонтальная часть должна смотреть на север (+X)
+            float hx = r00 * mx + r01 * my + r02 * mz;
+            float hy = r10 * mx + r11 * my + r12 * mz;
+            float hz = r20 * mx + r21 * my + r22 * mz;
+            float bx = (float)Math.sqrt(hx * hx + hz * hz);
+            // Ожидаемое поле в осях устройства: R^T * (bx, hy, 0)
+            float vx = r00 * bx + r10 * hy;
+            float vy = r01 * bx + r11 * hy;
+            float vz = r02 * bx + r12 * hy;
+            ex += my * vz - mz * vy;
+            ey += mz * vx - mx * vz;
+            ez += mx * vy - my * vx;
+        }
+
+        if (ki > 0) {
+            biasX += ki * ex * dt;
+            biasY += ki * ey * dt;
+            biasZ += ki * ez * dt;
+        }
+        rotate(kp * ex, kp * ey, kp * ez, dt);
+    }
+
+    @Override
+    public Quaternion getOrientation() {
+        return orientation.set(x, y, z, w);
+    }
+
+    /** Поворот ориентации на угловую скорость в осях устройства за время dt (первый порядок) */
+    private void rotate(float gx, float gy, float gz, float dt) {
+        float h = 0.5f * dt;
+        float nw = w + (-x * gx - y * gy - z * gz) * h;
+        float nx = x + (w * gx + y * gz - z * gy) * h;
+        float ny = y + (w * gy - x * gz + z * gx) * h;
+        float nz = z + (w * gz + x * gy - y * gx) * h;
+        float norm = 1f / (float)Math.sqrt(nw * nw + nx * nx + ny * ny + nz * nz);
+        w = nw * norm;
+        x = nx * norm;
+        y = ny * norm;
+        z = nz * norm;
+    }
+}
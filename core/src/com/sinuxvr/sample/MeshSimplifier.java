@@ -0,0 +1,274 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.utils.IntArray;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/** Упрощение треугольной сетки стягиванием ребер по квадрикам ошибки (Garland, Heckbert, 1997)
+ * Работает на CPU над массивами вершин и индексов. Вершина стягивается в соседнюю (без новых
+ * вершин), поэтому все уровни упрощения ссылаются на исходные вершины и отличаются только
+ * индексами: нормали и текстурные координаты не пересчитываются, а уровни делят один меш.
+ * Квадрика вершины - сумма квадратов расстояний до плоскостей ее треугольников (с весом площади);
+ * граничные ребра (края сетки и швы текстур, где вершины продублированы) закреплены плоскостями,
+ * перпендикулярными треугольнику, с большим весом. Стягивание, переворачивающее соседний
+ * треугольник, пропускается.
+ * Использование: simplify(цель) можно вызывать несколько раз с убывающей целью */
+
+class MeshSimplifier {
+    /** Вес плоскостей, закрепляющих граничные ребра */
+    private static final double BOUNDARY_WEIGHT = 1000;
+    /** Наименьший косинус между нормалями треугольника до и после стягивания */
+    private static final double MIN_NORMAL_DOT = 0.2;
+
+    /** Кандидат на стягивание from -> to */
+    private static class Collapse implements Comparable<Collapse> {
+        final double cost;
+        final int from, to;
+        final int fromVersion, toVersion;   // Версии вершин на момент расчета (устаревшие отбрасываются)
+
+        Collapse(double cost, int from, int to, int fromVersion, int toVersion) {
+            this.cost = cost;
+            this.from = from;
+            this.to = to;
+            this.fromVersion = fromVersion;
+            this.toVersion = toVersion;
+        }
+
+        @Override
+        public int compareTo(Collapse other) {
+            return Double.compare(cost, other.cost);
+        }
+    }
+
+    private final float[] positions;        // x, y, z вершин
+    private final int[] triangles;          // Индексы треугольников (меняются при стягивании)
+    private final boolean[] removed;        // Выродившиеся треугольники
+    private final double[] quadrics;        // 10 коэффициентов симметричной матрицы 4x4 на вершину
+    private final IntArray[] adjacency;     // Треугольники вершины (включая уже удаленные)
+    private final int[] versions;           // Число изменений квадрики вершины
+    private final boolean[] collapsed;      // Вершина стянута в другую
+    private final PriorityQueue<Collapse> queue = new PriorityQueue<Collapse>();
+    private final double[] before = new double[4], after = new double[4];
+    private int triangleCount;              // Оставшихся треугольников
+    private double maxCost;                 // Наибольшая цена выполненного стягивания
+
+    /** Конструктор
+     * @param vertices - вершины
+     * @param vertexSize - число float на вершину
+     * @param positionOffset - смещение позиции (3 float) в вершине
+     * @param indices - треугольники (GL_TRIANGLES) */
+    MeshSimplifier(float[] vertices, int vertexSize, int positionOffset, short[] indices) {
+        int vertexCount = vertices.length / vertexSize;
+        positions = new float[vertexCount * 3];
+        for (int i = 0; i < vertexCount; i++) {
+            System.arraycopy(vertices, i * vertexSize + positionOffset, positions, i * 3, 3);
+        }
+        triangleCount = indices.length / 3;
+        triangles = new int[triangleCount * 3];
+        for (int i = 0; i < triangles.length; i++) triangles[i] = indices[i] & 0xFFFF;
+        removed = new boolean[triangleCount];
+        quadrics = new double[vertexCount * 10];
+        adjacency = new IntArray[vertexCount];
+        versions = new int[vertexCount];
+        collapsed = new boolean[vertexCount];
+        for (int i = 0; i < vertexCount; i++) adjacency[i] = new IntArray(8);
+
+        double[] plane = new double[4];
+        for (int t = 0; t < triangleCount; t++) {
+            int a = triangles[t * 3], b = triangles[t * 3 + 1], c = triangles[t * 3 + 2];
+            adjacency[a].add(t);
+            adjacency[b].add(t);
+            adjacency[c].add(t);
+            double area = facePlane(a, b, c, plane);
+            if (area <= 0) continue;
+            addPlane(a, plane, area);
+            addPlane(b, plane, area);
+            addPlane(c, plane, area);
+        }
+
+        // Ребра как пары (меньший, больший индекс): одиночные - граничные
+        long[] edges = new long[triangleCount * 3];
+        for (int t = 0; t < triangleCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                int u = triangles[t * 3 + k], v = triangles[t * 3 + (k + 1) % 3];
+                edges[t * 3 + k] = ((long)Math.min(u, v) << 32) | Math.max(u, v);
+            }
+        }
+        Arrays.sort(edges);
+        for (int i = 0; i < edges.length; ) {
+            int j = i;
+            while (j < edges.length && edges[j] == edges[i]) j++;
+            int u = (int)(edges[i] >>> 32), v = (int)edges[i];
+            if (j - i == 1) addBoundary(u, v);
+            i = j;
+        }
+        for (int i = 0; i < edges.length; i++) {
+            if (i > 0 && edges[i] == edges[i - 1]) continue;
+            push((int)(edges[i] >>> 32), (int)edges[i]);
+        }
+    }
+
+    /** Число оставшихся треугольников */
+    int getTriangleCount() {
+        return triangleCount;
+    }
+
+    /** Наибольшая цена выполненного стягивания (взвешенный площадью квадрат расстояния) */
+    double getMaxCost() {
+        return maxCost;
+    }
+
+    /** Упрощение до заданного числа треугольников (или пока есть допустимые стягивания)
+     * @param targetTriangles - желаемое число треугольников
+     * @return индексы оставшихся треугольников (в исходных вершинах) */
+    short[] simplify(int targetTriangles) {
+        while (triangleCount > targetTriangles && !queue.isEmpty()) {
+            Collapse collapse = queue.poll();
+            int from = collapse.from, to = collapse.to;
+            if (collapsed[from] || collapsed[to] || versions[from] != collapse.fromVersion
+                    || versions[to] != collapse.toVersion) continue;
+            if (flips(from, to)) continue;
+            apply(from, to);
+            maxCost = Math.max(maxCost, collapse.cost);
+        }
+        return getIndices();
+    }
+
+    /** Индексы оставшихся треугольников */
+    short[] getIndices() {
+        short[] result = new short[triangleCount * 3];
+        int n = 0;
+        for (int t = 0; t < removed.length; t++) {
+            if (removed[t]) continue;
+            for (int k = 0; k < 3; k++) result[n++] = (short)triangles[t * 3 + k];
+        }
+        return result;
+    }
+
+    /** Стягивание from -> to: треугольники с обеими вершинами удаляются, в остальных from заменяется на to */
+    private void apply(int from, int to) {
+        IntArray fromTriangles = adjacency[from];
+        for (int i = 0; i < fromTriangles.size; i++) {
+            int t = fromTriangles.get(i);
+            if (removed[t]) continue;
+            int base = t * 3;
+            if (triangles[base] == to || triangles[base + 1] == to || triangles[base + 2] == to) {
+                removed[t] = true;
+                triangleCount--;
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                if (triangles[base + k] == from) triangles[base + k] = to;
+            }
+            adjacency[to].add(t);
+        }
+        fromTriangles.clear();
+        collapsed[from] = true;
+        for (int k = 0; k < 10; k++) quadrics[to * 10 + k] += quadrics[from * 10 + k];
+        versions[to]++;
+
+        // Цены ребер вокруг to изменились вместе с его квадрикой (старые записи устарели по версии to)
+        IntArray toTriangles = adjacency[to];
+        for (int i = 0; i < toTriangles.size; i++) {
+            int t = toTriangles.get(i);
+            if (removed[t]) continue;
+            for (int k = 0; k < 3; k++) {
+                int other = triangles[t * 3 + k];
+                if (other != to) push(to, other);
+            }
+        }
+    }
+
+    /** Перевернется ли (или выродится) какой-либо треугольник from, не содержащий to, при переносе from в to */
+    private boolean flips(int from, int to) {
+        IntArray fromTriangles = adjacency[from];
+        for (int i = 0; i < fromTriangles.size; i++) {
+            int t = fromTriangles.get(i);
+            if (removed[t]) continue;
+            int a = triangles[t * 3], b = triangles[t * 3 + 1], c = triangles[t * 3 + 2];
+            if (a == to || b == to || c == to) continue;
+            if (facePlane(a, b, c, before) <= 0) continue;
+            double area = facePlane(a == from ? to : a, b == from ? to : b, c == from ? to : c, after);
+            if (area <= 0) return true;
+            if (before[0] * after[0] + before[1] * after[1] + before[2] * after[2] < MIN_NORMAL_DOT) return true;
+        }
+        return false;
+    }
+
+    /** Добавление в очередь ребра (u, v) с более дешевым направлением стягивания */
+    private void push(int u, int v) {
+        double toV = cost(u, v), toU = cost(v, u);
+        if (toV <= toU) queue.add(new Collapse(toV, u, v, versions[u], versions[v]));
+        else queue.add(new Collapse(toU, v, u, versions[v], versions[u]));
+    }
+
+    /** Ошибка стягивания from -> to: p^T * (Qfrom + Qto) * p, p - позиция to */
+    private double cost(int from, int to) {
+        double x = positions[to * 3], y = positions[to * 3 + 1], z = positions[to * 3 + 2];
+        int f = from * 10, t = to * 10;
+        double a2 = quadrics[f] + quadrics[t], ab = quadrics[f + 1] + quadrics[t + 1];
+        double ac = quadrics[f + 2] + quadrics[t + 2], ad = quadrics[f + 3] + quadrics[t + 3];
+        double b2 = quadrics[f + 4] + quadrics[t + 4], bc = quadrics[f + 5] + quadrics[t + 5];
+        double bd = quadrics[f + 6] + quadrics[t + 6], c2 = quadrics[f + 7] + quadrics[t + 7];
+        double cd = quadrics[f + 8] + quadrics[t + 8], d2 = quadrics[f + 9] + quadrics[t + 9];
+        double error = a2 * x * x + 2 * ab * x * y + 2 * ac * x * z + 2 * ad * x
+                + b2 * y * y + 2 * bc * y * z + 2 * bd * y + c2 * z * z + 2 * cd * z + d2;
+        return Math.max(0, error);
+    }
+
+    /** Плоскость треугольника (единичная нормаль и d)
+     * @return площадь треугольника (0 - вырожденный, плоскость не определена) */
+    private double facePlane(int a, int b, int c, double[] plane) {
+        double ax = positions[a * 3], ay = positions[a * 3 + 1], az = positions[a * 3 + 2];
+        double ux = positions[b * 3] - ax, uy = positions[b * 3 + 1] - ay, uz = positions[b * 3 + 2] - az;
+        double vx = positions[c * 3] - ax, vy = positions[c * 3 + 1] - ay, vz = positions[c * 3 + 2] - az;
+        double nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+        double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (len < 1e-12) return 0;
+        plane[0] = nx / len;
+        plane[1] = ny / len;
+        plane[2] = nz / len;
+        plane[3] = -(plane[0] * ax + plane[1] * ay + plane[2] * az);
+        return len * 0.5;
+    }
+
+    /** Закрепление граничного ребра плоскостью через ребро, перпендикулярной его треугольнику */
+    private void addBoundary(int u, int v) {
+        IntArray uTriangles = adjacency[u];
+        double[] plane = new double[4];
+        for (int i = 0; i < uTriangles.size; i++) {
+            int t = uTriangles.get(i);
+            int a = triangles[t * 3], b = triangles[t * 3 + 1], c = triangles[t * 3 + 2];
+            if ((a != v && b != v && c != v) || facePlane(a, b, c, plane) <= 0) continue;
+            double ex = positions[v * 3] - positions[u * 3];
+            double ey = positions[v * 3 + 1] - positions[u * 3 + 1];
+            double ez = positions[v * 3 + 2] - positions[u * 3 + 2];
+            double nx = ey * plane[2] - ez * plane[1], ny = ez * plane[0] - ex * plane[2], nz = ex * plane[1] - ey * plane[0];
+            double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (len < 1e-12) return;
+            plane[0] = nx / len;
+            plane[1] = ny / len;
+            plane[2] = nz / len;
+            plane[3] = -(plane[0] * positions[u * 3] + plane[1] * positions[u * 3 + 1] + plane[2] * positions[u * 3 + 2]);
+            double weight = BOUNDARY_WEIGHT * (ex * ex + ey * ey + ez * ez);
+            addPlane(u, plane, weight);
+            addPlane(v, plane, weight);
+            return;
+        }
+    }
+
+    /** Добавление к квадрике вершины плоскости с весом */
+    private void addPlane(int vertex, double[] p, double weight) {
+        int q = vertex * 10;
+        quadrics[q] += weight * p[0] * p[0];
+        quadrics[q + 1] += weight * p[0] * p[1];
+        quadrics[q + 2] += weight * p[0] * p[2];
+        quadrics[q + 3] += weight * p[0] * p[3];
+        quadrics[q + 4] += weight * p[1] * p[1];
+        quadrics[q + 5] += weight * p[1] * p[2];
+        quadrics[q + 6] += weight * p[1] * p[3];
+        quadrics[q + 7] += weight * p[2] * p[2];
+        quadrics[q + 8] += weight * p[2] * p[3];
+        quadrics[q + 9] += weight * p[3] * p[3];
+    }
+}
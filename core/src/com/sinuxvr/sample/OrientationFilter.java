@@ -0,0 +1,55 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Quaternion;
+
+/** Алгоритм вычисления ориентации по показаниям датчиков
+ * SensorFusion вычитывает показания из колец и вызывает integrate() для каждого шага гироскопа,
+ * затем один раз за шаг вычисления correct() с последними показаниями акселерометра и магнитометра.
+ * Ориентация переводит векторы из осей устройства в мировые (Y - вверх, магнитный север - вдоль +X).
+ * Реализации не выделяют память после создания и вызываются только из одного потока */
+
+interface OrientationFilter {
+
+    /** Флаги датчиков для getRequiredSensors() */
+    int ACCELEROMETER = 1;
+    int GYROSCOPE = 2;
+    int MAGNETIC_FIELD = 4;
+
+    /** Имеющиеся реализации */
+    enum Type {
+        COMPLEMENTARY, MADGWICK, MAHONY, EKF;
+
+        /** Создание фильтра
+         * @param gyroAvailable - наличие гироскопа
+         * @param magAvailable - наличие магнитометра */
+        OrientationFilter create(boolean gyroAvailable, boolean magAvailable) {
+            switch (this) {
+                case MADGWICK: return new MadgwickFilter();
+                case MAHONY: return new MahonyFilter();
+                case EKF: return new EkfFilter();
+                default: return new ComplementaryFilter(gyroAvailable, magAvailable);
+            }
+        }
+    }
+
+    /** Датчики, без которых фильтр не работает (магнитометр используется всеми, если он есть) */
+    int getRequiredSensors();
+
+    /** Установка начальной ориентации и сброс накопленного состояния */
+    void reset(Quaternion orientation);
+
+    /** Интегрирование показания гироскопа
+     * @param wX, wY, wZ - угловая скорость (рад/с, оси устройства)
+     * @param dt - интервал интегрирования (с) */
+    void integrate(float wX, float wY, float wZ, float dt);
+
+    /** Коррекция по акселерометру и магнитометру
+     * @param acc - последнее показание акселерометра
+     * @param mag - последнее показание магнитометра
+     * @param useMag - использовать ли магнитометр
+     * @param dt - время от предыдущей коррекции (с) */
+    void correct(float[] acc, float[] mag, boolean useMag, float dt);
+
+    /** Текущая ориентация (принадлежит фильтру, меняется при следующем шаге) */
+    Quaternion getOrientation();
+}
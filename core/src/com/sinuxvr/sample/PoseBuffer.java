@@ -0,0 +1,39 @@
+package com.sinuxvr.sample;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Тройной буфер снимков ориентации между одним писателем (поток вычисления ориентации)
+ * и одним читателем (поток рендера)
+ * Писатель заполняет свой задний слот и меняет его местами со средним, читатель при наличии
+ * нового снимка меняет средний слот со своим передним. Обе операции - один getAndSet,
+ * поэтому ни одна из сторон никогда не ждет другую, а слот, который читается, не перезаписывается */
+
+class PoseBuffer {
+    /** Бит "в среднем слоте новый снимок", младшие биты - индекс среднего слота */
+    private static final int FRESH = 4;
+    private static final int INDEX_MASK = 3;
+
+    private final PoseSnapshot[] slots = { new PoseSnapshot(), new PoseSnapshot(), new PoseSnapshot() };
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;           // Слот писателя
+    private int front = 2;          // Слот читателя
+    private long sequence;          // Счетчик публикаций (поток писателя)
+
+    /** Слот для заполнения очередного снимка (только из потока писателя) */
+    PoseSnapshot beginWrite() {
+        return slots[back];
+    }
+
+    /** Публикация заполненного слота (только из потока писателя) */
+    void publish() {
+        slots[back].sequence = ++sequence;
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /** Последний опубликованный снимок (только из потока читателя)
+     * Возвращенный объект остается неизменным до следующего вызова */
+    PoseSnapshot read() {
+        if ((middle.get() & FRESH) != 0) front = middle.getAndSet(front) & INDEX_MASK;
+        return slots[front];
+    }
+}
@@ -0,0 +1,94 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Quaternion;
+
+/** Экстраполяция ориентации головы вперед по времени
+ * По угловой скорости (и при желании угловому ускорению) с гироскопа ориентация доворачивается
+ * на время от последнего показания до момента вывода кадра на экран */
+
+class PosePredictor {
+    /** Максимальное время экстраполяции (с), дальше прогноз только вредит */
+    static final float MAX_LOOK_AHEAD = 0.1f;
+    /** Коэффициент сглаживания оценки углового ускорения */
+    private static final float ACC_ALPHA = 0.2f;
+    /** Интервал между показаниями, больше которого ускорение не оценивается (с) */
+    private static final float MAX_SAMPLE_DT = 0.1f;
+
+    private float wX, wY, wZ;           // Последняя угловая скорость (рад/с, оси устройства)
+    private float aX, aY, aZ;           // Сглаженное угловое ускорение (рад/с^2)
+    private long lastTimestamp;         // Метка времени последнего показания (нс)
+    private boolean useAcceleration;    // Учитывать ли угловое ускорение
+
+    /** Включение-выключение учета углового ускорения */
+    void useAcceleration(boolean use) {
+        useAcceleration = use;
+    }
+
+    /** Сброс накопленного состояния (например, после паузы) */
+    void reset() {
+        wX = wY = wZ = 0;
+        aX = aY = aZ = 0;
+        lastTimestamp = 0;
+    }
+
+    /** Учет очередного показания гироскопа
+     * @param timestamp - метка времени показания (нс)
+     * @param x, y, z - угловая скорость (рад/с) */
+    void onGyro(long timestamp, float x, float y, float z) {
+        float dt = (timestamp - lastTimestamp) * 1e-9f;
+        if (lastTimestamp != 0 && dt > 0 && dt < MAX_SAMPLE_DT) {
+            aX += ACC_ALPHA * ((x - wX) / dt - aX);
+            aY += ACC_ALPHA * ((y - wY) / dt - aY);
+            aZ += ACC_ALPHA * ((z - wZ) / dt - aZ);
+        } else aX = aY = aZ = 0;
+        wX = x;
+        wY = y;
+        wZ = z;
+        lastTimestamp = timestamp;
+    }
+
+    /** Метка времени последнего учтенного показания (нс), 0 - показаний еще не было */
+    long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /** Копирование угловой скорости и ускорения в снимок ориентации
+     * (ускорение обнуляется, если его учет выключен) */
+    void fill(PoseSnapshot snapshot) {
+        snapshot.wX = wX;
+        snapshot.wY = wY;
+        snapshot.wZ = wZ;
+        snapshot.aX = useAcceleration ? aX : 0;
+        snapshot.aY = useAcceleration ? aY : 0;
+        snapshot.aZ = useAcceleration ? aZ : 0;
+    }
+
+    /** Прогноз ориентации
+     * @param x, y, z, w - ориентация на момент последнего показания
+     * @param wX, wY, wZ - угловая скорость (рад/с)
+     * @param aX, aY, aZ - угловое ускорение (рад/с^2)
+     * @param dt - время от последнего показания до нужного момента (с)
+     * @param out - результат
+     * @return out */
+    static Quaternion extrapolate(float x, float y, float z, float w, float wX, float wY, float wZ,
+                                  float aX, float aY, float aZ, float dt, Quaternion out) {
+        if (dt <= 0) return out.set(x, y, z, w);
+        if (dt > MAX_LOOK_AHEAD) dt = MAX_LOOK_AHEAD;
+
+        // Вектор поворота за время dt в осях устройства
+        float dt22 = dt * dt * 0.5f;
+        float rX = wX * dt + aX * dt22;
+        float rY = wY * dt + aY * dt22;
+        float rZ = wZ * dt + aZ * dt22;
+
+        // Доворот ориентации (так же, как при интегрировании гироскопа - умножением справа)
+        float angle = (float)Math.sqrt(rX * rX + rY * rY + rZ * rZ);
+        if (angle < 1e-6f) return out.set(x, y, z, w);
+        float s = (float)Math.sin(angle * 0.5f) / angle;
+        float dx = rX * s, dy = rY * s, dz = rZ * s, dw = (float)Math.cos(angle * 0.5f);
+        return out.set(w * dx + x * dw + y * dz - z * dy,
+                w * dy + y * dw + z * dx - x * dz,
+                w * dz + z * dw + x * dy - y * dx,
+                w * dw - x * dx - y * dy - z * dz).nor();
+    }
+}
@@ -0,0 +1,55 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Quaternion;
+
+/** Снимок ориентации головы на момент последнего учтенного показания датчиков
+ * Заполняется потоком вычисления ориентации и публикуется через PoseBuffer, после публикации
+ * не меняется. Кроме ориентации хранит угловую скорость и ускорение, чтобы прогноз на момент
+ * вывода кадра можно было сделать в потоке рендера без доступа к состоянию фильтра */
+
+class PoseSnapshot {
+    float x, y, z, w = 1;       // Кватернион ориентации
+    long timestamp;             // Момент, которому соответствует ориентация (нс, отсчет System.nanoTime()), 0 - нет данных
+    float wX, wY, wZ;           // Угловая скорость (рад/с, оси устройства)
+    float aX, aY, aZ;           // Угловое ускорение (рад/с^2, оси устройства)
+    long sequence;              // Номер снимка, растет с каждой публикацией
+
+    /** Копирование снимка
+     * @return this */
+    PoseSnapshot set(PoseSnapshot other) {
+        x = other.x;
+        y = other.y;
+        z = other.z;
+        w = other.w;
+        timestamp = other.timestamp;
+        wX = other.wX;
+        wY = other.wY;
+        wZ = other.wZ;
+        aX = other.aX;
+        aY = other.aY;
+        aZ = other.aZ;
+        sequence = other.sequence;
+        return this;
+    }
+
+    /** Ориентация на момент снимка
+     * @param out - результат
+     * @return out */
+    Quaternion getOrientation(Quaternion out) {
+        return out.set(x, y, z, w);
+    }
+
+    /** Ориентация, спрогнозированная на заданный момент
+     * @param targetNanos - момент в отсчете System.nanoTime() (нс)
+     * @param out - результат
+     * @return out */
+    Quaternion predict(long targetNanos, Quaternion out) {
+        if (timestamp == 0) return getOrientation(out);
+        return PosePredictor.extrapolate(x, y, z, w, wX, wY, wZ, aX, aY, aZ, (targetNanos - timestamp) * 1e-9f, out);
+    }
+
+    /** Возраст снимка на заданный момент (нс) */
+    long getAge(long nowNanos) {
+        return timestamp == 0 ? 0 : nowNanos - timestamp;
+    }
+}
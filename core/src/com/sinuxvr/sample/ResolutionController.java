@@ -0,0 +1,120 @@
+package com.sinuxvr.sample;
+
+/** Регулятор масштаба разрешения картинок глаз по времени кадра
+ * Каждый кадр получает интервал между кадрами (пропуск vsync, в том числе из-за GPU - eglSwapBuffers
+ * ждет его) и время работы кадра на CPU. Перегрузка в течение нескольких кадров понижает масштаб
+ * на шаг, устойчивый запас в течение долгого времени - повышает. Между порогами перегрузки и запаса
+ * масштаб не меняется (гистерезис), после смены масштаба новые кадры какое-то время не учитываются.
+ * Если понижение случилось вскоре после повышения, то следующего повышения приходится ждать
+ * вдвое дольше, чтобы масштаб не колебался около предела устройства.
+ * Без GL и таймеров: время передается снаружи, поэтому регулятор проверяется синтетическими рядами */
+
+class ResolutionController {
+    /** Интервал больше бюджета во столько раз считается пропуском vsync (общий с Timewarp) */
+    static final float MISSED_VSYNC_FACTOR = 1.5f;
+    /** Максимальное увеличение ожидания повышения (раз) */
+    private static final int MAX_BACKOFF = 8;
+
+    private final float minScale, maxScale;     // Пределы масштаба
+    private final float step;                   // Шаг изменения масштаба
+    private final long budgetNanos;             // Бюджет кадра (период vsync, нс)
+    private long missedNanos;                   // Порог пропуска vsync (нс)
+    private long highNanos, lowNanos;           // Пороги перегрузки и запаса по времени работы (нс)
+    private int downFrames = 5;                 // Кадров перегрузки до понижения
+    private int upFrames = 120;                 // Кадров запаса до повышения (без отката)
+    private int settleFrames = 30;              // Кадров без учета после смены масштаба
+
+    private int level;                          // Число шагов вниз от maxScale
+    private int overCount, underCount;          // Счетчики перегрузки и запаса
+    private int settle;                         // Оставшиеся неучитываемые кадры
+    private int upWait;                         // Текущее ожидание повышения (кадры)
+    private int sinceUp = Integer.MAX_VALUE;    // Кадров с последнего повышения
+
+    /** Конструктор
+     * @param minScale, maxScale - пределы масштаба (доля от полного разрешения глаза)
+     * @param step - шаг изменения масштаба
+     * @param budgetNanos - бюджет кадра (период vsync, нс) */
+    ResolutionController(float minScale, float maxScale, float step, long budgetNanos) {
+        if (minScale <= 0 || maxScale < minScale || step <= 0) throw new IllegalArgumentException("Invalid scale range");
+        this.minScale = minScale;
+        this.maxScale = maxScale;
+        this.step = step;
+        this.budgetNanos = budgetNanos;
+        missedNanos = (long)(budgetNanos * MISSED_VSYNC_FACTOR);
+        setThresholds(0.85f, 0.6f);
+        reset();
+    }
+
+    /** Пороги по времени работы кадра
+     * @param high - доля бюджета, выше которой кадр считается перегруженным
+     * @param low - доля бюджета, ниже которой у кадра есть запас (меньше high) */
+    void setThresholds(float high, float low) {
+        highNanos = (long)(budgetNanos * high);
+        lowNanos = (long)(budgetNanos * low);
+    }
+
+    /** Число кадров для принятия решений
+     * @param down - кадров перегрузки до понижения
+     * @param up - кадров запаса до повышения
+     * @param settle - кадров без учета после смены масштаба */
+    void setWindows(int down, int up, int settle) {
+        downFrames = down;
+        upFrames = up;
+        settleFrames = settle;
+        upWait = up;
+    }
+
+    /** Возврат к максимальному масштабу и сброс истории */
+    void reset() {
+        level = 0;
+        overCount = underCount = settle = 0;
+        upWait = upFrames;
+        sinceUp = Integer.MAX_VALUE;
+    }
+
+    /** Учет очередного кадра
+     * @param intervalNanos - интервал от начала предыдущего кадра (0 - неизвестен)
+     * @param workNanos - время работы кадра
+     * @return true, если масштаб изменился */
+    boolean update(long intervalNanos, long workNanos) {
+        if (sinceUp < Integer.MAX_VALUE) sinceUp++;
+        if (settle > 0) {
+            settle--;
+            return false;
+        }
+
+        if (intervalNanos > missedNanos || workNanos > highNanos) {
+            overCount++;
+            underCount = 0;
+        } else {
+            if (overCount > 0) overCount--;
+            if (workNanos < lowNanos) underCount++;
+            else underCount = 0;
+        }
+
+        if (overCount >= downFrames && getScale() > minScale) {
+            // Понижение вскоре после повышения - предел устройства, повышаться снова не торопимся
+            if (sinceUp < upWait) upWait = Math.min(upWait * 2, upFrames * MAX_BACKOFF);
+            level++;
+            changed();
+            return true;
+        }
+        if (underCount >= upWait && level > 0) {
+            level--;
+            sinceUp = 0;
+            changed();
+            return true;
+        }
+        return false;
+    }
+
+    private void changed() {
+        overCount = underCount = 0;
+        settle = settleFrames;
+    }
+
+    /** Текущий масштаб разрешения (от minScale до maxScale) */
+    float getScale() {
+        return Math.max(minScale, maxScale - level * step);
+    }
+}
@@ -0,0 +1,232 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.model.MeshPart;
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Plane;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+
+/** Иерархия ограничивающих объемов (BVH) над AABB статических частей сцены
+ * Строится один раз при загрузке, затем каждый кадр запрашивается по frustum-у камеры.
+ * Узлы хранятся в плоских массивах, запрос не выделяет память */
+
+class SceneIndex {
+    /** Максимальное число элементов в листе */
+    private static final int LEAF_SIZE = 4;
+    /** Глубина стека обхода (при разбиении по медиане глубина ~log2(n / LEAF_SIZE)) */
+    private static final int MAX_DEPTH = 64;
+
+    private final int itemCount;        // Число элементов
+    private final float[] itemBounds;   // AABB элементов: minX, minY, minZ, maxX, maxY, maxZ
+    private final int[] items;          // Индексы элементов, упорядоченные по листьям
+
+    private float[] nodeBounds;         // AABB узлов, 6 чисел на узел
+    private int[] nodeStart;            // Лист: первый элемент в items; узел: индекс правого потомка
+    private int[] nodeCount;            // Лист: число элементов; узел: 0 (левый потомок идет следом)
+    private int nodeTotal;              // Число узлов
+
+    private final int[] stack = new int[MAX_DEPTH * 2];
+    private float[] centroids;          // Центры элементов (только при построении)
+
+    /** Статистика последнего запроса */
+    private int nodesTested;            // Проверено узлов
+    private int itemsCulled;            // Отсечено элементов
+    private int itemsVisible;           // Видимых элементов
+
+    /** Построение иерархии
+     * @param bounds - AABB элементов, по 6 чисел: minX, minY, minZ, maxX, maxY, maxZ
+     * @param count - число элементов */
+    SceneIndex(float[] bounds, int count) {
+        itemCount = count;
+        itemBounds = new float[count * 6];
+        System.arraycopy(bounds, 0, itemBounds, 0, count * 6);
+        items = new int[count];
+        centroids = new float[count * 3];
+        for (int i = 0; i < count; i++) {
+            items[i] = i;
+            for (int a = 0; a < 3; a++) centroids[i * 3 + a] = (bounds[i * 6 + a] + bounds[i * 6 + 3 + a]) * 0.5f;
+        }
+        int capacity = Math.max(1, 2 * ((count + LEAF_SIZE - 1) / LEAF_SIZE));
+        nodeBounds = new float[capacity * 6];
+        nodeStart = new int[capacity];
+        nodeCount = new int[capacity];
+        if (count > 0) build(0, count);
+        centroids = null;
+    }
+
+    /** Построение иерархии по объектам отрисовки неподвижной сцены
+     * AABB берутся из границ MeshPart, переведенных в мировые координаты worldTransform
+     * @param renderables - объекты, индексы элементов соответствуют их порядку */
+    static SceneIndex fromRenderables(Array<Renderable> renderables) {
+        float[] bounds = new float[renderables.size * 6];
+        BoundingBox box = new BoundingBox();
+        for (int i = 0; i < renderables.size; i++) {
+            Renderable renderable = renderables.get(i);
+            MeshPart part = renderable.meshPart;
+            box.min.set(part.center).sub(part.halfExtents);
+            box.max.set(part.center).add(part.halfExtents);
+            box.set(box.min, box.max).mul(renderable.worldTransform);
+            bounds[i * 6] = box.min.x;
+            bounds[i * 6 + 1] = box.min.y;
+            bounds[i * 6 + 2] = box.min.z;
+            bounds[i * 6 + 3] = box.max.x;
+            bounds[i * 6 + 4] = box.max.y;
+            bounds[i * 6 + 5] = box.max.z;
+        }
+        return new SceneIndex(bounds, renderables.size);
+    }
+
+    /** Число элементов */
+    int size() {
+        return itemCount;
+    }
+
+    /** Рекурсивное построение поддерева над items[start, end)
+     * @return индекс узла */
+    private int build(int start, int end) {
+        int node = nodeTotal++;
+        if (node >= nodeStart.length) grow();
+
+        // Границы узла и границы центров (по ним выбирается ось разбиения)
+        float[] nb = nodeBounds;
+        int o = node * 6;
+        nb[o] = nb[o + 1] = nb[o + 2] = Float.POSITIVE_INFINITY;
+        nb[o + 3] = nb[o + 4] = nb[o + 5] = Float.NEGATIVE_INFINITY;
+        float cMinX = Float.POSITIVE_INFINITY, cMinY = cMinX, cMinZ = cMinX;
+        float cMaxX = Float.NEGATIVE_INFINITY, cMaxY = cMaxX, cMaxZ = cMaxX;
+        for (int i = start; i < end; i++) {
+            int b = items[i] * 6;
+            for (int a = 0; a < 3; a++) {
+                nb[o + a] = Math.min(nb[o + a], itemBounds[b + a]);
+                nb[o + 3 + a] = Math.max(nb[o + 3 + a], itemBounds[b + 3 + a]);
+            }
+            int c = items[i] * 3;
+            cMinX = Math.min(cMinX, centroids[c]); cMaxX = Math.max(cMaxX, centroids[c]);
+            cMinY = Math.min(cMinY, centroids[c + 1]); cMaxY = Math.max(cMaxY, centroids[c + 1]);
+            cMinZ = Math.min(cMinZ, centroids[c + 2]); cMaxZ = Math.max(cMaxZ, centroids[c + 2]);
+        }
+
+        // Лист
+        if (end - start <= LEAF_SIZE) {
+            nodeStart[node] = start;
+            nodeCount[node] = end - start;
+            return node;
+        }
+
+        // Разбиение по медиане вдоль самой длинной оси центров
+        float dx = cMaxX - cMinX, dy = cMaxY - cMinY, dz = cMaxZ - cMinZ;
+        int axis = (dx >= dy && dx >= dz) ? 0 : (dy >= dz ? 1 : 2);
+        int mid = (start + end) >>> 1;
+        select(start, end - 1, mid, axis);
+
+        // Массивы узлов могут быть пересозданы при построении потомков
+        build(start, mid);
+        int right = build(mid, end);
+        nodeCount[node] = 0;
+        nodeStart[node] = right;
+        return node;
+    }
+
+    /** Частичная сортировка items так, чтобы на месте k оказалась медиана по оси (quickselect) */
+    private void select(int lo, int hi, int k, int axis) {
+        while (hi > lo) {
+            float pivot = centroids[items[(lo + hi) >>> 1] * 3 + axis];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (centroids[items[i] * 3 + axis] < pivot) i++;
+                while (centroids[items[j] * 3 + axis] > pivot) j--;
+                if (i <= j) {
+                    int t = items[i]; items[i] = items[j]; items[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else return;
+        }
+    }
+
+    /** Увеличение массивов узлов */
+    private void grow() {
+        int capacity = nodeStart.length * 2;
+        float[] b = new float[capacity * 6];
+        System.arraycopy(nodeBounds, 0, b, 0, nodeBounds.length);
+        nodeBounds = b;
+        int[] s = new int[capacity];
+        System.arraycopy(nodeStart, 0, s, 0, nodeStart.length);
+        nodeStart = s;
+        int[] c = new int[capacity];
+        System.arraycopy(nodeCount, 0, c, 0, nodeCount.length);
+        nodeCount = c;
+    }
+
+    /** Поиск элементов, пересекающих frustum
+     * Если узел целиком внутри frustum-а, его элементы добавляются без дальнейших проверок
+     * @param frustum - frustum камеры
+     * @param out - индексы видимых элементов (очищается) */
+    void query(Frustum frustum, IntArray out) {
+        out.clear();
+        nodesTested = 0;
+        if (itemCount == 0) {
+            itemsCulled = itemsVisible = 0;
+            return;
+        }
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = 0; // флаг "целиком внутри"
+        while (top > 0) {
+            boolean inside = stack[--top] != 0;
+            int node = stack[--top];
+            if (!inside) {
+                nodesTested++;
+                int side = classify(frustum, nodeBounds, node * 6);
+                if (side < 0) continue;
+                inside = side > 0;
+            }
+            int count = nodeCount[node];
+            if (count > 0) {
+                // Лист: элементы частично видимого листа проверяются по отдельности
+                int start = nodeStart[node];
+                for (int i = start; i < start + count; i++) {
+                    if (inside || classify(frustum, itemBounds, items[i] * 6) >= 0) out.add(items[i]);
+                }
+            } else {
+                stack[top++] = nodeStart[node];
+                stack[top++] = inside ? 1 : 0;
+                stack[top++] = node + 1;
+                stack[top++] = inside ? 1 : 0;
+            }
+        }
+        itemsVisible = out.size;
+        itemsCulled = itemCount - itemsVisible;
+    }
+
+    /** Положение AABB относительно frustum-а (консервативно: AABB у ребра frustum-а может
+     * оказаться "пересекающим", хотя лежит снаружи)
+     * @param bounds - массив AABB по 6 чисел
+     * @param o - смещение AABB в массиве
+     * @return -1 - снаружи, 0 - пересекает, 1 - целиком внутри */
+    static int classify(Frustum frustum, float[] bounds, int o) {
+        float cx = (bounds[o] + bounds[o + 3]) * 0.5f, hx = (bounds[o + 3] - bounds[o]) * 0.5f;
+        float cy = (bounds[o + 1] + bounds[o + 4]) * 0.5f, hy = (bounds[o + 4] - bounds[o + 1]) * 0.5f;
+        float cz = (bounds[o + 2] + bounds[o + 5]) * 0.5f, hz = (bounds[o + 5] - bounds[o + 2]) * 0.5f;
+        int result = 1;
+        Plane[] planes = frustum.planes;
+        for (int i = 0; i < planes.length; i++) {
+            Plane plane = planes[i];
+            float dist = plane.normal.x * cx + plane.normal.y * cy + plane.normal.z * cz + plane.d;
+            float radius = Math.abs(plane.normal.x) * hx + Math.abs(plane.normal.y) * hy + Math.abs(plane.normal.z) * hz;
+            if (dist + radius < 0) return -1;
+            if (dist - radius < 0) result = 0;
+        }
+        return result;
+    }
+
+    /** Статистика последнего запроса */
+    int getNodesTested() { return nodesTested; }
+    int getItemsCulled() { return itemsCulled; }
+    int getItemsVisible() { return itemsVisible; }
+}
@@ -0,0 +1,197 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Quaternion;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Платформонезависимое вычисление ориентации головы по показаниям датчиков.
+ * Показания поступают через кольцевые буферы, update() вычитывает их и передает в OrientationFilter,
+ * который и вычисляет кватернион. Фильтр можно сменить на лету из любого потока - смена
+ * применяется в начале следующего update() с сохранением текущей ориентации */
+
+class SensorFusion {
+
+    /** Интервал между показаниями гироскопа, больше которого интегрирование не выполняется (с) */
+    private static final float MAX_GYRO_DT = 0.1f;
+
+    /** Кольцевые буферы показаний, заполняются потоком датчиков без блокировок */
+    private static final int RING_CAPACITY = 64;
+    final SensorRingBuffer accelerometerRing = new SensorRingBuffer(RING_CAPACITY);
+    final SensorRingBuffer gyroscopeRing = new SensorRingBuffer(RING_CAPACITY);
+    final SensorRingBuffer magneticFieldRing = new SensorRingBuffer(RING_CAPACITY);
+    private final SensorSample sample = new SensorSample();      // Буфер для чтения из колец
+    private long overwrittenCount;                               // Показания, замененные более свежими до использования
+
+    /** Последние показания датчиков, используемые при вычислениях */
+    private final float[] accelerometerValues = new float[3];   // Акселерометр
+    private final float[] gyroscopeValues = new float[3];       // Гироскоп
+    private final float[] magneticFieldValues = new float[3];   // Магнитометр
+    private long lastGyroTimestamp;                             // Метка времени предыдущего показания гироскопа
+    private long poseTimestamp;                                 // Метка времени, которой соответствует ориентация
+    private long lastSampleTimestamp;                           // Метка времени самого свежего учтенного показания
+    private volatile boolean useDC;                             // Использовать ли магнитометр
+    private volatile boolean useTimestamps;                     // Интегрировать ли каждое показание гироскопа
+
+    /** Алгоритм вычисления ориентации */
+    private final boolean gyroAvailable;
+    private final boolean magAvailable;
+    private OrientationFilter filter;                           // Текущий фильтр (поток вычисления)
+    private volatile OrientationFilter.Type filterType;         // Тип текущего или ожидающего фильтра
+    private final AtomicReference<OrientationFilter> pendingFilter = new AtomicReference<OrientationFilter>();
+
+    /** Прогноз ориентации на момент вывода кадра */
+    private final PosePredictor posePredictor = new PosePredictor();
+
+    /** Конструктор, по умолчанию используется комплементарный фильтр
+     * @param gyroAvailable - наличие гироскопа
+     * @param magAvailable - наличие магнитометра */
+    SensorFusion(boolean gyroAvailable, boolean magAvailable) {
+        this.gyroAvailable = gyroAvailable;
+        this.magAvailable = magAvailable;
+        filterType = OrientationFilter.Type.COMPLEMENTARY;
+        filter = filterType.create(gyroAvailable, magAvailable);
+    }
+
+    /** Включение-выключение использования магнитометра на лету */
+    void useDriftCorrection(boolean useDC) {
+        // Реально листенер магнитометра не отключается, просто игнорируем его при вычислениях
+        this.useDC = useDC;
+    }
+
+    /** Включение-выключение интегрирования каждого показания гироскопа по его метке времени
+     * (иначе раз в кадр интегрируется только последнее показание на время кадра) */
+    void useTimestampIntegration(boolean useTimestamps) {
+        this.useTimestamps = useTimestamps;
+    }
+
+    /** Включение-выключение учета углового ускорения при прогнозе ориентации */
+    void usePredictionAcceleration(boolean use) {
+        posePredictor.useAcceleration(use);
+    }
+
+    /** Смена фильтра (из любого потока, применяется в следующем update())
+     * @return false, если для фильтра не хватает датчиков (фильтр не меняется) */
+    boolean setFilter(OrientationFilter.Type type) {
+        return setFilter(type, type.create(gyroAvailable, magAvailable));
+    }
+
+    /** Смена фильтра на готовый экземпляр, например с подобранными коэффициентами
+     * (из любого потока, применяется в следующем update())
+     * @param type - тип фильтра
+     * @param next - фильтр этого типа, созданный для тех же датчиков
+     * @return false, если для фильтра не хватает датчиков (фильтр не меняется) */
+    boolean setFilter(OrientationFilter.Type type, OrientationFilter next) {
+        int available = OrientationFilter.ACCELEROMETER;
+        if (gyroAvailable) available |= OrientationFilter.GYROSCOPE;
+        if (magAvailable) available |= OrientationFilter.MAGNETIC_FIELD;
+        if ((next.getRequiredSensors() & available) != next.getRequiredSensors()) return false;
+        filterType = type;
+        pendingFilter.set(next);
+        return true;
+    }
+
+    /** Тип текущего фильтра */
+    OrientationFilter.Type getFilterType() {
+        return filterType;
+    }
+
+    /** Число показаний, отброшенных из-за переполнения кольцевых буферов */
+    long getDroppedCount() {
+        return accelerometerRing.getDroppedCount() + gyroscopeRing.getDroppedCount() + magneticFieldRing.getDroppedCount();
+    }
+
+    /** Число показаний, замененных более свежими до того, как их успели использовать */
+    long getOverwrittenCount() {
+        return overwrittenCount;
+    }
+
+    /** Вычисление кватерниона ориентации (только из одного потока)
+     * @param deltaTime - время от предыдущего вызова (с)
+     * @return кватернион ориентации (принадлежит фильтру, меняется при следующем вызове) */
+    Quaternion update(float deltaTime) {
+        // Смена фильтра с сохранением ориентации
+        OrientationFilter next = pendingFilter.getAndSet(null);
+        if (next != null) {
+            next.reset(filter.getOrientation());
+            filter = next;
+        }
+
+        // Забираем накопившиеся показания, для коррекции нужны только последние
+        drainLatest(accelerometerRing, accelerometerValues);
+        drainLatest(magneticFieldRing, magneticFieldValues);
+
+        if (gyroAvailable) integrateGyro(deltaTime);
+        filter.correct(accelerometerValues, magneticFieldValues, useDC && magAvailable, deltaTime);
+
+        // Без гироскопа ориентация соответствует самому свежему показанию акселерометра/магнитометра
+        if (!gyroAvailable) poseTimestamp = lastSampleTimestamp;
+        return filter.getOrientation();
+    }
+
+    /** Метка времени, которой соответствует текущая ориентация (нс), 0 - показаний еще не было
+     * (с гироскопом - последнее проинтегрированное показание гироскопа) */
+    long getPoseTimestamp() {
+        return poseTimestamp;
+    }
+
+    /** Метка времени самого свежего показания любого датчика, учтенного в ориентации (нс) */
+    long getLastSampleTimestamp() {
+        return lastSampleTimestamp;
+    }
+
+    /** Заполнение снимка ориентацией, вычисленной последним вызовом update(),
+     * и данными для ее прогноза (метки времени остаются в отсчете показаний) */
+    void fillSnapshot(PoseSnapshot snapshot) {
+        Quaternion orientation = filter.getOrientation();
+        snapshot.x = orientation.x;
+        snapshot.y = orientation.y;
+        snapshot.z = orientation.z;
+        snapshot.w = orientation.w;
+        snapshot.timestamp = poseTimestamp;
+        posePredictor.fill(snapshot);
+    }
+
+    /** Вычитывание всех показаний из кольца с сохранением последнего
+     * @param ring - кольцевой буфер датчика
+     * @param values - массив для последнего показания (не меняется, если новых показаний нет)
+     * @return true, если было хотя бы одно новое показание */
+    private boolean drainLatest(SensorRingBuffer ring, float[] values) {
+        int count = 0;
+        while (ring.poll(sample)) count++;
+        if (count == 0) return false;
+        overwrittenCount += count - 1;
+        if (sample.timestamp > lastSampleTimestamp) lastSampleTimestamp = sample.timestamp;
+        values[0] = sample.x;
+        values[1] = sample.y;
+        values[2] = sample.z;
+        return true;
+    }
+
+    /** Интегрирование гироскопа одним из двух способов
+     * @param deltaTime - время от предыдущего вызова update() (с) */
+    private void integrateGyro(float deltaTime) {
+        if (!useTimestamps) {
+            if (drainLatest(gyroscopeRing, gyroscopeValues)) {
+                posePredictor.onGyro(sample.timestamp, sample.x, sample.y, sample.z);
+                poseTimestamp = sample.timestamp;
+            }
+            lastGyroTimestamp = 0;
+            filter.integrate(gyroscopeValues[0], gyroscopeValues[1], gyroscopeValues[2], deltaTime);
+            return;
+        }
+
+        // Каждое показание интегрируется на интервале от предыдущего показания до него
+        while (gyroscopeRing.poll(sample)) {
+            gyroscopeValues[0] = sample.x;
+            gyroscopeValues[1] = sample.y;
+            gyroscopeValues[2] = sample.z;
+            posePredictor.onGyro(sample.timestamp, sample.x, sample.y, sample.z);
+            poseTimestamp = sample.timestamp;
+            if (sample.timestamp > lastSampleTimestamp) lastSampleTimestamp = sample.timestamp;
+            float dt = (sample.timestamp - lastGyroTimestamp) * 1e-9f;
+            lastGyroTimestamp = sample.timestamp;
+            // Первое показание и показания после паузы только задают точку отсчета
+            if (dt <= 0 || dt > MAX_GYRO_DT) continue;
+            filter.integrate(sample.x, sample.y, sample.z, dt);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.sinuxvr.sample;
+
+/** Кольцевой буфер показаний датчика без блокировок
+ * Рассчитан строго на одного писателя (поток датчиков) и одного читателя (шаг фьюжена).
+ * Данные лежат в примитивных массивах, поэтому на каждое событие ничего не создается.
+ * Писатель никогда не затирает непрочитанные показания - при переполнении новое показание
+ * отбрасывается и учитывается в счетчике droppedCount */
+
+class SensorRingBuffer {
+    private final int mask;             // Маска индекса (емкость - степень двойки)
+    private final long[] timestamps;    // Метки времени
+    private final float[] values;       // Значения, по 3 на показание
+
+    private volatile long writeIndex;   // Сколько показаний записано (меняет только писатель)
+    private volatile long readIndex;    // Сколько показаний прочитано (меняет только читатель)
+    private volatile long droppedCount; // Сколько показаний отброшено из-за переполнения (только писатель)
+
+    /** Конструктор
+     * @param capacity - емкость, округляется вверх до степени двойки */
+    SensorRingBuffer(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        mask = size - 1;
+        timestamps = new long[size];
+        values = new float[size * 3];
+    }
+
+    /** Запись показания (только поток-писатель)
+     * @return false, если буфер полон и показание отброшено */
+    boolean offer(long timestamp, float x, float y, float z) {
+        long w = writeIndex;
+        if (w - readIndex > mask) {
+            droppedCount = droppedCount + 1;
+            return false;
+        }
+        int i = (int)w & mask;
+        timestamps[i] = timestamp;
+        values[i * 3] = x;
+        values[i * 3 + 1] = y;
+        values[i * 3 + 2] = z;
+        // Запись в volatile публикует значения для читателя
+        writeIndex = w + 1;
+        return true;
+    }
+
+    /** Извлечение самого старого показания (только поток-читатель)
+     * @param out - куда скопировать показание
+     * @return false, если буфер пуст */
+    boolean poll(SensorSample out) {
+        long r = readIndex;
+        if (r == writeIndex) return false;
+        int i = (int)r & mask;
+        out.set(timestamps[i], values[i * 3], values[i * 3 + 1], values[i * 3 + 2]);
+        // Освобождаем ячейку для писателя только после копирования
+        readIndex = r + 1;
+        return true;
+    }
+
+    /** Количество непрочитанных показаний (приблизительно, если вызывается не из читателя) */
+    int size() {
+        return (int)(writeIndex - readIndex);
+    }
+
+    /** Емкость буфера */
+    int capacity() {
+        return mask + 1;
+    }
+
+    /** Число показаний, отброшенных из-за переполнения */
+    long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /** Общее число принятых показаний */
+    long getWrittenCount() {
+        return writeIndex;
+    }
+}
@@ -0,0 +1,18 @@
+package com.sinuxvr.sample;
+
+/** Одно показание датчика: метка времени и три компоненты
+ * Объект переиспользуется, чтобы не создавать мусор на каждое событие */
+
+class SensorSample {
+    long timestamp;     // Метка времени показания (нс)
+    float x, y, z;      // Значения по осям
+
+    /** Копирование значений */
+    SensorSample set(long timestamp, float x, float y, float z) {
+        this.timestamp = timestamp;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+}
@@ -0,0 +1,114 @@
+package com.sinuxvr.sample;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** Последовательное чтение трассы датчиков (формат описан в SensorTraceWriter)
+ * Файл отображается в память окнами фиксированного размера, поэтому трассы любой длины
+ * читаются без загрузки в кучу */
+
+class SensorTraceReader {
+    /** Число записей в одном окне отображения (~64 МБ) */
+    private static final int WINDOW_RECORDS = (64 << 20) / SensorTraceWriter.RECORD_SIZE;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long recordCount;     // Число полных записей в файле
+    private final int sensorFlags;      // Флаги датчиков из заголовка
+
+    private MappedByteBuffer window;    // Текущее окно
+    private long windowFirst;           // Индекс первой записи в окне
+    private int windowRecords;          // Число записей в окне
+    private long position;              // Индекс следующей записи
+
+    /** Конструктор
+     * @param traceFile - файл трассы */
+    SensorTraceReader(File traceFile) throws IOException {
+        file = new RandomAccessFile(traceFile, "r");
+        channel = file.getChannel();
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SensorTraceWriter.HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != SensorTraceWriter.MAGIC)
+                throw new IOException("Not a sensor trace: " + traceFile);
+            if (header.getInt(4) != SensorTraceWriter.VERSION)
+                throw new IOException("Unsupported sensor trace version " + header.getInt(4) + ": " + traceFile);
+            sensorFlags = header.getInt(8);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        // Недописанная последняя запись (например, при аварийном завершении) игнорируется
+        recordCount = (channel.size() - SensorTraceWriter.HEADER_SIZE) / SensorTraceWriter.RECORD_SIZE;
+    }
+
+    /** Наличие гироскопа при записи */
+    boolean isGyroAvailable() {
+        return (sensorFlags & SensorTraceWriter.FLAG_GYROSCOPE) != 0;
+    }
+
+    /** Наличие магнитометра при записи */
+    boolean isMagAvailable() {
+        return (sensorFlags & SensorTraceWriter.FLAG_MAGNETIC_FIELD) != 0;
+    }
+
+    /** Число записей в трассе */
+    long getRecordCount() {
+        return recordCount;
+    }
+
+    /** Есть ли еще записи */
+    boolean hasNext() {
+        return position < recordCount;
+    }
+
+    /** Метка времени следующей записи без перехода к ней */
+    long peekTimestamp() throws IOException {
+        return window(position).getLong(offset(position));
+    }
+
+    /** Чтение следующей записи
+     * @param out - куда скопировать показание
+     * @return тип датчика (SensorTraceWriter.TYPE_*) */
+    byte next(SensorSample out) throws IOException {
+        MappedByteBuffer w = window(position);
+        int offset = offset(position);
+        position++;
+        out.set(w.getLong(offset), w.getFloat(offset + 9), w.getFloat(offset + 13), w.getFloat(offset + 17));
+        return w.get(offset + 8);
+    }
+
+    /** Возврат к началу трассы */
+    void rewind() {
+        position = 0;
+    }
+
+    /** Закрытие файла */
+    void close() throws IOException {
+        window = null;
+        file.close();
+    }
+
+    /** Окно, содержащее запись с заданным индексом (при необходимости отображается новое) */
+    private MappedByteBuffer window(long index) throws IOException {
+        if (index >= recordCount) throw new IndexOutOfBoundsException("End of sensor trace reached");
+        if (window == null || index < windowFirst || index >= windowFirst + windowRecords) {
+            windowFirst = index - index % WINDOW_RECORDS;
+            windowRecords = (int)Math.min(WINDOW_RECORDS, recordCount - windowFirst);
+            window = channel.map(FileChannel.MapMode.READ_ONLY,
+                    SensorTraceWriter.HEADER_SIZE + windowFirst * SensorTraceWriter.RECORD_SIZE,
+                    (long)windowRecords * SensorTraceWriter.RECORD_SIZE);
+            window.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return window;
+    }
+
+    /** Смещение записи внутри текущего окна */
+    private int offset(long index) {
+        return (int)(index - windowFirst) * SensorTraceWriter.RECORD_SIZE;
+    }
+}
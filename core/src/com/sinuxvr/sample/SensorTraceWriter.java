@@ -0,0 +1,91 @@
+package com.sinuxvr.sample;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/** Запись показаний датчиков в компактный бинарный файл трассы
+ * Каждая сессия записи пишется в свой файл (sessionFile()): метки времени разных запусков
+ * не продолжают друг друга, а недописанная при аварийном завершении запись остается в конце
+ * своего файла и не сдвигает записи следующей сессии.
+ * Формат (little-endian):
+ * заголовок - magic (int), версия (int), флаги имеющихся датчиков (int);
+ * записи - метка времени в нс (long), тип датчика (byte), значения x, y, z (3 float) */
+
+class SensorTraceWriter {
+    /** Параметры формата */
+    static final int MAGIC = 0x54525647;        // "GVRT"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+    static final int RECORD_SIZE = 8 + 1 + 4 * 3;
+
+    /** Типы датчиков в записях */
+    static final byte TYPE_ACCELEROMETER = 1;
+    static final byte TYPE_GYROSCOPE = 2;
+    static final byte TYPE_MAGNETIC_FIELD = 3;
+
+    /** Флаги датчиков в заголовке (акселерометр есть всегда) */
+    static final int FLAG_GYROSCOPE = 1;
+    static final int FLAG_MAGNETIC_FIELD = 2;
+
+    /** Сколько записей копится в памяти перед сбросом на диск */
+    private static final int BUFFERED_RECORDS = 256;
+
+    private final FileOutputStream stream;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    /** Имя файла новой сессии записи: sensors-ГГГГММДД-ЧЧММСС-мс.trace
+     * @param directory - каталог трасс */
+    static File sessionFile(File directory) {
+        return new File(directory, "sensors-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS", Locale.US).format(new Date())
+                + ".trace");
+    }
+
+    /** Конструктор. Файл создается заново (существующий перезаписывается) и начинается с заголовка
+     * @param file - файл трассы
+     * @param gyroAvailable - наличие гироскопа
+     * @param magAvailable - наличие магнитометра */
+    SensorTraceWriter(File file, boolean gyroAvailable, boolean magAvailable) throws IOException {
+        stream = new FileOutputStream(file);
+        channel = stream.getChannel();
+        buffer = ByteBuffer.allocateDirect(RECORD_SIZE * BUFFERED_RECORDS).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt((gyroAvailable ? FLAG_GYROSCOPE : 0) | (magAvailable ? FLAG_MAGNETIC_FIELD : 0));
+    }
+
+    /** Запись одного показания (из одного потока)
+     * @param type - тип датчика (TYPE_*)
+     * @param timestamp - метка времени (нс) */
+    void write(byte type, long timestamp, float x, float y, float z) throws IOException {
+        if (buffer.remaining() < RECORD_SIZE) flush();
+        buffer.putLong(timestamp);
+        buffer.put(type);
+        buffer.putFloat(x);
+        buffer.putFloat(y);
+        buffer.putFloat(z);
+    }
+
+    /** Сброс накопленных записей в файл */
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /** Сброс записей и закрытие файла */
+    void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelData;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelMaterial;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelMesh;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelMeshPart;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelNode;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelNodePart;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelTexture;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** Кэш модели, объединенной StaticModelOptimizer
+ * Файл привязан к исходной модели хэшем ее содержимого и пути (от пути зависят пути текстур),
+ * поэтому при замене модели кэш просто перестает находиться. Хранится только то, что дает
+ * оптимизатор: материалы, меши (вместе с частями уровней детализации) и части единственного
+ * узла без преобразования.
+ * Формат (big-endian): magic (int), версия (int), хэш исходника (long), id модели,
+ * материалы, меши, части узла; строки - длина (int, -1 для null) и UTF-8 */
+
+class StaticModelCache {
+    /** Параметры формата кэша */
+    static final int MAGIC = 0x4D535647;        // "GVSM"
+    static final int VERSION = 3;
+
+    private StaticModelCache() {
+    }
+
+    /** Хэш FNV-1a исходной модели (содержимое и путь) */
+    static long hash(byte[] source, String path) {
+        long hash = 0xcbf29ce484222325L ^ VERSION;
+        for (byte b : source) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        for (int i = 0; i < path.length(); i++) {
+            hash ^= path.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /** Имя файла кэша для исходной модели с данным хэшем */
+    static String cacheName(long hash) {
+        return "model-" + Long.toHexString(hash) + ".bin";
+    }
+
+    /** Сохранение объединенной модели
+     * @param hash - хэш исходной модели
+     * @param model - результат StaticModelOptimizer (один узел без преобразования) */
+    static void save(File file, long hash, ModelData model) throws IOException {
+        if (model.nodes.size != 1) throw new IllegalArgumentException("Model is not optimized");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(hash);
+            writeString(out, model.id);
+            out.writeShort(model.version[0]);
+            out.writeShort(model.version[1]);
+
+            out.writeInt(model.materials.size);
+            for (ModelMaterial material : model.materials) {
+                writeString(out, material.id);
+                out.writeInt(material.type != null ? material.type.ordinal() : -1);
+                writeColor(out, material.ambient);
+                writeColor(out, material.diffuse);
+                writeColor(out, material.specular);
+                writeColor(out, material.emissive);
+                writeColor(out, material.reflection);
+                out.writeFloat(material.shininess);
+                out.writeFloat(material.opacity);
+                out.writeInt(material.textures != null ? material.textures.size : -1);
+                if (material.textures == null) continue;
+                for (ModelTexture texture : material.textures) {
+                    writeString(out, texture.id);
+                    writeString(out, texture.fileName);
+                    writeVector(out, texture.uvTranslation);
+                    writeVector(out, texture.uvScaling);
+                    out.writeInt(texture.usage);
+                }
+            }
+
+            out.writeInt(model.meshes.size);
+            for (ModelMesh mesh : model.meshes) {
+                writeString(out, mesh.id);
+                out.writeInt(mesh.attributes.length);
+                for (VertexAttribute attribute : mesh.attributes) {
+                    out.writeInt(attribute.usage);
+                    out.writeInt(attribute.numComponents);
+                    writeString(out, attribute.alias);
+                    out.writeInt(attribute.unit);
+                }
+                out.writeInt(mesh.vertices.length);
+                for (float value : mesh.vertices) out.writeFloat(value);
+                out.writeInt(mesh.parts.length);
+                for (ModelMeshPart part : mesh.parts) {
+                    writeString(out, part.id);
+                    out.writeInt(part.primitiveType);
+                    out.writeInt(part.indices.length);
+                    for (short index : part.indices) out.writeShort(index);
+                }
+            }
+
+            ModelNode root = model.nodes.first();
+            writeString(out, root.id);
+            out.writeInt(root.parts.length);
+            for (ModelNodePart part : root.parts) {
+                writeString(out, part.materialId);
+                writeString(out, part.meshPartId);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Чтение объединенной модели
+     * @param hash - хэш исходной модели
+     * @return модель или null, если файла нет, он другой версии, от другой модели или поврежден */
+    static ModelData load(File file, long hash) throws IOException {
+        if (!file.isFile() || file.length() > Integer.MAX_VALUE) return null;
+        ByteBuffer buffer = ByteBuffer.allocate((int)file.length());
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) return null;
+            }
+        } finally {
+            stream.close();
+        }
+        buffer.flip();
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != hash) return null;
+            ModelData model = new ModelData();
+            model.id = readString(buffer);
+            model.version[0] = buffer.getShort();
+            model.version[1] = buffer.getShort();
+
+            int materialCount = readCount(buffer);
+            for (int i = 0; i < materialCount; i++) {
+                ModelMaterial material = new ModelMaterial();
+                material.id = readString(buffer);
+                int type = buffer.getInt();
+                material.type = type >= 0 ? ModelMaterial.MaterialType.values()[type] : null;
+                material.ambient = readColor(buffer);
+                material.diffuse = readColor(buffer);
+                material.specular = readColor(buffer);
+                material.emissive = readColor(buffer);
+                material.reflection = readColor(buffer);
+                material.shininess = buffer.getFloat();
+                material.opacity = buffer.getFloat();
+                int textureCount = buffer.getInt();
+                if (textureCount >= 0) {
+                    material.textures = new Array<ModelTexture>(textureCount);
+                    for (int j = 0; j < textureCount; j++) {
+                        ModelTexture texture = new ModelTexture();
+                        texture.id = readString(buffer);
+                        texture.fileName = readString(buffer);
+                        texture.uvTranslation = readVector(buffer);
+                        texture.uvScaling = readVector(buffer);
+                        texture.usage = buffer.getInt();
+                        material.textures.add(texture);
+                    }
+                }
+                model.materials.add(material);
+            }
+
+            int meshCount = readCount(buffer);
+            for (int i = 0; i < meshCount; i++) {
+                ModelMesh mesh = new ModelMesh();
+                mesh.id = readString(buffer);
+                mesh.attributes = new VertexAttribute[readCount(buffer)];
+                for (int j = 0; j < mesh.attributes.length; j++) {
+                    int usage = buffer.getInt(), numComponents = buffer.getInt();
+                    String alias = readString(buffer);
+                    mesh.attributes[j] = new VertexAttribute(usage, numComponents, alias, buffer.getInt());
+                }
+                mesh.vertices = new float[readCount(buffer)];
+                buffer.asFloatBuffer().get(mesh.vertices);
+                buffer.position(buffer.position() + mesh.vertices.length * 4);
+                mesh.parts = new ModelMeshPart[readCount(buffer)];
+                for (int j = 0; j < mesh.parts.length; j++) {
+                    ModelMeshPart part = new ModelMeshPart();
+                    part.id = readString(buffer);
+                    part.primitiveType = buffer.getInt();
+                    part.indices = new short[readCount(buffer)];
+                    buffer.asShortBuffer().get(part.indices);
+                    buffer.position(buffer.position() + part.indices.length * 2);
+                    mesh.parts[j] = part;
+                }
+                model.meshes.add(mesh);
+            }
+
+            ModelNode root = new ModelNode();
+            root.id = readString(buffer);
+            root.parts = new ModelNodePart[readCount(buffer)];
+            for (int i = 0; i < root.parts.length; i++) {
+                ModelNodePart part = new ModelNodePart();
+                part.materialId = readString(buffer);
+                part.meshPartId = readString(buffer);
+                root.parts[i] = part;
+            }
+            model.nodes.add(root);
+            return buffer.hasRemaining() ? null : model;
+        } catch (BufferUnderflowException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        if (length > buffer.remaining()) throw new BufferUnderflowException();
+        String value = new String(buffer.array(), buffer.position(), length, "UTF-8");
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /** Число элементов (отрицательное или больше остатка файла - признак повреждения) */
+    private static int readCount(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining()) throw new BufferUnderflowException();
+        return count;
+    }
+
+    private static void writeColor(DataOutputStream out, Color color) throws IOException {
+        out.writeBoolean(color != null);
+        if (color == null) return;
+        out.writeFloat(color.r);
+        out.writeFloat(color.g);
+        out.writeFloat(color.b);
+        out.writeFloat(color.a);
+    }
+
+    private static Color readColor(ByteBuffer buffer) {
+        if (buffer.get() == 0) return null;
+        return new Color(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+    }
+
+    private static void writeVector(DataOutputStream out, Vector2 vector) throws IOException {
+        out.writeBoolean(vector != null);
+        if (vector == null) return;
+        out.writeFloat(vector.x);
+        out.writeFloat(vector.y);
+    }
+
+    private static Vector2 readVector(ByteBuffer buffer) {
+        if (buffer.get() == 0) return null;
+        return new Vector2(buffer.getFloat(), buffer.getFloat());
+    }
+}
@@ -0,0 +1,73 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.assets.loaders.FileHandleResolver;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g3d.loader.G3dModelLoader;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelData;
+import com.badlogic.gdx.utils.UBJsonReader;
+import java.io.File;
+import java.io.IOException;
+
+/** Загрузчик неподвижной модели g3db с объединением частей по материалам
+ * При первом запуске модель разбирается как обычно, объединяется StaticModelOptimizer по ячейкам
+ * пространства с уровнями детализации исходных частей и сохраняется в кэш;
+ * при следующих запусках сразу читается готовая модель из кэша.
+ * Модель после объединения не анимируется и состоит из одного узла.
+ * Работает в потоке загрузки AssetManager (GL не используется) */
+
+class StaticModelLoader extends G3dModelLoader {
+    private static final String TAG = "StaticModelLoader";
+
+    private final File cacheDir;                // Каталог кэша (null - без кэша)
+
+    /** Конструктор
+     * @param resolver - поиск файлов модели
+     * @param cacheDir - каталог кэша (создается при необходимости, null - без кэша) */
+    StaticModelLoader(FileHandleResolver resolver, File cacheDir) {
+        super(new UBJsonReader(), resolver);
+        this.cacheDir = cacheDir;
+    }
+
+    @Override
+    public ModelData loadModelData(FileHandle fileHandle, ModelParameters parameters) {
+        long start = System.nanoTime();
+        long hash = StaticModelCache.hash(fileHandle.readBytes(), fileHandle.path());
+        File cache = cacheDir != null ? new File(cacheDir, StaticModelCache.cacheName(hash)) : null;
+        if (cache != null) {
+            try {
+                ModelData cached = StaticModelCache.load(cache, hash);
+                if (cached != null) {
+                    Gdx.app.log(TAG, fileHandle.name() + ": " + cached.nodes.first().parts.length
+                            + " draw calls per eye, cached, " + (System.nanoTime() - start) / 1000 + " us");
+                    return cached;
+                }
+            } catch (IOException e) {
+                Gdx.app.error(TAG, "Cannot read " + cache, e);
+            }
+        }
+
+        ModelData source = parseModel(fileHandle);
+        StaticModelOptimizer optimizer = new StaticModelOptimizer();
+        optimizer.setCellSize(StaticModelOptimizer.CELL_SIZE);
+        optimizer.setLevelsOfDetail(true);
+        ModelData merged = optimizer.optimize(source);
+        if (merged == null) {
+            Gdx.app.log(TAG, fileHandle.name() + ": cannot be merged, loaded as is");
+            return source;
+        }
+        Gdx.app.log(TAG, fileHandle.name() + ": " + optimizer.getDrawCallsBefore() + " -> "
+                + optimizer.getDrawCallsAfter() + " draw calls per eye, " + optimizer.getLevelParts()
+                + " LOD parts, built in " + (System.nanoTime() - start) / 1000 + " us");
+        if (cache != null) {
+            try {
+                if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) throw new IOException("Cannot create " + cacheDir);
+                StaticModelCache.save(cache, hash, merged);
+            } catch (IOException e) {
+                // Без кэша объединение просто повторится при следующем запуске
+                Gdx.app.error(TAG, "Cannot write " + cache, e);
+            }
+        }
+        return merged;
+    }
+}
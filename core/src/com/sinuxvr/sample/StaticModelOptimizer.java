@@ -0,0 +1,442 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelData;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelMesh;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelMeshPart;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelNode;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelNodePart;
+import com.badlogic.gdx.math.Matrix3;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntIntMap;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ShortArray;
+
+/** Объединение частей неподвижной модели по материалам (на CPU, над ModelData, без GL)
+ * Вершины каждой части переводятся в мировые координаты модели: обычные части - глобальной
+ * матрицей своего узла, скиннинговые - смесью матриц костей в исходной позе (модель неподвижна,
+ * анимации не проигрываются), веса костей из вершин убираются. Затем части с одинаковыми
+ * материалом, форматом вершин и типом примитивов сливаются в общий меш, и на каждый материал
+ * приходится один вызов отрисовки вместо вызова на каждую часть каждого узла.
+ * С setCellSize() сливаются только части, центры которых лежат в одной ячейке пространственной
+ * сетки: объединенные части остаются компактными, и их можно отсекать по frustum-у и выбирать
+ * для них уровни детализации по отдельности.
+ * С setLevelsOfDetail() каждая исходная часть из треугольников упрощается до слияния
+ * (LodSelector.buildLevels), а уровни частей складываются в части "<часть>_lod1", ... того же меша.
+ * Результат - модель из одного узла без преобразования и без анимаций */
+
+class StaticModelOptimizer {
+    /** Вершин в одном объединенном меше
+     * GL читает индексы как беззнаковые (до 65536 вершин), но Mesh.calculateBoundingBox в libGDX 1.9.3,
+     * которым Model считает границы частей (MeshPart.update), берет индекс как знаковый short,
+     * и вершина с индексом от 32768 дала бы отрицательное смещение в буфере вершин */
+    static final int MAX_VERTICES = Short.MAX_VALUE + 1;
+
+    /** Размер ячейки сетки объединения для неподвижной сцены (единиц модели) */
+    static final float CELL_SIZE = 4f;
+
+    private final ObjectMap<String, ModelMesh> meshByPart = new ObjectMap<String, ModelMesh>();
+    private final ObjectMap<String, ModelMeshPart> meshParts = new ObjectMap<String, ModelMeshPart>();
+    private final ObjectMap<String, Matrix4> globalTransforms = new ObjectMap<String, Matrix4>();
+    private final ObjectMap<String, Batch> openBatches = new ObjectMap<String, Batch>();
+    private final Array<Batch> batches = new Array<Batch>();
+    private final IntIntMap remap = new IntIntMap();
+    private final Matrix4 blend = new Matrix4();
+    private final Matrix3 normalMatrix = new Matrix3();
+    private final Piece piece = new Piece();
+    private float cellSize;                     // Размер ячейки сетки объединения (0 - без сетки)
+    private boolean levelsOfDetail;             // Строить ли уровни детализации
+    private int drawCallsBefore, drawCallsAfter;
+    private int levelParts;                     // Добавлено частей уровней детализации
+
+    /** Накопитель вершин и индексов одного объединенного меша */
+    private static class Batch {
+        final String materialId;
+        final VertexAttribute[] attributes;
+        final int primitiveType;
+        final int vertexSize;
+        final FloatArray vertices = new FloatArray();
+        final ShortArray indices = new ShortArray();
+        final ShortArray[] levels;          // Индексы уровней детализации 1, 2, ... (null - без уровней)
+
+        Batch(String materialId, VertexAttribute[] attributes, int primitiveType, int vertexSize, boolean levelsOfDetail) {
+            this.materialId = materialId;
+            this.attributes = attributes;
+            this.primitiveType = primitiveType;
+            this.vertexSize = vertexSize;
+            levels = levelsOfDetail ? new ShortArray[LodSelector.MAX_LEVELS] : null;
+            if (levels != null) {
+                for (int k = 0; k < levels.length; k++) levels[k] = new ShortArray();
+            }
+        }
+
+        int vertexCount() {
+            return vertices.size / vertexSize;
+        }
+    }
+
+    /** Одна часть узла в мировых координатах (используемые ею вершины по порядку первого обращения) */
+    private static class Piece {
+        final FloatArray vertices = new FloatArray();
+        final IntArray indices = new IntArray();
+        short[][] levels;                   // Индексы ее уровней детализации (пусто - без уровней)
+        float centerX, centerY, centerZ;    // Центр AABB
+
+        void clear() {
+            vertices.clear();
+            indices.clear();
+            levels = null;
+        }
+    }
+
+    /** Размер ячейки сетки объединения
+     * @param size - сторона ячейки в единицах модели (0 - части сливаются по всей модели) */
+    void setCellSize(float size) {
+        cellSize = size;
+    }
+
+    /** Строить ли уровни детализации частей из треугольников */
+    void setLevelsOfDetail(boolean enabled) {
+        levelsOfDetail = enabled;
+    }
+
+    /** Объединение частей модели
+     * @param source - исходные данные модели (не меняются, материалы разделяются с результатом)
+     * @return объединенная модель или null, если модель нельзя объединить (uvMapping, позиции не из 3 чисел) */
+    ModelData optimize(ModelData source) {
+        meshByPart.clear();
+        meshParts.clear();
+        globalTransforms.clear();
+        openBatches.clear();
+        batches.clear();
+        drawCallsBefore = drawCallsAfter = levelParts = 0;
+
+        for (ModelMesh mesh : source.meshes) {
+            VertexAttribute position = find(mesh.attributes, VertexAttributes.Usage.Position);
+            if (position == null || position.numComponents != 3) return null;
+            for (ModelMeshPart part : mesh.parts) {
+                meshByPart.put(part.id, mesh);
+                meshParts.put(part.id, part);
+            }
+        }
+        for (ModelNode node : source.nodes) collectTransforms(node, null);
+        for (ModelNode node : source.nodes) {
+            if (!mergeNode(node)) return null;
+        }
+
+        ModelData result = new ModelData();
+        result.id = source.id;
+        result.version[0] = source.version[0];
+        result.version[1] = source.version[1];
+        result.materials.addAll(source.materials);
+        ModelNode root = new ModelNode();
+        root.id = "static";
+        root.parts = new ModelNodePart[batches.size];
+        for (int i = 0; i < batches.size; i++) {
+            Batch batch = batches.get(i);
+            ModelMeshPart part = new ModelMeshPart();
+            part.id = "static" + i;
+            part.primitiveType = batch.primitiveType;
+            part.indices = batch.indices.toArray();
+            Array<ModelMeshPart> parts = new Array<ModelMeshPart>(ModelMeshPart.class);
+            parts.add(part);
+            if (batch.levels != null) {
+                // Уровень добавляется, если он меньше предыдущего (иначе ни одна часть ячейки не упростилась)
+                int previous = part.indices.length;
+                for (int k = 0; k < batch.levels.length && batch.levels[k].size < previous; k++) {
+                    ModelMeshPart lod = new ModelMeshPart();
+                    lod.id = part.id + LodSelector.LEVEL_SUFFIX + (k + 1);
+                    lod.primitiveType = batch.primitiveType;
+                    lod.indices = batch.levels[k].toArray();
+                    parts.add(lod);
+                    previous = lod.indices.length;
+                    levelParts++;
+                }
+            }
+            ModelMesh mesh = new ModelMesh();
+            mesh.id = part.id;
+            mesh.attributes = batch.attributes;
+            mesh.vertices = batch.vertices.toArray();
+            mesh.parts = parts.toArray();
+            result.meshes.add(mesh);
+            ModelNodePart nodePart = new ModelNodePart();
+            nodePart.materialId = batch.materialId;
+            nodePart.meshPartId = part.id;
+            root.parts[i] = nodePart;
+        }
+        result.nodes.add(root);
+        drawCallsAfter = batches.size;
+        return result;
+    }
+
+    /** Вызовов отрисовки на глаз до объединения (частей во всех узлах) */
+    int getDrawCallsBefore() {
+        return drawCallsBefore;
+    }
+
+    /** Вызовов отрисовки на глаз после объединения */
+    int getDrawCallsAfter() {
+        return drawCallsAfter;
+    }
+
+    /** Добавлено частей уровней детализации */
+    int getLevelParts() {
+        return levelParts;
+    }
+
+    /** Глобальные матрицы узлов (как Node.calculateTransforms: родитель * T * R * S) */
+    private void collectTransforms(ModelNode node, Matrix4 parent) {
+        Matrix4 local = new Matrix4();
+        if (node.translation != null) local.translate(node.translation);
+        if (node.rotation != null) local.rotate(node.rotation);
+        if (node.scale != null) local.scale(node.scale.x, node.scale.y, node.scale.z);
+        Matrix4 global = parent != null ? new Matrix4(parent).mul(local) : local;
+        globalTransforms.put(node.id, global);
+        if (node.children != null) {
+            for (ModelNode child : node.children) collectTransforms(child, global);
+        }
+    }
+
+    /** Перенос частей узла и его потомков в накопители */
+    private boolean mergeNode(ModelNode node) {
+        if (node.parts != null) {
+            for (ModelNodePart nodePart : node.parts) {
+                if (nodePart.uvMapping != null) return false;
+                drawCallsBefore++;
+                ModelMeshPart part = meshParts.get(nodePart.meshPartId);
+                if (part == null) continue;
+                mergePart(node, nodePart, meshByPart.get(nodePart.meshPartId), part);
+            }
+        }
+        if (node.children != null) {
+            for (ModelNode child : node.children) {
+                if (!mergeNode(child)) return false;
+            }
+        }
+        return true;
+    }
+
+    /** Перенос одной части: используемые ею вершины переводятся в мировые координаты и дописываются в накопитель */
+    private void mergePart(ModelNode node, ModelNodePart nodePart, ModelMesh mesh, ModelMeshPart part) {
+        int inSize = 0;
+        for (VertexAttribute attribute : mesh.attributes) inSize += attribute.numComponents;
+        VertexAttribute[] outAttributes = withoutBoneWeights(mesh.attributes);
+        int outSize = 0;
+        for (VertexAttribute attribute : outAttributes) outSize += attribute.numComponents;
+
+        // Матрицы костей в исходной позе: глобальная матрица узла кости * обратная матрица привязки
+        boolean skinned = nodePart.bones != null && nodePart.bones.size > 0;
+        Matrix4[] bones = null;
+        if (skinned) {
+            bones = new Matrix4[nodePart.bones.size];
+            for (int i = 0; i < bones.length; i++) {
+                Matrix4 bone = globalTransforms.get(nodePart.bones.getKeyAt(i));
+                bones[i] = new Matrix4(bone != null ? bone : new Matrix4()).mul(new Matrix4(nodePart.bones.getValueAt(i)).inv());
+            }
+        } else {
+            Matrix4 global = globalTransforms.get(node.id);
+            blend.set(global);
+            normalMatrix.set(global).inv().transpose();
+        }
+
+        // Используемые частью вершины в мировых координатах
+        piece.clear();
+        remap.clear();
+        float[] in = mesh.vertices;
+        for (int i = 0; i < part.indices.length; i++) {
+            int index = part.indices[i] & 0xFFFF;
+            int mapped = remap.get(index, -1);
+            if (mapped < 0) {
+                mapped = piece.vertices.size / outSize;
+                remap.put(index, mapped);
+                if (skinned) blendBones(mesh.attributes, in, index * inSize, bones);
+                appendVertex(mesh.attributes, in, index * inSize, piece.vertices, skinned);
+            }
+            piece.indices.add(mapped);
+        }
+        int positionOffset = 0;
+        for (VertexAttribute attribute : outAttributes) {
+            if (attribute.usage == VertexAttributes.Usage.Position) break;
+            positionOffset += attribute.numComponents;
+        }
+        bounds(piece, outSize, positionOffset);
+
+        // Уровни детализации строятся по исходной части, пока она не слита с соседними
+        int pieceVertices = piece.vertices.size / outSize;
+        if (levelsOfDetail && part.primitiveType == GL20.GL_TRIANGLES && pieceVertices <= MAX_VERTICES) {
+            short[] indices = new short[piece.indices.size];
+            for (int i = 0; i < indices.length; i++) indices[i] = (short)piece.indices.get(i);
+            piece.levels = LodSelector.buildLevels(piece.vertices.toArray(), outSize, positionOffset, indices);
+        }
+
+        String key = nodePart.materialId + '|' + part.primitiveType + '|' + layoutKey(outAttributes);
+        if (cellSize > 0) {
+            key += '|' + (int)Math.floor(piece.centerX / cellSize) + ',' + (int)Math.floor(piece.centerY / cellSize)
+                    + ',' + (int)Math.floor(piece.centerZ / cellSize);
+        }
+        Batch batch = openBatches.get(key);
+        if (pieceVertices <= MAX_VERTICES) {
+            // Часть целиком: ее уровни ссылаются на те же вершины
+            if (batch == null || batch.vertexCount() + pieceVertices > MAX_VERTICES) {
+                batch = newBatch(key, nodePart, outAttributes, part, outSize);
+            }
+            int base = batch.vertexCount();
+            batch.vertices.addAll(piece.vertices);
+            for (int i = 0; i < piece.indices.size; i++) batch.indices.add((short)(base + piece.indices.get(i)));
+            if (batch.levels != null) {
+                // Часть без уровня k остается на своем последнем уровне (или на исходном)
+                int levelCount = piece.levels != null ? piece.levels.length : 0;
+                for (int k = 0; k < batch.levels.length; k++) {
+                    short[] level = levelCount > 0 ? piece.levels[Math.min(k, levelCount - 1)] : null;
+                    int count = level != null ? level.length : piece.indices.size;
+                    for (int i = 0; i < count; i++) {
+                        batch.levels[k].add((short)(base + (level != null ? level[i] : piece.indices.get(i))));
+                    }
+                }
+            }
+            return;
+        }
+
+        // Часть больше меша делится между накопителями (без уровней детализации).
+        // Списки примитивов можно разрывать между примитивами, полосы и веера - только целиком
+        int primitive = primitiveSize(part.primitiveType);
+        if (primitive == 0) throw new IllegalStateException("Mesh part " + part.id + " does not fit into 16-bit indices");
+        for (int i = 0; i < piece.indices.size; i++) {
+            // Если в меше может не хватить места на примитив, он начинается в новом накопителе
+            if (i % primitive == 0 && (batch == null || batch.vertexCount() + primitive > MAX_VERTICES)) {
+                batch = newBatch(key, nodePart, outAttributes, part, outSize);
+                remap.clear();
+            }
+            int index = piece.indices.get(i);
+            int mapped = remap.get(index, -1);
+            if (mapped < 0) {
+                mapped = batch.vertexCount();
+                remap.put(index, mapped);
+                batch.vertices.addAll(piece.vertices, index * outSize, outSize);
+            }
+            batch.indices.add((short)mapped);
+            if (batch.levels != null) {
+                for (ShortArray level : batch.levels) level.add((short)mapped);
+            }
+        }
+    }
+
+    /** Новый накопитель для группы частей */
+    private Batch newBatch(String key, ModelNodePart nodePart, VertexAttribute[] attributes, ModelMeshPart part, int vertexSize) {
+        Batch batch = new Batch(nodePart.materialId, attributes, part.primitiveType, vertexSize, levelsOfDetail);
+        batches.add(batch);
+        openBatches.put(key, batch);
+        return batch;
+    }
+
+    /** Центр AABB вершин части */
+    private static void bounds(Piece piece, int vertexSize, int positionOffset) {
+        float minX = Float.POSITIVE_INFINITY, minY = minX, minZ = minX;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+        float[] v = piece.vertices.items;
+        for (int o = positionOffset; o < piece.vertices.size; o += vertexSize) {
+            minX = Math.min(minX, v[o]); maxX = Math.max(maxX, v[o]);
+            minY = Math.min(minY, v[o + 1]); maxY = Math.max(maxY, v[o + 1]);
+            minZ = Math.min(minZ, v[o + 2]); maxZ = Math.max(maxZ, v[o + 2]);
+        }
+        piece.centerX = (minX + maxX) * 0.5f;
+        piece.centerY = (minY + maxY) * 0.5f;
+        piece.centerZ = (minZ + maxZ) * 0.5f;
+    }
+
+    /** Смесь матриц костей по весам вершины (как в шейдере: сумма вес * матрица) */
+    private void blendBones(VertexAttribute[] attributes, float[] in, int offset, Matrix4[] bones) {
+        float[] m = blend.val;
+        for (int k = 0; k < 16; k++) m[k] = 0;
+        for (VertexAttribute attribute : attributes) {
+            if (attribute.usage == VertexAttributes.Usage.BoneWeight) {
+                int bone = (int)in[offset];
+                float weight = in[offset + 1];
+                if (weight != 0 && bone >= 0 && bone < bones.length) {
+                    float[] b = bones[bone].val;
+                    for (int k = 0; k < 16; k++) m[k] += weight * b[k];
+                }
+            }
+            offset += attribute.numComponents;
+        }
+        // Нормали в шейдере скиннинга поворачиваются той же матрицей
+        float[] n = normalMatrix.val;
+        n[Matrix3.M00] = m[Matrix4.M00]; n[Matrix3.M01] = m[Matrix4.M01]; n[Matrix3.M02] = m[Matrix4.M02];
+        n[Matrix3.M10] = m[Matrix4.M10]; n[Matrix3.M11] = m[Matrix4.M11]; n[Matrix3.M12] = m[Matrix4.M12];
+        n[Matrix3.M20] = m[Matrix4.M20]; n[Matrix3.M21] = m[Matrix4.M21]; n[Matrix3.M22] = m[Matrix4.M22];
+    }
+
+    /** Запись вершины в мировых координатах (позиция - матрицей blend, направления - normalMatrix) */
+    private void appendVertex(VertexAttribute[] attributes, float[] in, int offset, FloatArray out, boolean skinned) {
+        float[] m = blend.val, n = normalMatrix.val;
+        for (VertexAttribute attribute : attributes) {
+            int usage = attribute.usage;
+            if (usage == VertexAttributes.Usage.BoneWeight) {
+                offset += attribute.numComponents;
+                continue;
+            }
+            if (usage == VertexAttributes.Usage.Position) {
+                float x = in[offset], y = in[offset + 1], z = in[offset + 2];
+                out.add(m[Matrix4.M00] * x + m[Matrix4.M01] * y + m[Matrix4.M02] * z + m[Matrix4.M03]);
+                out.add(m[Matrix4.M10] * x + m[Matrix4.M11] * y + m[Matrix4.M12] * z + m[Matrix4.M13]);
+                out.add(m[Matrix4.M20] * x + m[Matrix4.M21] * y + m[Matrix4.M22] * z + m[Matrix4.M23]);
+            } else if ((usage == VertexAttributes.Usage.Normal || usage == VertexAttributes.Usage.Tangent
+                    || usage == VertexAttributes.Usage.BiNormal) && attribute.numComponents == 3) {
+                float x = in[offset], y = in[offset + 1], z = in[offset + 2];
+                float tx = n[Matrix3.M00] * x + n[Matrix3.M01] * y + n[Matrix3.M02] * z;
+                float ty = n[Matrix3.M10] * x + n[Matrix3.M11] * y + n[Matrix3.M12] * z;
+                float tz = n[Matrix3.M20] * x + n[Matrix3.M21] * y + n[Matrix3.M22] * z;
+                float len = (float)Math.sqrt(tx * tx + ty * ty + tz * tz);
+                if (len > 0) len = 1 / len;
+                out.add(tx * len);
+                out.add(ty * len);
+                out.add(tz * len);
+            } else {
+                for (int k = 0; k < attribute.numComponents; k++) out.add(in[offset + k]);
+            }
+            offset += attribute.numComponents;
+        }
+    }
+
+    /** Число индексов в примитиве списка (0 - полоса или веер, их нельзя разрывать) */
+    private static int primitiveSize(int primitiveType) {
+        switch (primitiveType) {
+            case GL20.GL_TRIANGLES: return 3;
+            case GL20.GL_LINES: return 2;
+            case GL20.GL_POINTS: return 1;
+            default: return 0;
+        }
+    }
+
+    private static VertexAttribute find(VertexAttribute[] attributes, int usage) {
+        for (VertexAttribute attribute : attributes) {
+            if (attribute.usage == usage) return attribute;
+        }
+        return null;
+    }
+
+    private static VertexAttribute[] withoutBoneWeights(VertexAttribute[] attributes) {
+        Array<VertexAttribute> result = new Array<VertexAttribute>(VertexAttribute.class);
+        for (VertexAttribute attribute : attributes) {
+            if (attribute.usage != VertexAttributes.Usage.BoneWeight) {
+                result.add(new VertexAttribute(attribute.usage, attribute.numComponents, attribute.alias, attribute.unit));
+            }
+        }
+        return result.toArray();
+    }
+
+    /** Строка формата вершины для группировки частей */
+    private static String layoutKey(VertexAttribute[] attributes) {
+        StringBuilder key = new StringBuilder();
+        for (VertexAttribute attribute : attributes) {
+            key.append(attribute.usage).append(':').append(attribute.numComponents).append(':')
+                    .append(attribute.alias).append(':').append(attribute.unit).append(';');
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,208 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.RenderableProvider;
+import com.badlogic.gdx.graphics.g3d.Shader;
+import com.badlogic.gdx.graphics.g3d.utils.DefaultRenderableSorter;
+import com.badlogic.gdx.graphics.g3d.utils.DefaultShaderProvider;
+import com.badlogic.gdx.graphics.g3d.utils.DefaultTextureBinder;
+import com.badlogic.gdx.graphics.g3d.utils.RenderContext;
+import com.badlogic.gdx.graphics.g3d.utils.RenderableSorter;
+import com.badlogic.gdx.graphics.g3d.utils.ShaderProvider;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.FlushablePool;
+import com.badlogic.gdx.utils.IntArray;
+
+/** Аналог ModelBatch для стереопары
+ * Объекты собираются, отсекаются по общему для обоих глаз frustum-у и сортируются один раз за кадр,
+ * затем готовый список отрисовывается для каждого глаза, меняются только матрицы камеры.
+ * Использование: begin(vrCamera), render(...), renderEye(левая), renderEye(правая), end() */
+
+class StereoModelBatch implements Disposable {
+    private final FlushablePool<Renderable> renderablesPool;   // Пул объектов отрисовки
+    private final Array<Renderable> renderables;               // Видимые объекты текущего кадра
+    private final RenderContext context;                       // Состояние GL
+    private final DefaultTextureBinder textureBinder;          // Привязка текстур (со счетчиком привязок)
+    private final ShaderProvider shaderProvider;               // Выбор шейдеров
+    private final RenderableSorter sorter;                     // Сортировка по материалам и расстоянию
+    private final PerspectiveCamera stereoCam;                 // Камера, frustum которой охватывает оба глаза
+    private final Vector3 center = new Vector3();
+    private final Vector3 scale = new Vector3();
+    private final IntArray visible = new IntArray();           // Результат запроса к SceneIndex
+    private boolean sorted;                                    // Отсортирован ли список в этом кадре
+    private float cullMargin;                                  // Запас угла обзора при отсечении (град)
+
+    /** Статистика за кадр */
+    private int gatheredCount;      // Собрано объектов
+    private int culledCount;        // Отсечено по frustum-у
+    private int drawCalls;          // Вызовов отрисовки (оба глаза)
+    private int triangles;          // Отрисовано треугольников (оба глаза)
+    private int shaderSwitches;     // Смен шейдера (оба глаза)
+    private int materialChanges;    // Смен материала между соседними объектами (оба глаза)
+    private int textureBinds;       // Реальных привязок текстур, без повторно использованных (оба глаза)
+
+    /** Конструктор со стандартными шейдерами */
+    StereoModelBatch() {
+        this(new DefaultShaderProvider());
+    }
+
+    /** Конструктор
+     * @param shaderProvider - поставщик шейдеров */
+    StereoModelBatch(ShaderProvider shaderProvider) {
+        this.shaderProvider = shaderProvider;
+        renderablesPool = new FlushablePool<Renderable>() {
+            @Override
+            protected Renderable newObject() {
+                return new Renderable();
+            }
+        };
+        renderables = new Array<Renderable>();
+        textureBinder = new DefaultTextureBinder(DefaultTextureBinder.WEIGHTED, 1);
+        context = new RenderContext(textureBinder);
+        sorter = new DefaultRenderableSorter();
+        stereoCam = new PerspectiveCamera();
+    }
+
+    /** Начало кадра: построение общего frustum-а обоих глаз
+     * Камера с тем же углом обзора отодвигается назад настолько, чтобы ее пирамида вмещала
+     * пирамиды обоих глаз, разнесенных на +-parallax */
+    void begin(VRCamera vrCamera) {
+        renderables.clear();
+        renderablesPool.flush();
+        sorted = false;
+        gatheredCount = culledCount = drawCalls = triangles = shaderSwitches = materialChanges = textureBinds = 0;
+
+        PerspectiveCamera eye = vrCamera.getLeftCam();
+        float tanHalfFov = (float)Math.tan(eye.fieldOfView * 0.5f * MathUtils.degreesToRadians);
+        float tanHalfHFov = tanHalfFov * eye.viewportWidth / eye.viewportHeight;
+        float back = vrCamera.getParallax() / tanHalfHFov;
+
+        // direction у VRCamera смотрит из экрана, поэтому камера отодвигается вдоль него
+        stereoCam.fieldOfView = eye.fieldOfView + cullMargin;
+        stereoCam.viewportWidth = eye.viewportWidth;
+        stereoCam.viewportHeight = eye.viewportHeight;
+        stereoCam.near = eye.near;
+        stereoCam.far = eye.far + back;
+        stereoCam.position.set(vrCamera.getDirection()).scl(back).add(vrCamera.getPosition());
+        stereoCam.direction.set(vrCamera.getDirection()).scl(-1);
+        stereoCam.up.set(vrCamera.getUp());
+        stereoCam.update();
+    }
+
+    /** Запас угла обзора при отсечении
+     * Нужен, если ориентация камеры уточняется уже после сбора сцены (VRCamera.latch()):
+     * за это время голова успевает повернуться, и объекты у края не должны пропадать
+     * @param degrees - на сколько расширить вертикальный угол обзора (град) */
+    void setCullMargin(float degrees) {
+        cullMargin = degrees;
+    }
+
+    /** Сбор объектов отрисовки с отсечением невидимых обоими глазами */
+    void render(RenderableProvider renderableProvider) {
+        int offset = renderables.size;
+        renderableProvider.getRenderables(renderables, renderablesPool);
+        for (int i = offset; i < renderables.size; i++) {
+            Renderable renderable = renderables.get(i);
+            gatheredCount++;
+            if (!isVisible(renderable)) {
+                // Порядок не важен - список все равно будет отсортирован
+                renderables.set(i, renderables.peek());
+                renderables.pop();
+                culledCount++;
+                i--;
+                continue;
+            }
+            renderable.shader = shaderProvider.getShader(renderable);
+        }
+    }
+
+    /** Сбор статических объектов через пространственный индекс
+     * @param staticRenderables - объекты, по AABB которых построен индекс (в том же порядке)
+     * @param index - индекс, статистика отсечения остается в нем */
+    void render(Array<Renderable> staticRenderables, SceneIndex index) {
+        index.query(stereoCam.frustum, visible);
+        gatheredCount += index.size();
+        culledCount += index.getItemsCulled();
+        for (int i = 0; i < visible.size; i++) {
+            Renderable renderable = staticRenderables.get(visible.get(i));
+            renderable.shader = shaderProvider.getShader(renderable);
+            renderables.add(renderable);
+        }
+    }
+
+    /** Добавление одного готового объекта отрисовки (без отсечения) */
+    void render(Renderable renderable) {
+        renderable.shader = shaderProvider.getShader(renderable);
+        renderables.add(renderable);
+        gatheredCount++;
+    }
+
+    /** Проверка пересечения ограничивающей сферы объекта с общим frustum-ом */
+    private boolean isVisible(Renderable renderable) {
+        center.set(renderable.meshPart.center).mul(renderable.worldTransform);
+        renderable.worldTransform.getScale(scale);
+        float radius = renderable.meshPart.radius * Math.max(scale.x, Math.max(scale.y, scale.z));
+        return stereoCam.frustum.sphereInFrustum(center, radius);
+    }
+
+    /** Отрисовка собранного списка для одного глаза (viewport устанавливается снаружи)
+     * @param camera - камера глаза */
+    void renderEye(Camera camera) {
+        if (!sorted) {
+            sorter.sort(stereoCam, renderables);
+            sorted = true;
+        }
+        context.begin();
+        int bindsBefore = textureBinder.getBindCount();
+        Shader currentShader = null;
+        Material currentMaterial = null;
+        for (int i = 0; i < renderables.size; i++) {
+            Renderable renderable = renderables.get(i);
+            // Сортировка ставит объекты с одним материалом рядом, считаем переходы между материалами
+            if (currentMaterial != renderable.material) {
+                currentMaterial = renderable.material;
+                materialChanges++;
+            }
+            if (currentShader != renderable.shader) {
+                if (currentShader != null) currentShader.end();
+                currentShader = renderable.shader;
+                currentShader.begin(camera, context);
+                shaderSwitches++;
+            }
+            currentShader.render(renderable);
+            drawCalls++;
+            if (renderable.meshPart.primitiveType == GL20.GL_TRIANGLES) triangles += renderable.meshPart.size / 3;
+        }
+        if (currentShader != null) currentShader.end();
+        context.end();
+        textureBinds += textureBinder.getBindCount() - bindsBefore;
+    }
+
+    /** Конец кадра */
+    void end() {
+        renderables.clear();
+        renderablesPool.flush();
+    }
+
+    /** Статистика последнего кадра */
+    int getGatheredCount() { return gatheredCount; }
+    int getCulledCount() { return culledCount; }
+    int getDrawCalls() { return drawCalls; }
+    int getTriangles() { return triangles; }
+    int getShaderSwitches() { return shaderSwitches; }
+    int getMaterialChanges() { return materialChanges; }
+    int getTextureBinds() { return textureBinds; }
+
+    /** Освобождение шейдеров */
+    @Override
+    public void dispose() {
+        shaderProvider.dispose();
+    }
+}
@@ -0,0 +1,115 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** Телеметрия кадра и трекинга
+ * Длительности этапов складываются в заранее созданные гистограммы, раз в DUMP_INTERVAL_NANOS
+ * перцентили выводятся строкой в лог (и при желании дописываются в файл), после чего гистограммы
+ * обнуляются. Каждую гистограмму пишет и сбрасывает один поток: FUSION_STEP пишется из потока
+ * датчиков, поэтому поток рендера только просит ее сбросить, а сбрасывает ее сам поток датчиков
+ * перед следующей записью. Все вызовы в коде обернуты в if (Telemetry.ENABLED), поэтому при выключенной
+ * телеметрии компилятор их вырезает вместе с вызовами System.nanoTime() */
+
+final class Telemetry {
+    /** Сбор телеметрии (константа времени компиляции) */
+    static final boolean ENABLED = false;
+    /** Период вывода (нс) */
+    static final long DUMP_INTERVAL_NANOS = 5000000000L;
+
+    /** Измеряемые величины */
+    static final int FRAME = 0;             // Интервал между кадрами
+    static final int CAMERA_UPDATE = 1;     // VRCamera.update()
+    static final int LEFT_EYE = 2;          // Проход отрисовки левого глаза (CPU)
+    static final int RIGHT_EYE = 3;         // Проход отрисовки правого глаза (CPU)
+    static final int FUSION_STEP = 4;       // Шаг вычисления ориентации (поток датчиков)
+    static final int SENSOR_TO_RENDER = 5;  // От показания датчика до конца отрисовки кадра
+    static final int LATCH_AGE = 6;         // Возраст снимка ориентации в момент фиксации перед глазом
+    private static final String[] NAMES = { "frame", "camera", "leftEye", "rightEye", "fusion", "latency",
+            "latchAge" };
+
+    private static final Histogram[] histograms = new Histogram[NAMES.length];
+    /** Вместо гистограммы, сброс которой запрошен, но еще не выполнен */
+    private static final Histogram empty = new Histogram();
+    private static final StringBuilder line = new StringBuilder(512);
+    /** Запрос сброса FUSION_STEP из потока рендера */
+    private static final AtomicBoolean fusionReset = new AtomicBoolean();
+    private static long lastDumpNanos;      // Момент предыдущего вывода
+    private static FileHandle dumpFile;     // Файл для вывода (null - только лог)
+
+    static {
+        for (int i = 0; i < histograms.length; i++) histograms[i] = new Histogram();
+    }
+
+    private Telemetry() { }
+
+    /** Учет длительности
+     * @param metric - величина (FRAME, CAMERA_UPDATE, ...)
+     * @param nanos - длительность (нс) */
+    static void record(int metric, long nanos) {
+        histogram(metric).record(nanos);
+    }
+
+    /** Учет длительности от заданного момента до текущего
+     * @return текущий момент (удобно как начало следующего замера) */
+    static long since(int metric, long startNanos) {
+        long now = System.nanoTime();
+        histogram(metric).record(now - startNanos);
+        return now;
+    }
+
+    /** Гистограмма для записи из потока, который ее пишет (с обработкой запроса сброса) */
+    private static Histogram histogram(int metric) {
+        Histogram h = histograms[metric];
+        if (metric == FUSION_STEP && fusionReset.get() && fusionReset.getAndSet(false)) h.reset();
+        return h;
+    }
+
+    /** Дописывать строки вывода в файл (null - только лог) */
+    static void setDumpFile(FileHandle file) {
+        dumpFile = file;
+    }
+
+    /** Вывод и сброс гистограмм, если прошел период (вызывается раз в кадр из потока рендера) */
+    static void update(long nowNanos) {
+        if (lastDumpNanos == 0) lastDumpNanos = nowNanos;
+        if (nowNanos - lastDumpNanos < DUMP_INTERVAL_NANOS) return;
+        lastDumpNanos = nowNanos;
+        String text = format();
+        Gdx.app.log("Telemetry", text);
+        if (dumpFile != null) dumpFile.writeString(text + "\n", true);
+        for (int i = 0; i < histograms.length; i++) {
+            if (i == FUSION_STEP) fusionReset.set(true);
+            else histograms[i].reset();
+        }
+    }
+
+    /** Строка вида "frame n=300 p50=16.667 p99=17.002 max=18.310 ms; ..." */
+    static String format() {
+        line.setLength(0);
+        for (int i = 0; i < histograms.length; i++) {
+            Histogram h = i == FUSION_STEP && fusionReset.get() ? empty : histograms[i];
+            if (i > 0) line.append("; ");
+            line.append(NAMES[i]).append(" n=").append(h.getCount());
+            line.append(" p50=");
+            appendMillis(h.getPercentile(0.5f));
+            line.append(" p99=");
+            appendMillis(h.getPercentile(0.99f));
+            line.append(" max=");
+            appendMillis(h.getMax());
+            line.append(" ms");
+        }
+        return line.toString();
+    }
+
+    /** Наносекунды в миллисекундах с тремя знаками */
+    private static void appendMillis(long nanos) {
+        long micros = nanos / 1000;
+        line.append(micros / 1000).append('.');
+        long frac = micros % 1000;
+        if (frac < 100) line.append('0');
+        if (frac < 10) line.append('0');
+        line.append(frac);
+    }
+}
@@ -0,0 +1,119 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Matrix3;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector2;
+
+/** Поворотная перепроекция (timewarp) картинок глаз
+ * Если предыдущий кадр не уложился в бюджет, сцена в этом кадре не рисуется: на экран еще раз
+ * выводятся последние картинки глаз из FBO, повернутые от ориентации, с которой они нарисованы,
+ * к текущей. Так поворот головы отображается с частотой экрана, даже когда сцена не успевает.
+ * Два кадра подряд не перепроецируются, поэтому при постоянной перегрузке сцена идет через кадр.
+ * Перепроекция только поворотная: смещение глаз и параллакс не учитываются.
+ * Направление взгляда d в осях камеры с текущей ориентацией R видно на картинке, нарисованной
+ * с ориентацией Rr, как Rr^T * R * d (матрица вида камеры - R^T, см. VRCamera) */
+
+class Timewarp {
+    private final long budgetNanos;             // Бюджет кадра (нс)
+    private final long missedNanos;             // Порог пропуска vsync, как у ResolutionController (нс)
+    private final Quaternion rendered = new Quaternion();   // Ориентация, с которой нарисованы картинки
+    private final Quaternion delta = new Quaternion();
+    private final Matrix3 matrix = new Matrix3();
+    private boolean hasImages;                  // Есть ли уже нарисованные картинки
+    private boolean lastReprojected;            // Был ли предыдущий кадр перепроекцией
+    private long freshFrames;                   // Кадров с отрисовкой сцены
+    private long reprojectedFrames;             // Кадров с перепроекцией старых картинок
+
+    /** Конструктор
+     * @param budgetNanos - бюджет кадра (период vsync, нс) */
+    Timewarp(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+        missedNanos = (long)(budgetNanos * ResolutionController.MISSED_VSYNC_FACTOR);
+    }
+
+    /** Решение в начале кадра: рисовать сцену или перепроецировать прошлые картинки
+     * @param intervalNanos - интервал от начала предыдущего кадра (0 - неизвестен)
+     * @param lastWorkNanos - время работы предыдущего кадра
+     * @return true - рисовать сцену (после отрисовки вызвать rendered()) */
+    boolean beginFrame(long intervalNanos, long lastWorkNanos) {
+        boolean missed = intervalNanos > missedNanos || lastWorkNanos > budgetNanos;
+        if (hasImages && !lastReprojected && missed) {
+            lastReprojected = true;
+            reprojectedFrames++;
+            return false;
+        }
+        lastReprojected = false;
+        freshFrames++;
+        return true;
+    }
+
+    /** Картинки глаз нарисованы заново
+     * @param orientation - ориентация, по которой построены матрицы камер */
+    void rendered(Quaternion orientation) {
+        rendered.set(orientation);
+        hasImages = true;
+    }
+
+    /** Матрица перепроекции к текущей ориентации (единичная, если картинки свежие)
+     * @param latest - текущая ориентация
+     * @return матрица (меняется при следующем вызове) */
+    Matrix3 getMatrix(Quaternion latest) {
+        return rotationDelta(rendered, latest, matrix);
+    }
+
+    /** Кадров с отрисовкой сцены */
+    long getFreshFrames() {
+        return freshFrames;
+    }
+
+    /** Кадров с перепроекцией */
+    long getReprojectedFrames() {
+        return reprojectedFrames;
+    }
+
+    /** Матрица поворота Rr^T * R (кватернионы могут быть не нормированы)
+     * @param rendered - ориентация картинки
+     * @param latest - текущая ориентация
+     * @return out */
+    Matrix3 rotationDelta(Quaternion rendered, Quaternion latest, Matrix3 out) {
+        // conj(qr) * q
+        float rw = rendered.w, rx = -rendered.x, ry = -rendered.y, rz = -rendered.z;
+        delta.set(rw * latest.x + rx * latest.w + ry * latest.z - rz * latest.y,
+                rw * latest.y + ry * latest.w + rz * latest.x - rx * latest.z,
+                rw * latest.z + rz * latest.w + rx * latest.y - ry * latest.x,
+                rw * latest.w - rx * latest.x - ry * latest.y - rz * latest.z);
+        return toMatrix(delta, out);
+    }
+
+    /** Матрица поворота кватерниона (с учетом возможной ненормированности) */
+    static Matrix3 toMatrix(Quaternion q, Matrix3 out) {
+        float n = q.x * q.x + q.y * q.y + q.z * q.z + q.w * q.w;
+        float s = (n > 0) ? 2f / n : 0;
+        float xs = q.x * s, ys = q.y * s, zs = q.z * s;
+        float xx = q.x * xs, xy = q.x * ys, xz = q.x * zs, xw = q.w * xs;
+        float yy = q.y * ys, yz = q.y * zs, yw = q.w * ys;
+        float zz = q.z * zs, zw = q.w * zs;
+        float[] m = out.val;
+        m[Matrix3.M00] = 1 - (yy + zz); m[Matrix3.M01] = xy - zw;       m[Matrix3.M02] = xz + yw;
+        m[Matrix3.M10] = xy + zw;       m[Matrix3.M11] = 1 - (xx + zz); m[Matrix3.M12] = yz - xw;
+        m[Matrix3.M20] = xz - yw;       m[Matrix3.M21] = yz + xw;       m[Matrix3.M22] = 1 - (xx + yy);
+        return out;
+    }
+
+    /** Перепроекция текстурной координаты (то же, что делает вершинный шейдер DistortionRenderer)
+     * @param m - матрица перепроекции
+     * @param u, v - координата на картинке глаза при текущей ориентации (0..1)
+     * @param tanH, tanV - тангенсы половины горизонтального и вертикального угла обзора
+     * @param out - координата на нарисованной картинке (может выйти за 0..1)
+     * @return false, если направление оказалось позади камеры */
+    static boolean reproject(Matrix3 m, float u, float v, float tanH, float tanV, Vector2 out) {
+        float[] a = m.val;
+        float x = (u * 2 - 1) * tanH, y = (v * 2 - 1) * tanV;
+        float dx = a[Matrix3.M00] * x + a[Matrix3.M01] * y - a[Matrix3.M02];
+        float dy = a[Matrix3.M10] * x + a[Matrix3.M11] * y - a[Matrix3.M12];
+        float dz = a[Matrix3.M20] * x + a[Matrix3.M21] * y - a[Matrix3.M22];
+        if (dz >= 0) return false;
+        out.set(dx / (-dz * 2 * tanH) + 0.5f, dy / (-dz * 2 * tanV) + 0.5f);
+        return true;
+    }
+}
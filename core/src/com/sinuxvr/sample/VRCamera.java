@@ -7,7 +7,8 @@ import com.badlogic.gdx.math.Quaternion;
 import com.badlogic.gdx.math.Vector3;
 
 /** Класс VR камеры
- * Данные об ориентации берутся из VRSensorManager при вызове update() */
+ * Данные об ориентации берутся из VRSensorManager при вызове update(); latch() перед отрисовкой
+ * стереопары подхватывает более свежий снимок и перестраивает только матрицы вида и combined */
 
 class VRCamera {
     private PerspectiveCamera leftCam;   // Левая камера
@@ -17,15 +18,25 @@ class VRCamera {
     private Vector3 direction;           // Вектор направления VR камеры
     private Vector3 up;                  // Вектор UP VR камеры
     private Vector3 upDirCross;          // Векторное произведение up и direction (понадобится в части 2, сейчас не трогаем)
+    private long lookAheadNanos;         // Время прогноза ориентации вперед (0 - без прогноза)
+    private long targetNanos;            // Момент вывода кадра, на который прогнозируется ориентация
+    private long latchAgeNanos;          // Возраст снимка в момент последнего update() или latch()
+    private final PoseSnapshot poseSnapshot = new PoseSnapshot();   // Снимок ориентации текущего кадра
+    private final Quaternion headQuaternion = new Quaternion();     // Ориентация, по которой построены матрицы
 
-    /** Конструктор */
+    /** Конструктор, размеры экрана берутся из Gdx.graphics */
     VRCamera(float fov, float parallax, float near, float far) {
+        this(fov, parallax, near, far, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
+    }
+
+    /** Конструктор с явными размерами экрана (половина ширины на каждый глаз) */
+    VRCamera(float fov, float parallax, float near, float far, int width, int height) {
         this.parallax = parallax;
-        leftCam = new PerspectiveCamera(fov, Gdx.graphics.getWidth() / 2, Gdx.graphics.getHeight());
+        leftCam = new PerspectiveCamera(fov, width / 2, height);
         leftCam.near = near;
         leftCam.far = far;
         leftCam.update();
-        rightCam = new PerspectiveCamera(fov, Gdx.graphics.getWidth() / 2, Gdx.graphics.getHeight());
+        rightCam = new PerspectiveCamera(fov, width / 2, height);
         rightCam.near = near;
         rightCam.far = far;
         rightCam.update();
@@ -35,41 +46,93 @@ class VRCamera {
         upDirCross = new Vector3().set(direction).crs(up).nor();
     }
 
-    /** Обновление ориентации камеры */
+    /** Обновление ориентации камеры по последнему снимку ориентации (в начале кадра) */
     void update() {
-        Quaternion headQuaternion = GdxVR.vrSensorManager.getHeadQuaternion();
+        GdxVR.vrSensorManager.getPoseSnapshot(poseSnapshot);
+        long now = System.nanoTime();
+        targetNanos = now + lookAheadNanos;
+        latchAgeNanos = poseSnapshot.getAge(now);
+        orient();
+    }
+
+    /** Поздняя фиксация ориентации перед отрисовкой стереопары (одна на оба глаза)
+     * Сцена к этому моменту уже собрана и отсечена по ориентации из update(), здесь берется
+     * последний снимок и, если он новее, матрицы перестраиваются через update(Quaternion).
+     * Прогноз делается на тот же момент вывода кадра, что и в update(): меняются только данные
+     * @return true - появился новый снимок и матрицы перестроены */
+    boolean latch() {
+        long sequence = poseSnapshot.sequence;
+        GdxVR.vrSensorManager.getPoseSnapshot(poseSnapshot);
+        latchAgeNanos = poseSnapshot.getAge(System.nanoTime());
+        if (poseSnapshot.sequence == sequence) return false;
+        orient();
+        return true;
+    }
+
+    /** Построение матриц по текущему снимку (с прогнозом на момент вывода кадра) */
+    private void orient() {
+        if (lookAheadNanos > 0) poseSnapshot.predict(targetNanos, headQuaternion);
+        else poseSnapshot.getOrientation(headQuaternion);
+        update(headQuaternion);
+    }
+
+    /** Построение матриц обеих камер по заданной ориентации
+     * Матрица поворота строится прямо из кватерниона (без acos/sqrt и без выделения памяти),
+     * матрица вида левого и правого глаза отличается только переносом на parallax по X.
+     * Меняются только векторы направления, view и combined: frustum и обратные матрицы камер глаз
+     * не пересчитываются, поэтому вызов дешев и годится для поздней фиксации ориентации */
+    void update(Quaternion q) {
+        // Матрица поворота R из кватерниона (с учетом возможной ненормированности)
+        float n = q.x * q.x + q.y * q.y + q.z * q.z + q.w * q.w;
+        float s = (n > 0) ? 2f / n : 0;
+        float xs = q.x * s, ys = q.y * s, zs = q.z * s;
+        float xx = q.x * xs, xy = q.x * ys, xz = q.x * zs, xw = q.w * xs;
+        float yy = q.y * ys, yz = q.y * zs, yw = q.w * ys;
+        float zz = q.z * zs, zw = q.w * zs;
+        float r00 = 1 - (yy + zz), r01 = xy - zw, r02 = xz + yw;
+        float r10 = xy + zw, r11 = 1 - (xx + zz), r12 = yz - xw;
+        float r20 = xz - yw, r21 = yz + xw, r22 = 1 - (xx + yy);
 
         // Из-за обхода стандартного механизма вращения камеры необходимо вручную
-        // получать векторы ее направления из кватерниона
-        direction.set(0, 0, 1);
-        headQuaternion.transform(direction);
-        up.set(0, 1, 0);
-        headQuaternion.transform(up);
-        upDirCross.set(direction);
-        upDirCross.crs(up).nor();
-
-        // Вычисление углов вращения камер из кватерниона
-        float angle = 2 * (float)Math.acos(headQuaternion.w);
-        float s = 1f / (float)Math.sqrt(1 - headQuaternion.w * headQuaternion.w);
-        float vx = headQuaternion.x * s;
-        float vy = headQuaternion.y * s;
-        float vz = headQuaternion.z * s;
-
-        // Вращение левой камеры
-        leftCam.view.idt(); // Сброс матрицы вида
-        leftCam.view.translate(parallax, 0, 0); // Перенос в начало координат + parallax по X
-        leftCam.view.rotateRad(vx, vy, vz, -angle); // Поворот кватернионом
-        leftCam.view.translate(-position.x, -position.y, -position.z); // Смещение в position
-        leftCam.combined.set(leftCam.projection);
-        Matrix4.mul(leftCam.combined.val, leftCam.view.val);
-
-        // Вращение правой камеры
-        rightCam.view.idt(); // Сброс матрицы вида
-        rightCam.view.translate(-parallax, 0, 0); // Перенос в начало координат + parallax по X
-        rightCam.view.rotateRad(vx, vy, vz, -angle); // Поворот кватернионом
-        rightCam.view.translate(-position.x, -position.y, -position.z); // Смещение в position
-        rightCam.combined.set(rightCam.projection);
-        Matrix4.mul(rightCam.combined.val, rightCam.view.val);
+        // получать векторы ее направления - это столбцы матрицы R
+        direction.set(r02, r12, r22);
+        up.set(r01, r11, r21);
+        upDirCross.set(-r00, -r10, -r20); // direction x up = -(столбец X)
+
+        // Матрица вида = T(+-parallax) * R^T * T(-position), перенос вычисляется один раз
+        float tx = -(r00 * position.x + r10 * position.y + r20 * position.z);
+        float ty = -(r01 * position.x + r11 * position.y + r21 * position.z);
+        float tz = -(r02 * position.x + r12 * position.y + r22 * position.z);
+        setView(leftCam.view.val, r00, r01, r02, r10, r11, r12, r20, r21, r22, tx + parallax, ty, tz);
+        setView(rightCam.view.val, r00, r01, r02, r10, r11, r12, r20, r21, r22, tx - parallax, ty, tz);
+
+        // Проекция PerspectiveCamera симметрична (ненулевые только M00, M11, M22, M23, M32) и у обоих
+        // глаз одинакова, поэтому combined = P * V считается по строкам, а глаза различаются только M03
+        float[] p = leftCam.projection.val;
+        float p00 = p[Matrix4.M00], p11 = p[Matrix4.M11], p22 = p[Matrix4.M22], p23 = p[Matrix4.M23], p32 = p[Matrix4.M32];
+        float[] c = leftCam.combined.val;
+        c[Matrix4.M00] = p00 * r00; c[Matrix4.M01] = p00 * r10; c[Matrix4.M02] = p00 * r20; c[Matrix4.M03] = p00 * (tx + parallax);
+        c[Matrix4.M10] = p11 * r01; c[Matrix4.M11] = p11 * r11; c[Matrix4.M12] = p11 * r21; c[Matrix4.M13] = p11 * ty;
+        c[Matrix4.M20] = p22 * r02; c[Matrix4.M21] = p22 * r12; c[Matrix4.M22] = p22 * r22; c[Matrix4.M23] = p22 * tz + p23;
+        c[Matrix4.M30] = p32 * r02; c[Matrix4.M31] = p32 * r12; c[Matrix4.M32] = p32 * r22; c[Matrix4.M33] = p32 * tz;
+        float[] cr = rightCam.combined.val;
+        System.arraycopy(c, 0, cr, 0, 16);
+        cr[Matrix4.M03] = p00 * (tx - parallax);
+    }
+
+    /** Запись матрицы вида: поворот R^T и перенос t */
+    private static void setView(float[] v, float r00, float r01, float r02, float r10, float r11, float r12,
+                                float r20, float r21, float r22, float tx, float ty, float tz) {
+        v[Matrix4.M00] = r00; v[Matrix4.M01] = r10; v[Matrix4.M02] = r20; v[Matrix4.M03] = tx;
+        v[Matrix4.M10] = r01; v[Matrix4.M11] = r11; v[Matrix4.M12] = r21; v[Matrix4.M13] = ty;
+        v[Matrix4.M20] = r02; v[Matrix4.M21] = r12; v[Matrix4.M22] = r22; v[Matrix4.M23] = tz;
+        v[Matrix4.M30] = 0; v[Matrix4.M31] = 0; v[Matrix4.M32] = 0; v[Matrix4.M33] = 1;
+    }
+
+    /** Установка времени прогноза ориентации - ожидаемой задержки до вывода кадра на экран
+     * @param seconds - время в секундах, 0 - использовать ориентацию по последним показаниям */
+    void setLookAhead(float seconds) {
+        lookAheadNanos = (long)(seconds * 1e9f);
     }
 
     /** Изменение местоположения камеры */
@@ -87,6 +150,26 @@ class VRCamera {
         return rightCam;
     }
 
+    /** Возврат ориентации, по которой построены матрицы камер в последний раз */
+    Quaternion getOrientation() {
+        return headQuaternion;
+    }
+
+    /** Возврат снимка ориентации, по которому камера обновлялась в последний раз */
+    PoseSnapshot getPoseSnapshot() {
+        return poseSnapshot;
+    }
+
+    /** Возраст снимка ориентации в момент последнего update() или latch() (нс, 0 - нет данных) */
+    long getLatchAge() {
+        return latchAgeNanos;
+    }
+
+    /** Возврат половины расстояния между камерами глаз */
+    float getParallax() {
+        return parallax;
+    }
+
     /** Возврат позиции, направления и вектора UP камеры, а так же их векторного произведения*/
     Vector3 getPosition() { return position; }
     Vector3 getDirection() { return direction; }
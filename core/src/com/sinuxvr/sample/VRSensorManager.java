@@ -21,7 +21,28 @@ interface VRSensorManager {
      * @param use - true - включено, false - отключено */
     void useDriftCorrection(boolean use);
 
-    /** Получение вычисленного кватерниона ориентации головы
-     * @return кватернион для вращения камеры */
+    /** Включение-выключение интегрирования каждого показания гироскопа по его метке времени
+     * @param use - true - каждое показание, false - раз в кадр по времени кадра */
+    void useTimestampIntegration(boolean use);
+
+    /** Выбор алгоритма вычисления ориентации на лету
+     * @param type - тип фильтра
+     * @return false, если для фильтра не хватает датчиков (остается прежний) */
+    boolean setOrientationFilter(OrientationFilter.Type type);
+
+    /** Копирование последнего опубликованного снимка ориентации (только из потока рендера)
+     * Ориентация вычисляется отдельно от рендера, вызов только копирует готовые данные,
+     * поэтому его можно делать сколько угодно раз за кадр
+     * @param out - куда скопировать снимок (принадлежит вызывающему)
+     * @return out */
+    PoseSnapshot getPoseSnapshot(PoseSnapshot out);
+
+    /** Получение кватерниона ориентации головы из последнего снимка
+     * @return кватернион для вращения камеры (меняется при следующем вызове) */
     Quaternion getHeadQuaternion();
+
+    /** Получение кватерниона ориентации головы, спрогнозированного на заданный момент
+     * @param targetNanos - момент вывода кадра на экран в отсчете System.nanoTime()
+     * @return кватернион для вращения камеры (меняется при следующем вызове) */
+    Quaternion getPredictedHeadQuaternion(long targetNanos);
 }
\ No newline at end of file
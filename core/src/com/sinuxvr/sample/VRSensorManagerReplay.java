@@ -0,0 +1,180 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.Quaternion;
+import java.io.File;
+import java.io.IOException;
+
+/** Воспроизведение записанной трассы датчиков вместо живых датчиков (чистая Java, для десктопа)
+ * Показания из трассы подаются в SensorFusion так же, как это делает листенер на Android.
+ * В реальном времени трасса идет по часам System.nanoTime(), иначе каждый кадр продвигает ее
+ * на фиксированный шаг, и трасса проигрывается настолько быстро, насколько идут кадры.
+ * Ориентация вычисляется в потоке рендера, но публикуется через тот же PoseBuffer, что и на Android,
+ * а трасса продвигается один раз за кадр (Gdx.graphics.getFrameId()), сколько бы раз ни запрашивался снимок */
+
+class VRSensorManagerReplay implements VRSensorManager {
+    /** Шаг трассы за кадр при воспроизведении с максимальной скоростью (нс) */
+    static final long FRAME_STEP_NANOS = 1000000000L / 60;
+
+    private final SensorTraceReader reader;     // Чтение трассы
+    final SensorFusion sensorFusion;            // Вычисление ориентации (кольца видны тестам)
+    private final SensorSample sample = new SensorSample();
+    private final boolean realTime;             // Воспроизводить ли в реальном времени
+    private final PoseBuffer poseBuffer = new PoseBuffer();
+    private final PoseSnapshot snapshot = new PoseSnapshot();
+    private final Quaternion headQuaternion = new Quaternion();
+    private long lastFrameId = -1;              // Кадр, в котором трасса продвигалась последний раз
+
+    private boolean tracking;                   // Идет ли воспроизведение
+    private boolean started;                    // Было ли определено начало трассы
+    private long traceTime;                     // Текущий момент трассы (нс, в часах трассы)
+    private long clockOffset;                   // Сдвиг от System.nanoTime() к часам трассы
+
+    /** Конструктор
+     * @param traceFile - файл трассы, записанной SensorTraceWriter
+     * @param realTime - true - в реальном времени, false - с максимальной скоростью */
+    VRSensorManagerReplay(File traceFile, boolean realTime) throws IOException {
+        this.realTime = realTime;
+        reader = new SensorTraceReader(traceFile);
+        sensorFusion = new SensorFusion(reader.isGyroAvailable(), reader.isMagAvailable());
+        startTracking();
+    }
+
+    /** Возврат наличия гироскопа */
+    @Override
+    public boolean isGyroAvailable() {
+        return reader.isGyroAvailable();
+    }
+
+    /** Возврат наличия магнитометра */
+    @Override
+    public boolean isMagAvailable() {
+        return reader.isMagAvailable();
+    }
+
+    /** Старт (продолжение) воспроизведения */
+    @Override
+    public void startTracking() {
+        // Часы трассы продолжаются с того же места, где были остановлены
+        clockOffset = traceTime - System.nanoTime();
+        tracking = true;
+    }
+
+    /** Пауза воспроизведения */
+    @Override
+    public void endTracking() {
+        tracking = false;
+    }
+
+    /** Включение-выключение использования магнитометра на лету */
+    @Override
+    public void useDriftCorrection(boolean use) {
+        sensorFusion.useDriftCorrection(use);
+    }
+
+    /** Включение-выключение интегрирования гироскопа по меткам времени показаний */
+    @Override
+    public void useTimestampIntegration(boolean use) {
+        sensorFusion.useTimestampIntegration(use);
+    }
+
+    /** Выбор алгоритма вычисления ориентации */
+    @Override
+    public boolean setOrientationFilter(OrientationFilter.Type type) {
+        return sensorFusion.setFilter(type);
+    }
+
+    /** Дошло ли воспроизведение до конца трассы */
+    boolean isFinished() {
+        return !reader.hasNext();
+    }
+
+    /** Закрытие файла трассы */
+    void close() throws IOException {
+        reader.close();
+    }
+
+    /** Продвижение трассы (раз за кадр) и копирование последнего снимка ориентации */
+    @Override
+    public PoseSnapshot getPoseSnapshot(PoseSnapshot out) {
+        step();
+        return out.set(poseBuffer.read());
+    }
+
+    /** Кватернион ориентации из последнего снимка */
+    @Override
+    public Quaternion getHeadQuaternion() {
+        return getPoseSnapshot(snapshot).getOrientation(headQuaternion);
+    }
+
+    /** Прогноз ориентации последнего снимка на заданный момент */
+    @Override
+    public Quaternion getPredictedHeadQuaternion(long targetNanos) {
+        return getPoseSnapshot(snapshot).predict(targetNanos, headQuaternion);
+    }
+
+    /** Продвижение трассы, вычисление ориентации и публикация снимка
+     * Без Gdx.graphics (например, в утилитах без окна) каждый вызов - отдельный шаг */
+    private void step() {
+        if (Gdx.graphics != null) {
+            long frameId = Gdx.graphics.getFrameId();
+            if (frameId == lastFrameId) return;
+            lastFrameId = frameId;
+        }
+        float deltaTime = advance();
+        long start = Telemetry.ENABLED ? System.nanoTime() : 0;
+        sensorFusion.update(deltaTime);
+        PoseSnapshot published = poseBuffer.beginWrite();
+        sensorFusion.fillSnapshot(published);
+        // Метка времени переводится из часов трассы в System.nanoTime()
+        if (published.timestamp != 0) published.timestamp -= clockOffset;
+        poseBuffer.publish();
+        if (Telemetry.ENABLED) Telemetry.since(Telemetry.FUSION_STEP, start);
+    }
+
+    /** Подача в SensorFusion показаний до текущего момента трассы
+     * @return время, на которое продвинулась трасса (с) */
+    private float advance() {
+        if (!tracking) return 0;
+        long now = System.nanoTime();
+        try {
+            // Часы трассы привязываются к первой записи
+            if (!started) {
+                if (!reader.hasNext()) return 0;
+                traceTime = reader.peekTimestamp();
+                clockOffset = traceTime - now;
+                started = true;
+            }
+
+            long previous = traceTime;
+            traceTime = realTime ? now + clockOffset : traceTime + FRAME_STEP_NANOS;
+            if (!realTime) clockOffset = traceTime - now;
+
+            // Показания, не поместившиеся в кольца, останутся в трассе до следующего кадра
+            while (reader.hasNext() && reader.peekTimestamp() <= traceTime) {
+                if (!hasRoom()) break;
+                switch (reader.next(sample)) {
+                    case SensorTraceWriter.TYPE_ACCELEROMETER:
+                        sensorFusion.accelerometerRing.offer(sample.timestamp, sample.x, sample.y, sample.z);
+                        break;
+                    case SensorTraceWriter.TYPE_GYROSCOPE:
+                        sensorFusion.gyroscopeRing.offer(sample.timestamp, sample.x, sample.y, sample.z);
+                        break;
+                    case SensorTraceWriter.TYPE_MAGNETIC_FIELD:
+                        sensorFusion.magneticFieldRing.offer(sample.timestamp, sample.x, sample.y, sample.z);
+                        break;
+                }
+            }
+            return (traceTime - previous) * 1e-9f;
+        } catch (IOException e) {
+            throw new IllegalStateException("Sensor trace read failed", e);
+        }
+    }
+
+    /** Есть ли место во всех кольцах (тип следующей записи заранее неизвестен) */
+    private boolean hasRoom() {
+        return sensorFusion.accelerometerRing.size() < sensorFusion.accelerometerRing.capacity()
+                && sensorFusion.gyroscopeRing.size() < sensorFusion.gyroscopeRing.capacity()
+                && sensorFusion.magneticFieldRing.size() < sensorFusion.magneticFieldRing.capacity();
+    }
+}
@@ -0,0 +1,162 @@
+package com.sinuxvr.sample;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Построение сетки искажения и ее кэш (без GL) */
+
+public class DistortionMeshTest {
+    private static final float K1 = 0.441f, K2 = 0.156f, FOV = 90f, ASPECT = 960f / 1080f;
+    private static final int COLS = 40, ROWS = 40;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void undistortInvertsDistort() {
+        for (float r = 0; r <= 1.5f; r += 0.01f) {
+            assertEquals(r, DistortionMesh.undistort(K1, K2, DistortionMesh.distort(K1, K2, r)), 1e-5f);
+        }
+    }
+
+    /** Каждая вершина берет цвет из точки картинки глаза, видимой через линзу под тем же углом */
+    @Test
+    public void verticesFollowDistortionFormula() {
+        DistortionMesh mesh = new DistortionMesh(K1, K2, FOV, ASPECT, COLS, ROWS);
+        assertEquals((COLS + 1) * (ROWS + 1) * DistortionMesh.VERTEX_SIZE, mesh.vertices.length);
+        float tanV = (float)Math.tan(Math.toRadians(FOV) * 0.5), tanH = tanV * ASPECT;
+        float screenV = DistortionMesh.undistort(K1, K2, tanV), screenH = screenV * ASPECT;
+        int insideCount = 0;
+        for (int j = 0; j <= ROWS; j++) {
+            for (int i = 0; i <= COLS; i++) {
+                int o = (j * (COLS + 1) + i) * DistortionMesh.VERTEX_SIZE;
+                float ndcX = -1 + 2f * i / COLS, ndcY = -1 + 2f * j / ROWS;
+                assertEquals(ndcX, mesh.vertices[o], 1e-6f);
+                assertEquals(ndcY, mesh.vertices[o + 1], 1e-6f);
+
+                // Тангенсы угла точки экрана и точки картинки глаза, которую видно через линзу
+                float x = ndcX * screenH, y = ndcY * screenV;
+                float r = (float)Math.sqrt(x * x + y * y);
+                float seen = DistortionMesh.distort(K1, K2, r);
+                float u = mesh.vertices[o + 2], t = mesh.vertices[o + 3];
+                if (mesh.vertices[o + 4] == 0) {
+                    // Вне картинки: видимая точка за ее краем
+                    assertTrue(seen * Math.abs(x) / r > tanH || seen * Math.abs(y) / r > tanV);
+                    continue;
+                }
+                insideCount++;
+                float imageX = (u - 0.5f) * 2 * tanH, imageY = (t - 0.5f) * 2 * tanV;
+                assertEquals("vertex " + i + "," + j, seen, (float)Math.sqrt(imageX * imageX + imageY * imageY), 1e-4f);
+                // Направление от центра сохраняется
+                assertEquals(0, imageX * y - imageY * x, 1e-4f);
+            }
+        }
+        assertTrue(insideCount > (COLS + 1) * (ROWS + 1) / 2);
+
+        // Центр - в центр, середина верхнего края - на верхний край картинки
+        int center = ((ROWS / 2) * (COLS + 1) + COLS / 2) * DistortionMesh.VERTEX_SIZE;
+        assertEquals(0.5f, mesh.vertices[center + 2], 1e-6f);
+        assertEquals(0.5f, mesh.vertices[center + 3], 1e-6f);
+        int top = (ROWS * (COLS + 1) + COLS / 2) * DistortionMesh.VERTEX_SIZE;
+        assertEquals(1f, mesh.vertices[top + 3], 1e-4f);
+        assertEquals(1f, mesh.vertices[top + 4], 0);
+    }
+
+    /** Без искажения сетка копирует картинку глаза */
+    @Test
+    public void zeroCoefficientsCopyImage() {
+        DistortionMesh mesh = new DistortionMesh(0, 0, FOV, ASPECT, 8, 6);
+        for (int o = 0; o < mesh.vertices.length; o += DistortionMesh.VERTEX_SIZE) {
+            assertEquals((mesh.vertices[o] + 1) * 0.5f, mesh.vertices[o + 2], 1e-5f);
+            assertEquals((mesh.vertices[o + 1] + 1) * 0.5f, mesh.vertices[o + 3], 1e-5f);
+            assertEquals(1f, mesh.vertices[o + 4], 0);
+        }
+    }
+
+    /** Два треугольника на ячейку, индексы в пределах сетки, обход против часовой стрелки */
+    @Test
+    public void indicesCoverGrid() {
+        DistortionMesh mesh = new DistortionMesh(K1, K2, FOV, ASPECT, COLS, ROWS);
+        assertEquals(COLS * ROWS * 6, mesh.indices.length);
+        float area = 0;
+        for (int n = 0; n < mesh.indices.length; n += 3) {
+            float[] p = new float[6];
+            for (int k = 0; k < 3; k++) {
+                int index = mesh.indices[n + k];
+                assertTrue(index >= 0 && index < (COLS + 1) * (ROWS + 1));
+                p[k * 2] = mesh.vertices[index * DistortionMesh.VERTEX_SIZE];
+                p[k * 2 + 1] = mesh.vertices[index * DistortionMesh.VERTEX_SIZE + 1];
+            }
+            float cross = (p[2] - p[0]) * (p[5] - p[1]) - (p[3] - p[1]) * (p[4] - p[0]);
+            assertTrue("triangle " + n / 3, cross > 0);
+            area += cross * 0.5f;
+        }
+        // Треугольники покрывают весь viewport [-1, 1]^2
+        assertEquals(4f, area, 1e-3f);
+    }
+
+    @Test
+    public void cacheRoundTrip() throws IOException {
+        DistortionMesh mesh = new DistortionMesh(K1, K2, FOV, ASPECT, COLS, ROWS);
+        File file = folder.newFile("mesh.bin");
+        mesh.save(file);
+        DistortionMesh loaded = DistortionMesh.load(file, K1, K2, FOV, ASPECT, COLS, ROWS);
+        assertNotNull(loaded);
+        assertArrayEquals(mesh.vertices, loaded.vertices, 0);
+        assertArrayEquals(mesh.indices, loaded.indices);
+    }
+
+    /** Файл от других параметров, другой версии или с испорченным заголовком не читается */
+    @Test
+    public void cacheRejectsMismatchedHeader() throws IOException {
+        File file = folder.newFile("mesh.bin");
+        new DistortionMesh(K1, K2, FOV, ASPECT, COLS, ROWS).save(file);
+        assertNull(DistortionMesh.load(file, K1 + 0.01f, K2, FOV, ASPECT, COLS, ROWS));
+        assertNull(DistortionMesh.load(file, K1, K2, FOV + 1, ASPECT, COLS, ROWS));
+        assertNull(DistortionMesh.load(file, K1, K2, FOV, ASPECT, COLS, ROWS + 1));
+        assertNull(DistortionMesh.load(new File(folder.getRoot(), "missing.bin"), K1, K2, FOV, ASPECT, COLS, ROWS));
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // Версия (второе int-поле, little-endian)
+            raf.seek(4);
+            raf.write(DistortionMesh.VERSION + 1);
+            assertNull(DistortionMesh.load(file, K1, K2, FOV, ASPECT, COLS, ROWS));
+            raf.seek(4);
+            raf.write(DistortionMesh.VERSION);
+            assertNotNull(DistortionMesh.load(file, K1, K2, FOV, ASPECT, COLS, ROWS));
+            // Magic
+            raf.seek(0);
+            raf.write(0);
+            assertNull(DistortionMesh.load(file, K1, K2, FOV, ASPECT, COLS, ROWS));
+            // Обрезанный файл
+            raf.setLength(raf.length() - 2);
+            assertNull(DistortionMesh.load(file, K1, K2, FOV, ASPECT, COLS, ROWS));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** obtain() строит сетку и кладет ее в кэш, повторный вызов читает ее оттуда */
+    @Test
+    public void obtainUsesCache() throws IOException {
+        File cacheDir = new File(folder.getRoot(), "cache");
+        DistortionMesh built = DistortionMesh.obtain(cacheDir, K1, K2, FOV, ASPECT, COLS, ROWS);
+        File file = new File(cacheDir, DistortionMesh.cacheName(K1, K2, FOV, ASPECT, COLS, ROWS));
+        assertTrue(file.isFile());
+        DistortionMesh cached = DistortionMesh.obtain(cacheDir, K1, K2, FOV, ASPECT, COLS, ROWS);
+        assertArrayEquals(built.vertices, cached.vertices, 0);
+        assertTrue(!DistortionMesh.cacheName(K1, K2, FOV, ASPECT, COLS, ROWS)
+                .equals(DistortionMesh.cacheName(K1, K2, FOV, ASPECT, COLS + 1, ROWS)));
+    }
+}
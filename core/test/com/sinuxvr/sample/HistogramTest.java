@@ -0,0 +1,92 @@
+package com.sinuxvr.sample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Корзины гистограммы: точные значения до 16, границы у степеней двойки,
+ * перцентили не больше максимума во всем диапазоне long */
+
+public class HistogramTest {
+
+    /** Младшие значения - каждое в своей корзине */
+    @Test
+    public void smallValuesAreExact() {
+        for (long v = 0; v < 16; v++) {
+            assertEquals(v, Histogram.index(v));
+            assertEquals(v, Histogram.upperBound(Histogram.index(v)));
+        }
+        assertEquals(16, Histogram.index(16));
+        assertEquals(16, Histogram.upperBound(16));
+
+        // Медиана из значения и большого выброса - само значение
+        for (long v = 0; v < 16; v++) {
+            Histogram h = new Histogram();
+            h.record(v);
+            h.record(1000000);
+            assertEquals(v, h.getPercentile(0.5f));
+        }
+    }
+
+    /** Степень двойки открывает новую корзину, а 2^k - 1 закрывает предыдущую */
+    @Test
+    public void bucketBoundsAtPowersOfTwo() {
+        for (int k = 4; k < 63; k++) {
+            long power = 1L << k;
+            int index = Histogram.index(power);
+            assertEquals("2^" + k, index - 1, Histogram.index(power - 1));
+            assertEquals("2^" + k, power - 1, Histogram.upperBound(index - 1));
+            // В октаве 16 корзин шириной 2^(k-4)
+            long width = power >>> 4;
+            assertEquals("2^" + k, power + width - 1, Histogram.upperBound(index));
+            assertEquals("2^" + k, index, Histogram.index(power + width - 1));
+            assertEquals("2^" + k, index + 1, Histogram.index(power + width));
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.upperBound(Histogram.index(Long.MAX_VALUE)));
+    }
+
+    /** Относительная ширина корзины не больше 1/16 */
+    @Test
+    public void bucketContainsValue() {
+        for (long v = 3; v < Long.MAX_VALUE / 3; v = v * 3 + 1) {
+            long upper = Histogram.upperBound(Histogram.index(v));
+            assertTrue(v + " <= " + upper, v <= upper);
+            assertTrue(v + ": " + upper, upper - v <= v / 16);
+        }
+    }
+
+    /** Перцентиль - граница корзины, но не больше максимума */
+    @Test
+    public void percentileNeverExceedsMax() {
+        Histogram h = new Histogram();
+        h.record(1000);
+        assertEquals(1000, h.getPercentile(0.5f));
+        assertEquals(1000, h.getPercentile(1f));
+
+        h.reset();
+        for (int i = 1; i <= 100; i++) h.record(i * 1000L);
+        assertEquals(100, h.getCount());
+        assertEquals(100000, h.getMax());
+        for (float fraction = 0; fraction <= 1; fraction += 0.01f) {
+            long p = h.getPercentile(fraction);
+            assertTrue(fraction + ": " + p, p <= h.getMax());
+        }
+        // Медиана 50000 попадает в корзину [49152, 51199]
+        assertEquals(51199, h.getPercentile(0.5f));
+        assertEquals(100000, h.getPercentile(0.99f));
+
+        h.reset();
+        h.record(Long.MAX_VALUE);
+        h.record(Long.MAX_VALUE - 1);
+        assertEquals(Long.MAX_VALUE, h.getMax());
+        assertEquals(Long.MAX_VALUE, h.getPercentile(0.5f));
+        assertEquals(Long.MAX_VALUE, h.getPercentile(1f));
+
+        // Отрицательные - ноль
+        h.reset();
+        h.record(-5);
+        assertEquals(0, h.getPercentile(0.5f));
+        assertEquals(0, h.getMax());
+    }
+}
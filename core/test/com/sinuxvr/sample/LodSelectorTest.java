@@ -0,0 +1,116 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.g3d.Model;
+import com.badlogic.gdx.graphics.g3d.Renderable;
+import com.badlogic.gdx.graphics.g3d.model.MeshPart;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/** Выбор уровней детализации по размеру проекции ограничивающей сферы (без GL: части без меша) */
+
+public class LodSelectorTest {
+    /** При угле обзора 90 градусов тангенс половины угла равен 1, и размер проекции - radius / distance */
+    private static final float FOV = 90;
+    private static final float EPSILON = 1e-6f;
+
+    private static MeshPart part(String id, int offset, int size) {
+        return new MeshPart(id, null, offset, size, GL20.GL_TRIANGLES);
+    }
+
+    /** Объект с тремя уровнями (300, 150 и 60 индексов) в начале координат с радиусом 1
+     * и объект без уровней в (10, 0, 0) */
+    private static Array<Renderable> scene(Model model) {
+        model.meshParts.add(part("static0", 0, 300));
+        model.meshParts.add(part("static0" + LodSelector.LEVEL_SUFFIX + 1, 300, 150));
+        model.meshParts.add(part("static0" + LodSelector.LEVEL_SUFFIX + 2, 450, 60));
+        model.meshParts.add(part("static1", 0, 30));
+        Array<Renderable> renderables = new Array<Renderable>();
+        for (int i = 0; i < 2; i++) {
+            Renderable renderable = new Renderable();
+            renderable.meshPart.set(model.meshParts.get(i == 0 ? 0 : 3));
+            renderable.meshPart.center.set(i * 10, 0, 0);
+            renderable.meshPart.radius = 1;
+            renderables.add(renderable);
+        }
+        return renderables;
+    }
+
+    private static void select(LodSelector selector, float distance) {
+        selector.select(new Vector3(0, 0, distance), FOV);
+    }
+
+    @Test
+    public void projectedSize() {
+        float tan = (float)Math.tan(Math.toRadians(30));
+        assertEquals(0.5f / (4 * tan), LodSelector.projectedSize(4, 0.5f, tan), EPSILON);
+        // Вдвое дальше - вдвое меньше
+        assertEquals(LodSelector.projectedSize(4, 0.5f, tan) / 2, LodSelector.projectedSize(8, 0.5f, tan), EPSILON);
+        assertEquals(Float.POSITIVE_INFINITY, LodSelector.projectedSize(0.4f, 0.5f, tan), 0);
+    }
+
+    @Test
+    public void findsLevelParts() {
+        Model model = new Model();
+        Array<Renderable> renderables = scene(model);
+        LodSelector selector = new LodSelector(renderables, model);
+        assertEquals(3, selector.getLevelCount(0));
+        assertEquals(1, selector.getLevelCount(1));
+        assertEquals(0, selector.getLevel(0));
+        assertEquals((300 + 30) / 3, selector.getTriangleCount());
+    }
+
+    /** Пороги 0.5 и 0.2 высоты глаза; переход на грубый уровень - с запасом 10% */
+    @Test
+    public void thresholdsFollowProjectedSize() {
+        Model model = new Model();
+        Array<Renderable> renderables = scene(model);
+        LodSelector selector = new LodSelector(renderables, model);
+        MeshPart part = renderables.get(0).meshPart;
+
+        select(selector, 1.5f);     // 0.667
+        assertEquals(0, selector.getLevel(0));
+        select(selector, 2.1f);     // 0.476: ниже 0.5, но в пределах запаса
+        assertEquals(0, selector.getLevel(0));
+        select(selector, 2.3f);     // 0.435 < 0.45
+        assertEquals(1, selector.getLevel(0));
+        assertEquals("static0" + LodSelector.LEVEL_SUFFIX + 1, part.id);
+        assertEquals(300, part.offset);
+        assertEquals(150, part.size);
+        select(selector, 2.1f);     // Обратно на точный уровень - только от 0.5
+        assertEquals(1, selector.getLevel(0));
+        select(selector, 1.9f);     // 0.526
+        assertEquals(0, selector.getLevel(0));
+        assertEquals(0, part.offset);
+        assertEquals(300, part.size);
+
+        select(selector, 6f);       // 0.167 < 0.18: сразу на второй уровень
+        assertEquals(2, selector.getLevel(0));
+        assertEquals(60, part.size);
+        select(selector, 5.2f);     // 0.192: ниже 0.2, второй уровень держится
+        assertEquals(2, selector.getLevel(0));
+        select(selector, 4.8f);     // 0.208
+        assertEquals(1, selector.getLevel(0));
+        assertEquals(150 / 3 + 30 / 3, selector.getTriangleCount());
+
+        // Голова внутри сферы - полная детализация
+        select(selector, 0.5f);
+        assertEquals(0, selector.getLevel(0));
+    }
+
+    /** Объект без упрощенных частей всегда на исходном уровне */
+    @Test
+    public void singleLevelStays() {
+        Model model = new Model();
+        Array<Renderable> renderables = scene(model);
+        LodSelector selector = new LodSelector(renderables, model);
+        selector.select(new Vector3(1000, 0, 0), FOV);
+        assertEquals(2, selector.getLevel(0));
+        assertEquals(0, selector.getLevel(1));
+        assertEquals("static1", renderables.get(1).meshPart.id);
+        assertEquals(60 / 3 + 30 / 3, selector.getTriangleCount());
+    }
+}
@@ -0,0 +1,175 @@
+package com.sinuxvr.sample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Упрощение сетки: число треугольников на уровнях, отсутствие перевернутых треугольников,
+ * сохранение границы */
+
+public class MeshSimplifierTest {
+    /** Сфера без швов: полюса и кольца по lon вершин (только позиции), треугольники наружу */
+    static float[] sphereVertices(int lat, int lon) {
+        float[] vertices = new float[((lat - 1) * lon + 2) * 3];
+        int n = 0;
+        for (int r = 1; r < lat; r++) {
+            double theta = Math.PI * r / lat;
+            for (int c = 0; c < lon; c++) {
+                double phi = 2 * Math.PI * c / lon;
+                vertices[n++] = (float)(Math.sin(theta) * Math.cos(phi));
+                vertices[n++] = (float)Math.cos(theta);
+                vertices[n++] = (float)(Math.sin(theta) * Math.sin(phi));
+            }
+        }
+        vertices[n + 1] = 1;
+        vertices[n + 4] = -1;
+        return vertices;
+    }
+
+    static short[] sphereIndices(int lat, int lon) {
+        int top = (lat - 1) * lon, bottom = top + 1;
+        short[] indices = new short[(2 * lon + 2 * lon * (lat - 2)) * 3];
+        int n = 0;
+        for (int c = 0; c < lon; c++) {
+            int next = (c + 1) % lon;
+            n = add(indices, n, top, next, c);
+            n = add(indices, n, bottom, (lat - 2) * lon + c, (lat - 2) * lon + next);
+            for (int r = 0; r < lat - 2; r++) {
+                int a = r * lon + c, b = r * lon + next, d = (r + 1) * lon + c, e = (r + 1) * lon + next;
+                n = add(indices, n, a, b, e);
+                n = add(indices, n, a, e, d);
+            }
+        }
+        return indices;
+    }
+
+    /** Квадратная сетка cells x cells на [0, 1]^2 с высотой z = amplitude * sin * sin */
+    static float[] gridVertices(int cells, float amplitude) {
+        float[] vertices = new float[(cells + 1) * (cells + 1) * 3];
+        for (int j = 0; j <= cells; j++) {
+            for (int i = 0; i <= cells; i++) {
+                int o = (j * (cells + 1) + i) * 3;
+                vertices[o] = (float)i / cells;
+                vertices[o + 1] = (float)j / cells;
+                vertices[o + 2] = amplitude * (float)(Math.sin(Math.PI * 2 * vertices[o]) * Math.sin(Math.PI * 2 * vertices[o + 1]));
+            }
+        }
+        return vertices;
+    }
+
+    static short[] gridIndices(int cells) {
+        short[] indices = new short[cells * cells * 6];
+        int n = 0;
+        for (int j = 0; j < cells; j++) {
+            for (int i = 0; i < cells; i++) {
+                int a = j * (cells + 1) + i, b = a + 1, c = a + cells + 1, d = c + 1;
+                n = add(indices, n, a, b, d);
+                n = add(indices, n, a, d, c);
+            }
+        }
+        return indices;
+    }
+
+    private static int add(short[] indices, int n, int a, int b, int c) {
+        indices[n] = (short)a;
+        indices[n + 1] = (short)b;
+        indices[n + 2] = (short)c;
+        return n + 3;
+    }
+
+    /** Нормаль треугольника (не нормированная) */
+    static float[] normal(float[] v, short[] indices, int t) {
+        int a = indices[t * 3] * 3, b = indices[t * 3 + 1] * 3, c = indices[t * 3 + 2] * 3;
+        float ux = v[b] - v[a], uy = v[b + 1] - v[a + 1], uz = v[b + 2] - v[a + 2];
+        float wx = v[c] - v[a], wy = v[c + 1] - v[a + 1], wz = v[c + 2] - v[a + 2];
+        return new float[] { uy * wz - uz * wy, uz * wx - ux * wz, ux * wy - uy * wx };
+    }
+
+    /** Треугольники сферы смотрят наружу: нормаль сонаправлена с направлением на центр треугольника */
+    private static void assertOutward(float[] v, short[] indices) {
+        for (int t = 0; t < indices.length / 3; t++) {
+            float[] n = normal(v, indices, t);
+            float cx = 0, cy = 0, cz = 0;
+            for (int k = 0; k < 3; k++) {
+                int o = indices[t * 3 + k] * 3;
+                cx += v[o];
+                cy += v[o + 1];
+                cz += v[o + 2];
+            }
+            assertTrue("triangle " + t, n[0] * cx + n[1] * cy + n[2] * cz > 0);
+        }
+    }
+
+    @Test
+    public void sphereIsOutward() {
+        assertOutward(sphereVertices(24, 48), sphereIndices(24, 48));
+    }
+
+    @Test
+    public void reducesTrianglesPerLevel() {
+        float[] vertices = sphereVertices(24, 48);
+        short[] indices = sphereIndices(24, 48);
+        int triangles = indices.length / 3;
+        MeshSimplifier simplifier = new MeshSimplifier(vertices, 3, 0, indices);
+        assertEquals(triangles, simplifier.getTriangleCount());
+
+        // Стягивание ребра внутри сетки убирает два треугольника
+        int[] targets = { triangles / 2, triangles / 4, triangles / 8 };
+        int vertexCount = vertices.length / 3;
+        for (int target : targets) {
+            short[] level = simplifier.simplify(target);
+            assertEquals(simplifier.getTriangleCount() * 3, level.length);
+            assertTrue(level.length / 3 <= target && level.length / 3 >= target - 2);
+            for (short index : level) assertTrue(index >= 0 && index < vertexCount);
+            assertOutward(vertices, level);
+        }
+    }
+
+    /** На рельефе ни один треугольник не переворачивается вниз, граница сетки не сдвигается */
+    @Test
+    public void heightfieldKeepsOrientationAndBoundary() {
+        int cells = 32;
+        float[] vertices = gridVertices(cells, 0.1f);
+        short[] indices = gridIndices(cells);
+        MeshSimplifier simplifier = new MeshSimplifier(vertices, 3, 0, indices);
+        short[] level = simplifier.simplify(indices.length / 3 / 10);
+        assertTrue(level.length < indices.length / 4);
+        float area = 0;
+        for (int t = 0; t < level.length / 3; t++) {
+            float[] n = normal(vertices, level, t);
+            assertTrue("triangle " + t, n[2] > 0);
+            area += n[2] * 0.5f;
+        }
+        // Проекция на плоскость XY покрывает весь квадрат без наложений
+        assertEquals(1f, area, 1e-4f);
+    }
+
+    /** Вершины с другими атрибутами: позиция берется по смещению */
+    @Test
+    public void readsPositionAtOffset() {
+        float[] positions = gridVertices(8, 0.1f);
+        float[] vertices = new float[positions.length / 3 * 5];
+        for (int i = 0; i < positions.length / 3; i++) System.arraycopy(positions, i * 3, vertices, i * 5 + 2, 3);
+        short[] indices = gridIndices(8);
+        short[] expected = new MeshSimplifier(positions, 3, 0, indices).simplify(40);
+        short[] actual = new MeshSimplifier(vertices, 5, 2, indices).simplify(40);
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) assertEquals(expected[i], actual[i]);
+    }
+
+    @Test
+    public void buildsLevelsPerPart() {
+        float[] vertices = sphereVertices(24, 48);
+        short[] indices = sphereIndices(24, 48);
+        int triangles = indices.length / 3;
+        short[][] levels = LodSelector.buildLevels(vertices, 3, 0, indices);
+        assertEquals(LodSelector.MAX_LEVELS, levels.length);
+        assertTrue(levels[0].length / 3 <= triangles / 2);
+        assertTrue(levels[1].length / 3 <= triangles / 4);
+
+        // Одиночный треугольник не упрощается (стянулся бы целиком)
+        float[] triangle = { 0, 0, 0, 1, 0, 0, 0, 1, 0 };
+        assertEquals(0, LodSelector.buildLevels(triangle, 3, 0, new short[] { 0, 1, 2 }).length);
+    }
+}
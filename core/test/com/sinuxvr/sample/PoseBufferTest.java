@@ -0,0 +1,91 @@
+package com.sinuxvr.sample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Тесты тройного буфера снимков ориентации: чтение последней публикации
+ * и передача снимков между двумя потоками без разрывов и возврата назад */
+
+public class PoseBufferTest {
+
+    /** Заполнение снимка значением, по которому видно, что все поля из одной публикации */
+    private static void fill(PoseSnapshot snapshot, long value) {
+        snapshot.x = snapshot.y = snapshot.z = snapshot.w = value;
+        snapshot.wX = snapshot.wY = snapshot.wZ = value;
+        snapshot.aX = snapshot.aY = snapshot.aZ = value;
+        snapshot.timestamp = value;
+    }
+
+    private static void assertWhole(PoseSnapshot snapshot) {
+        long value = snapshot.timestamp;
+        String message = "torn snapshot " + value;
+        assertEquals(message, value, snapshot.sequence);
+        float[] fields = { snapshot.x, snapshot.y, snapshot.z, snapshot.w, snapshot.wX, snapshot.wY, snapshot.wZ,
+                snapshot.aX, snapshot.aY, snapshot.aZ };
+        for (float field : fields) assertEquals(message, value, field, 0);
+    }
+
+    @Test
+    public void readsLastPublished() {
+        PoseBuffer buffer = new PoseBuffer();
+        // До первой публикации - пустой снимок
+        PoseSnapshot empty = buffer.read();
+        assertEquals(0, empty.sequence);
+        assertEquals(0, empty.timestamp);
+
+        for (int i = 1; i <= 3; i++) {
+            fill(buffer.beginWrite(), i);
+            buffer.publish();
+        }
+        PoseSnapshot snapshot = buffer.read();
+        assertEquals(3, snapshot.sequence);
+        assertWhole(snapshot);
+
+        // Без новой публикации читается тот же снимок, и он не меняется
+        assertSame(snapshot, buffer.read());
+        assertSame(snapshot, buffer.read());
+        assertEquals(3, snapshot.sequence);
+
+        // Запись не трогает слот читателя
+        fill(buffer.beginWrite(), 4);
+        buffer.publish();
+        fill(buffer.beginWrite(), 5);
+        assertEquals(3, snapshot.sequence);
+        assertWhole(snapshot);
+        buffer.publish();
+        assertEquals(5, buffer.read().sequence);
+        assertWhole(buffer.read());
+    }
+
+    /** Один писатель и один читатель: снимок всегда целый, номер не уменьшается */
+    @Test
+    public void writerAndReaderThreads() throws InterruptedException {
+        final int count = 1000000;      // Значения точно представимы во float
+        final PoseBuffer buffer = new PoseBuffer();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= count; i++) {
+                    fill(buffer.beginWrite(), i);
+                    buffer.publish();
+                }
+            }
+        });
+        writer.start();
+
+        long last = 0;
+        while (writer.isAlive()) {
+            PoseSnapshot snapshot = buffer.read();
+            if (snapshot.sequence == 0) continue;       // Еще ничего не опубликовано
+            assertWhole(snapshot);
+            assertTrue("went back: " + snapshot.sequence + " after " + last, snapshot.sequence >= last);
+            last = snapshot.sequence;
+        }
+        writer.join();
+        assertEquals(count, buffer.read().sequence);
+        assertWhole(buffer.read());
+    }
+}
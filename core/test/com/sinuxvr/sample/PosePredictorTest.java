@@ -0,0 +1,88 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Quaternion;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Ошибка прогноза ориентации на синтетической записи движения головы
+ * Голова качается по рысканию (синусоида), гироскоп отдает точную угловую скорость 200 раз в секунду,
+ * ориентация на момент каждого показания известна точно. От каждого показания ориентация
+ * прогнозируется на LOOK_AHEAD вперед и сравнивается с истинной */
+
+public class PosePredictorTest {
+    private static final float AMPLITUDE = 0.6f;        // Амплитуда качания (рад)
+    private static final float FREQUENCY = 1f;          // Частота качания (Гц)
+    private static final long GYRO_PERIOD = 5000000L;   // Интервал гироскопа (нс)
+    private static final long LOOK_AHEAD = 25000000L;   // Время прогноза (нс)
+    private static final long SETTLE = 1000000000L;     // Начало замера (установление оценки ускорения, нс)
+    private static final long DURATION = 10000000000L;  // Длина записи (нс)
+
+    private static double yaw(long nanos) {
+        return AMPLITUDE * Math.sin(2 * Math.PI * FREQUENCY * nanos * 1e-9);
+    }
+
+    private static double yawRate(long nanos) {
+        return AMPLITUDE * 2 * Math.PI * FREQUENCY * Math.cos(2 * Math.PI * FREQUENCY * nanos * 1e-9);
+    }
+
+    /** Среднеквадратичная ошибка прогноза на записи (рад)
+     * @param useAcceleration - учитывать ли угловое ускорение */
+    private static double predictionError(boolean useAcceleration) {
+        PosePredictor predictor = new PosePredictor();
+        predictor.useAcceleration(useAcceleration);
+        PoseSnapshot snapshot = new PoseSnapshot();
+        Quaternion predicted = new Quaternion();
+        double sum = 0;
+        int count = 0;
+        for (long t = GYRO_PERIOD; t < DURATION; t += GYRO_PERIOD) {
+            predictor.onGyro(t, 0, (float)yawRate(t), 0);
+            double half = yaw(t) * 0.5;
+            snapshot.x = snapshot.z = 0;
+            snapshot.y = (float)Math.sin(half);
+            snapshot.w = (float)Math.cos(half);
+            snapshot.timestamp = t;
+            predictor.fill(snapshot);
+            if (t < SETTLE) continue;
+            snapshot.predict(t + LOOK_AHEAD, predicted);
+            double error = 2 * Math.atan2(predicted.y, predicted.w) - yaw(t + LOOK_AHEAD);
+            sum += error * error;
+            count++;
+        }
+        return Math.sqrt(sum / count);
+    }
+
+    /** Ошибка без прогноза: ориентация последнего показания против истинной через LOOK_AHEAD (рад) */
+    private static double staleError() {
+        double sum = 0;
+        int count = 0;
+        for (long t = SETTLE; t < DURATION; t += GYRO_PERIOD) {
+            double error = yaw(t) - yaw(t + LOOK_AHEAD);
+            sum += error * error;
+            count++;
+        }
+        return Math.sqrt(sum / count);
+    }
+
+    /** Прогноз по скорости во много раз точнее ориентации последнего показания */
+    @Test
+    public void velocityPredictionReducesError() {
+        double velocity = predictionError(false), stale = staleError();
+        assertTrue("velocity " + velocity + ", stale " + stale, velocity < 0.1 * stale);
+    }
+
+    /** Учет ускорения уменьшает ошибку прогноза по скорости */
+    @Test
+    public void accelerationReducesErrorFurther() {
+        double velocity = predictionError(false), acceleration = predictionError(true);
+        assertTrue("acceleration " + acceleration + ", velocity " + velocity, acceleration < 0.5 * velocity);
+    }
+
+    /** Прогноз не дальше MAX_LOOK_AHEAD */
+    @Test
+    public void lookAheadIsClamped() {
+        Quaternion far = PosePredictor.extrapolate(0, 0, 0, 1, 0, 1, 0, 0, 0, 0, 1f, new Quaternion());
+        assertEquals(PosePredictor.MAX_LOOK_AHEAD, 2 * Math.atan2(far.y, far.w), 1e-5);
+    }
+}
@@ -0,0 +1,127 @@
+package com.sinuxvr.sample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Регулятор масштаба разрешения на синтетических рядах времени кадра:
+ * понижение при устойчивой перегрузке, гистерезис при восстановлении, пределы масштаба */
+
+public class ResolutionControllerTest {
+    private static final long BUDGET = 16666667L;
+    private static final long OVER = BUDGET * 95 / 100;     // Выше порога перегрузки (0.85)
+    private static final long BAND = BUDGET * 70 / 100;     // Между порогами
+    private static final long IDLE = BUDGET * 40 / 100;     // Ниже порога запаса (0.6)
+    private static final float EPSILON = 1e-6f;
+
+    private static ResolutionController controller() {
+        ResolutionController controller = new ResolutionController(0.5f, 1f, 0.1f, BUDGET);
+        controller.setWindows(5, 120, 30);
+        return controller;
+    }
+
+    /** Прогон ряда одинаковых кадров
+     * @return число смен масштаба */
+    private static int run(ResolutionController controller, int frames, long interval, long work) {
+        int changes = 0;
+        for (int i = 0; i < frames; i++) {
+            if (controller.update(interval, work)) changes++;
+        }
+        return changes;
+    }
+
+    @Test
+    public void sustainedOverrunStepsDown() {
+        ResolutionController controller = controller();
+        assertEquals(0, run(controller, 4, BUDGET, OVER));
+        assertEquals(1f, controller.getScale(), EPSILON);
+        assertTrue(controller.update(BUDGET, OVER));
+        assertEquals(0.9f, controller.getScale(), EPSILON);
+
+        // После смены масштаба кадры не учитываются, затем снова нужна устойчивая перегрузка
+        assertEquals(0, run(controller, 30 + 4, BUDGET, OVER));
+        assertTrue(controller.update(BUDGET, OVER));
+        assertEquals(0.8f, controller.getScale(), EPSILON);
+    }
+
+    /** Пропуск vsync считается перегрузкой, даже если работа кадра укладывается в бюджет */
+    @Test
+    public void missedVsyncStepsDown() {
+        ResolutionController controller = controller();
+        assertEquals(1, run(controller, 5, BUDGET * 2, BAND));
+        assertEquals(0.9f, controller.getScale(), EPSILON);
+    }
+
+    /** Одиночные выбросы не меняют масштаб */
+    @Test
+    public void isolatedSpikesAreIgnored() {
+        ResolutionController controller = controller();
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(controller.update(BUDGET, i % 2 == 0 ? OVER : BAND));
+        }
+        assertEquals(1f, controller.getScale(), EPSILON);
+    }
+
+    /** Между порогами масштаб держится сколько угодно, повышение - только после долгого запаса */
+    @Test
+    public void recoveryHasHysteresis() {
+        ResolutionController controller = controller();
+        run(controller, 5, BUDGET, OVER);
+        assertEquals(0.9f, controller.getScale(), EPSILON);
+
+        assertEquals(0, run(controller, 10000, BUDGET, BAND));
+        assertEquals(0.9f, controller.getScale(), EPSILON);
+
+        assertEquals(0, run(controller, 119, BUDGET, IDLE));
+        assertTrue(controller.update(BUDGET, IDLE));
+        assertEquals(1f, controller.getScale(), EPSILON);
+
+        // Кадр между порогами сбрасывает накопленный запас
+        ResolutionController other = controller();
+        run(other, 5, BUDGET, OVER);
+        run(other, 30 + 100, BUDGET, IDLE);
+        other.update(BUDGET, BAND);
+        assertEquals(0, run(other, 119, BUDGET, IDLE));
+        assertEquals(0.9f, other.getScale(), EPSILON);
+    }
+
+    /** Понижение вскоре после повышения удваивает ожидание следующего повышения */
+    @Test
+    public void oscillationBacksOff() {
+        ResolutionController controller = controller();
+        run(controller, 5, BUDGET, OVER);
+        run(controller, 30 + 120, BUDGET, IDLE);
+        assertEquals(1f, controller.getScale(), EPSILON);
+
+        run(controller, 30 + 5, BUDGET, OVER);
+        assertEquals(0.9f, controller.getScale(), EPSILON);
+        assertEquals(0, run(controller, 30 + 239, BUDGET, IDLE));
+        assertTrue(controller.update(BUDGET, IDLE));
+        assertEquals(1f, controller.getScale(), EPSILON);
+    }
+
+    @Test
+    public void scaleIsClamped() {
+        ResolutionController controller = controller();
+        assertEquals(5, run(controller, 100000, BUDGET, OVER));
+        assertEquals(0.5f, controller.getScale(), EPSILON);
+        assertFalse(controller.update(BUDGET, OVER));
+
+        assertEquals(5, run(controller, 100000, BUDGET, IDLE));
+        assertEquals(1f, controller.getScale(), EPSILON);
+        assertFalse(controller.update(BUDGET, IDLE));
+
+        // Шаг не делит диапазон: последний шаг упирается в минимум
+        ResolutionController uneven = new ResolutionController(0.55f, 1f, 0.1f, BUDGET);
+        uneven.setWindows(5, 120, 30);
+        assertEquals(5, run(uneven, 100000, BUDGET, OVER));
+        assertEquals(0.55f, uneven.getScale(), EPSILON);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidRange() {
+        new ResolutionController(0.8f, 0.5f, 0.1f, BUDGET);
+    }
+}
@@ -0,0 +1,123 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import com.badlogic.gdx.utils.IntArray;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Запросы к SceneIndex на тысячах частей против перебора частей с проверкой средствами Frustum */
+
+public class SceneIndexTest {
+    private static final int PARTS = 5000;
+    private static final float WORLD = 100f;     // Части разбросаны в кубе [-WORLD/2, WORLD/2]
+
+    @BeforeClass
+    public static void loadNatives() {
+        // Матрицы камеры перемножаются нативно
+        GdxNativesLoader.load();
+    }
+
+    private static float[] randomBounds(Random random, int count) {
+        float[] bounds = new float[count * 6];
+        for (int i = 0; i < count; i++) {
+            for (int a = 0; a < 3; a++) {
+                float center = (random.nextFloat() - 0.5f) * WORLD, half = 0.05f + random.nextFloat() * 1.5f;
+                bounds[i * 6 + a] = center - half;
+                bounds[i * 6 + 3 + a] = center + half;
+            }
+        }
+        return bounds;
+    }
+
+    private static PerspectiveCamera randomCamera(Random random) {
+        PerspectiveCamera camera = new PerspectiveCamera(60 + random.nextFloat() * 40, 960, 1080);
+        camera.near = 0.1f;
+        camera.far = 10 + random.nextFloat() * 60;
+        camera.position.set((random.nextFloat() - 0.5f) * WORLD, (random.nextFloat() - 0.5f) * WORLD,
+                (random.nextFloat() - 0.5f) * WORLD);
+        camera.direction.set((float)random.nextGaussian(), (float)random.nextGaussian(), (float)random.nextGaussian()).nor();
+        camera.up.set(0, 1, 0);
+        if (Math.abs(camera.direction.y) > 0.99f) camera.up.set(1, 0, 0);
+        camera.update();
+        return camera;
+    }
+
+    /** Положение AABB по углам: -1 - все углы за одной плоскостью, 1 - все углы внутри, иначе 0 */
+    private static int classifyByCorners(Frustum frustum, float[] bounds, int o) {
+        Vector3 center = new Vector3((bounds[o] + bounds[o + 3]) * 0.5f, (bounds[o + 1] + bounds[o + 4]) * 0.5f,
+                (bounds[o + 2] + bounds[o + 5]) * 0.5f);
+        Vector3 dimensions = new Vector3(bounds[o + 3] - bounds[o], bounds[o + 4] - bounds[o + 1], bounds[o + 5] - bounds[o + 2]);
+        if (!frustum.boundsInFrustum(center, dimensions)) return -1;
+        Vector3 corner = new Vector3();
+        for (int c = 0; c < 8; c++) {
+            corner.set(bounds[o + ((c & 1) != 0 ? 3 : 0)], bounds[o + 1 + ((c & 2) != 0 ? 3 : 0)],
+                    bounds[o + 2 + ((c & 4) != 0 ? 3 : 0)]);
+            if (!frustum.pointInFrustum(corner)) return 0;
+        }
+        return 1;
+    }
+
+    @Test
+    public void classifyMatchesCornerTests() {
+        Random random = new Random(11);
+        float[] bounds = randomBounds(random, PARTS);
+        int[] seen = new int[3];
+        for (int c = 0; c < 20; c++) {
+            Frustum frustum = randomCamera(random).frustum;
+            for (int i = 0; i < PARTS; i++) {
+                int side = SceneIndex.classify(frustum, bounds, i * 6);
+                assertEquals("camera " + c + ", part " + i, classifyByCorners(frustum, bounds, i * 6), side);
+                seen[side + 1]++;
+            }
+        }
+        // Выборка содержит все три случая
+        assertTrue(seen[0] > 0 && seen[1] > 0 && seen[2] > 0);
+    }
+
+    @Test
+    public void queryMatchesBruteForce() {
+        Random random = new Random(3);
+        float[] bounds = randomBounds(random, PARTS);
+        SceneIndex index = new SceneIndex(bounds, PARTS);
+        assertEquals(PARTS, index.size());
+        IntArray visible = new IntArray();
+        IntArray expected = new IntArray();
+        int totalVisible = 0;
+        for (int c = 0; c < 100; c++) {
+            Frustum frustum = randomCamera(random).frustum;
+            index.query(frustum, visible);
+            expected.clear();
+            for (int i = 0; i < PARTS; i++) {
+                if (classifyByCorners(frustum, bounds, i * 6) >= 0) expected.add(i);
+            }
+            int[] actual = visible.toArray();
+            Arrays.sort(actual);
+            assertArrayEquals("camera " + c, expected.toArray(), actual);
+            assertEquals(actual.length, index.getItemsVisible());
+            assertEquals(PARTS - actual.length, index.getItemsCulled());
+            // Иерархия проверяет меньше узлов, чем частей
+            if (actual.length < PARTS / 10) assertTrue(index.getNodesTested() < PARTS);
+            totalVisible += actual.length;
+        }
+        assertTrue(totalVisible > 0);
+    }
+
+    @Test
+    public void emptyIndex() {
+        SceneIndex index = new SceneIndex(new float[0], 0);
+        IntArray visible = new IntArray();
+        visible.add(5);
+        index.query(randomCamera(new Random(1)).frustum, visible);
+        assertEquals(0, visible.size);
+        assertEquals(0, index.getItemsCulled());
+    }
+}
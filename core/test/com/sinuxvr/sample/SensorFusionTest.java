@@ -0,0 +1,69 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Quaternion;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Сравнение интегрирования гироскопа по меткам времени показаний с прежним интегрированием
+ * раз в кадр по времени кадра на синтетическом потоке: постоянное вращение по рысканию,
+ * показания гироскопа с неравномерными интервалами, кадры с неравномерной длительностью */
+
+public class SensorFusionTest {
+    /** Параметры синтетического потока */
+    private static final float RATE = 1f;                   // Угловая скорость вокруг оси Y (рад/с)
+    private static final long GYRO_PERIOD = 5000000L;       // Номинальный интервал гироскопа (нс)
+    private static final long GYRO_JITTER = 2000000L;       // Разброс интервала гироскопа (нс)
+    private static final long FRAME_PERIOD = 16666667L;     // Номинальный кадр (нс)
+    private static final long FRAME_JITTER = 4000000L;      // Разброс длительности кадра (нс)
+    private static final int SECONDS = 60;
+
+    /** Наибольшая за прогон ошибка рыскания (рад) относительно истинного угла на метку времени ориентации */
+    private static float maxYawError(boolean useTimestamps, long seed) {
+        SensorFusion fusion = new SensorFusion(true, false);
+        fusion.useTimestampIntegration(useTimestamps);
+        Random random = new Random(seed);
+        long gyroTime = 0, frameTime = 0, end = SECONDS * 1000000000L;
+        float maxError = 0;
+        while (frameTime < end) {
+            long frameLength = FRAME_PERIOD + (long)((random.nextFloat() * 2 - 1) * FRAME_JITTER);
+            frameTime += frameLength;
+            // Все показания, пришедшие до конца кадра
+            while (gyroTime <= frameTime) {
+                fusion.gyroscopeRing.offer(gyroTime, 0, RATE, 0);
+                gyroTime += GYRO_PERIOD + (long)((random.nextFloat() * 2 - 1) * GYRO_JITTER);
+            }
+            // Устройство стоит ровно, поэтому акселерометр не поправляет рыскание
+            fusion.accelerometerRing.offer(frameTime, 0, 9.81f, 0);
+            Quaternion q = fusion.update(frameLength * 1e-9f);
+
+            double truth = RATE * fusion.getPoseTimestamp() * 1e-9;
+            double yaw = 2 * Math.atan2(q.y, q.w);
+            double error = Math.abs(Math.IEEEremainder(yaw - truth, 2 * Math.PI));
+            if (error > maxError) maxError = (float)error;
+        }
+        return maxError;
+    }
+
+    /** По меткам времени ориентация совпадает с истинной на момент последнего показания */
+    @Test
+    public void timestampIntegrationDoesNotDrift() {
+        for (long seed = 1; seed <= 3; seed++) {
+            float error = maxYawError(true, seed);
+            assertEquals("seed " + seed, 0, error, 0.0005f);
+        }
+    }
+
+    /** Раз в кадр ориентация опережает свою метку времени на часть кадра, и ошибка заметно больше */
+    @Test
+    public void frameIntegrationIsLessAccurate() {
+        for (long seed = 1; seed <= 3; seed++) {
+            float perSample = maxYawError(true, seed), perFrame = maxYawError(false, seed);
+            assertTrue("seed " + seed + ": per frame " + perFrame + ", per sample " + perSample,
+                    perFrame > 5 * perSample);
+            assertTrue("seed " + seed + ": per frame " + perFrame, perFrame > RATE * GYRO_PERIOD * 1e-9f * 0.5f);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.sinuxvr.sample;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Тесты кольцевого буфера показаний: порядок при переходе через границу массива,
+ * поведение при переполнении и передача данных между двумя потоками */
+
+public class SensorRingBufferTest {
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(1, new SensorRingBuffer(1).capacity());
+        assertEquals(8, new SensorRingBuffer(5).capacity());
+        assertEquals(64, new SensorRingBuffer(64).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity() {
+        new SensorRingBuffer(0);
+    }
+
+    /** Индексы много раз обходят массив, порядок и значения сохраняются */
+    @Test
+    public void wrapsAroundInOrder() {
+        SensorRingBuffer buffer = new SensorRingBuffer(4);
+        SensorSample sample = new SensorSample();
+        long next = 0, expected = 0;
+        for (int round = 0; round < 100; round++) {
+            // Пишем по 3 показания, читаем по 3 - начало данных сдвигается по кругу
+            for (int i = 0; i < 3; i++, next++) assertTrue(buffer.offer(next, next, -next, next * 0.5f));
+            assertEquals(3, buffer.size());
+            for (int i = 0; i < 3; i++, expected++) {
+                assertTrue(buffer.poll(sample));
+                assertEquals(expected, sample.timestamp);
+                assertEquals(expected, sample.x, 0);
+                assertEquals(-expected, sample.y, 0);
+                assertEquals(expected * 0.5f, sample.z, 0);
+            }
+        }
+        assertFalse(buffer.poll(sample));
+        assertEquals(0, buffer.size());
+        assertEquals(300, buffer.getWrittenCount());
+        assertEquals(0, buffer.getDroppedCount());
+    }
+
+    /** При переполнении новые показания отбрасываются, непрочитанные не затираются */
+    @Test
+    public void overflowDropsNewestAndKeepsUnread() {
+        SensorRingBuffer buffer = new SensorRingBuffer(4);
+        SensorSample sample = new SensorSample();
+        for (int i = 0; i < 4; i++) assertTrue(buffer.offer(i, i, 0, 0));
+        assertFalse(buffer.offer(100, 100, 0, 0));
+        assertFalse(buffer.offer(101, 101, 0, 0));
+        assertEquals(2, buffer.getDroppedCount());
+        assertEquals(4, buffer.size());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.poll(sample));
+            assertEquals(i, sample.timestamp);
+        }
+        assertFalse(buffer.poll(sample));
+
+        // После чтения место освобождается
+        assertTrue(buffer.offer(5, 5, 0, 0));
+        assertTrue(buffer.poll(sample));
+        assertEquals(5, sample.timestamp);
+        assertEquals(5, buffer.getWrittenCount());
+    }
+
+    /** Один писатель и один читатель: каждое показание либо прочитано по порядку, либо учтено как отброшенное */
+    @Test
+    public void singleProducerSingleConsumer() throws InterruptedException {
+        final int count = 1000000;
+        final SensorRingBuffer buffer = new SensorRingBuffer(64);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= count; i++) buffer.offer(i, i, i, i);
+            }
+        });
+        producer.start();
+
+        SensorSample sample = new SensorSample();
+        long last = 0, read = 0;
+        while (producer.isAlive() || buffer.size() > 0) {
+            if (!buffer.poll(sample)) continue;
+            assertTrue("out of order: " + sample.timestamp + " after " + last, sample.timestamp > last);
+            // Значения принадлежат тому же показанию, что и метка времени
+            assertEquals(sample.timestamp, sample.x, 0);
+            assertEquals(sample.timestamp, sample.z, 0);
+            last = sample.timestamp;
+            read++;
+        }
+        producer.join();
+        assertEquals(read, buffer.getWrittenCount());
+        assertEquals(count, read + buffer.getDroppedCount());
+    }
+}
@@ -0,0 +1,95 @@
+package com.sinuxvr.sample;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Запись и чтение трассы датчиков: порядок записей, отдельный файл на сессию,
+ * недописанная последняя запись */
+
+public class SensorTraceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void writeSession(File file, long firstTimestamp, int count) throws IOException {
+        SensorTraceWriter writer = new SensorTraceWriter(file, true, false);
+        // Больше буфера писателя, чтобы проверить промежуточные сбросы
+        for (int i = 0; i < count; i++) {
+            writer.write(SensorTraceWriter.TYPE_GYROSCOPE, firstTimestamp + i, i, -i, 0.5f * i);
+        }
+        writer.close();
+    }
+
+    @Test
+    public void recordsRoundTrip() throws IOException {
+        File file = folder.newFile("a.trace");
+        writeSession(file, 1000, 1000);
+        SensorTraceReader reader = new SensorTraceReader(file);
+        try {
+            assertTrue(reader.isGyroAvailable());
+            assertFalse(reader.isMagAvailable());
+            assertEquals(1000, reader.getRecordCount());
+            SensorSample sample = new SensorSample();
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(1000 + i, reader.peekTimestamp());
+                assertEquals(SensorTraceWriter.TYPE_GYROSCOPE, reader.next(sample));
+                assertEquals(1000 + i, sample.timestamp);
+                assertEquals(i, sample.x, 0);
+                assertEquals(-i, sample.y, 0);
+                assertEquals(0.5f * i, sample.z, 0);
+            }
+            assertFalse(reader.hasNext());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** Новая сессия в том же файле не дописывается к старой, а заменяет ее */
+    @Test
+    public void newSessionReplacesFile() throws IOException {
+        File file = folder.newFile("b.trace");
+        writeSession(file, 5000, 10);
+        writeSession(file, 100, 3);
+        SensorTraceReader reader = new SensorTraceReader(file);
+        try {
+            assertEquals(3, reader.getRecordCount());
+            assertEquals(100, reader.peekTimestamp());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** Обрывок записи в конце файла (аварийное завершение) не читается */
+    @Test
+    public void partialRecordIsIgnored() throws IOException {
+        File file = folder.newFile("c.trace");
+        writeSession(file, 0, 5);
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[SensorTraceWriter.RECORD_SIZE - 4]);
+        out.close();
+        SensorTraceReader reader = new SensorTraceReader(file);
+        try {
+            assertEquals(5, reader.getRecordCount());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void sessionFilesAreSeparate() throws InterruptedException {
+        File directory = folder.getRoot();
+        File first = SensorTraceWriter.sessionFile(directory);
+        Thread.sleep(5);
+        File second = SensorTraceWriter.sessionFile(directory);
+        assertEquals(directory, first.getParentFile());
+        assertTrue(first.getName(), first.getName().matches("sensors-\\d{8}-\\d{6}-\\d{3}\\.trace"));
+        assertFalse(first.equals(second));
+    }
+}
@@ -0,0 +1,307 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelData;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelMaterial;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelMesh;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelMeshPart;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelNode;
+import com.badlogic.gdx.graphics.g3d.model.data.ModelNodePart;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Объединение частей модели (на ModelData, без GL): сохранение вершин и индексов,
+ * разбиение на меши по MAX_VERTICES, слияние по ячейкам с уровнями детализации частей, кэш результата */
+
+public class StaticModelOptimizerTest {
+    private static final int VERTEX_SIZE = 6;   // Позиция и нормаль
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void loadNatives() {
+        // Глобальные матрицы узлов перемножаются нативно
+        GdxNativesLoader.load();
+    }
+
+    /** Меш из отдельных треугольников в плоскости z = 0 с нормалью (1, 0, 0)
+     * @param parts - число треугольников в каждой части */
+    static ModelMesh triangles(String id, int... parts) {
+        int total = 0;
+        for (int count : parts) total += count;
+        ModelMesh mesh = new ModelMesh();
+        mesh.id = id;
+        mesh.attributes = new VertexAttribute[] { VertexAttribute.Position(), VertexAttribute.Normal() };
+        mesh.vertices = new float[total * 3 * VERTEX_SIZE];
+        for (int v = 0; v < total * 3; v++) {
+            int o = v * VERTEX_SIZE;
+            mesh.vertices[o] = v / 3 + (v % 3 == 1 ? 1 : 0);
+            mesh.vertices[o + 1] = v % 3 == 2 ? 1 : 0;
+            mesh.vertices[o + 3] = 1;
+        }
+        mesh.parts = new ModelMeshPart[parts.length];
+        int first = 0;
+        for (int p = 0; p < parts.length; p++) {
+            ModelMeshPart part = new ModelMeshPart();
+            part.id = id + p;
+            part.primitiveType = GL20.GL_TRIANGLES;
+            part.indices = new short[parts[p] * 3];
+            for (int i = 0; i < part.indices.length; i++) part.indices[i] = (short)(first + i);
+            first += part.indices.length;
+            mesh.parts[p] = part;
+        }
+        return mesh;
+    }
+
+    static ModelNode node(String id, Vector3 translation, Quaternion rotation, String[] materials, String[] meshParts) {
+        ModelNode node = new ModelNode();
+        node.id = id;
+        node.translation = translation;
+        node.rotation = rotation;
+        node.parts = new ModelNodePart[meshParts.length];
+        for (int i = 0; i < meshParts.length; i++) {
+            node.parts[i] = new ModelNodePart();
+            node.parts[i].materialId = materials[i];
+            node.parts[i].meshPartId = meshParts[i];
+        }
+        return node;
+    }
+
+    static ModelMaterial material(String id, Color diffuse) {
+        ModelMaterial material = new ModelMaterial();
+        material.id = id;
+        material.diffuse = diffuse;
+        return material;
+    }
+
+    /** Две части материала "wood" из разных мешей (одна - в двух узлах) и часть материала "stone" */
+    private static ModelData sample() {
+        ModelData model = new ModelData();
+        model.id = "sample";
+        model.materials.add(material("wood", Color.BROWN));
+        model.materials.add(material("stone", Color.GRAY));
+        model.meshes.add(triangles("a", 4, 2));
+        model.meshes.add(triangles("b", 3));
+        model.nodes.add(node("n0", new Vector3(10, 0, 0), null, new String[] { "wood", "stone" }, new String[] { "a0", "a1" }));
+        ModelNode parent = node("n1", new Vector3(0, 5, 0), null, new String[] { "wood" }, new String[] { "b0" });
+        parent.children = new ModelNode[] {
+                node("n2", new Vector3(0, 0, 2), new Quaternion(Vector3.Y, 90), new String[] { "wood" }, new String[] { "b0" }) };
+        model.nodes.add(parent);
+        return model;
+    }
+
+    private static int indexCount(ModelData model) {
+        int count = 0;
+        for (ModelMesh mesh : model.meshes) {
+            for (ModelMeshPart part : mesh.parts) count += part.indices.length;
+        }
+        return count;
+    }
+
+    private static ModelMesh meshOf(ModelData model, ModelNodePart nodePart) {
+        for (ModelMesh mesh : model.meshes) {
+            for (ModelMeshPart part : mesh.parts) {
+                if (part.id.equals(nodePart.meshPartId)) return mesh;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void mergePreservesVerticesAndIndices() {
+        ModelData source = sample();
+        StaticModelOptimizer optimizer = new StaticModelOptimizer();
+        ModelData merged = optimizer.optimize(source);
+        assertNotNull(merged);
+        assertEquals(4, optimizer.getDrawCallsBefore());
+        assertEquals(2, optimizer.getDrawCallsAfter());
+        assertEquals(1, merged.nodes.size);
+        assertEquals(2, merged.nodes.first().parts.length);
+
+        // Каждый экземпляр части дает свои вершины и индексы
+        assertEquals((4 + 2 + 3 + 3) * 3, indexCount(merged));
+        int wood = 0, stone = 0;
+        for (ModelNodePart nodePart : merged.nodes.first().parts) {
+            ModelMesh mesh = meshOf(merged, nodePart);
+            int vertices = mesh.vertices.length / VERTEX_SIZE;
+            if (nodePart.materialId.equals("wood")) wood = vertices;
+            else stone = vertices;
+        }
+        assertEquals((4 + 3 + 3) * 3, wood);
+        assertEquals(2 * 3, stone);
+    }
+
+    /** Вершины переведены в мировые координаты: позиция - глобальной матрицей узла, нормаль - ее поворотом */
+    @Test
+    public void verticesAreInWorldSpace() {
+        ModelData merged = new StaticModelOptimizer().optimize(sample());
+        ModelMesh wood = null;
+        for (ModelNodePart nodePart : merged.nodes.first().parts) {
+            if (nodePart.materialId.equals("wood")) wood = meshOf(merged, nodePart);
+        }
+        // Первая вершина части a0 в узле n0: (0, 0, 0) + (10, 0, 0)
+        assertArrayEquals(new float[] { 10, 0, 0, 1, 0, 0 }, copy(wood.vertices, 0), 1e-5f);
+        // Часть b0 в узле n1 идет после 4 треугольников a0
+        assertArrayEquals(new float[] { 0, 5, 0, 1, 0, 0 }, copy(wood.vertices, 12), 1e-5f);
+        // В дочернем узле n2: поворот на 90 градусов вокруг Y, затем (0, 0, 2) и (0, 5, 0) родителя
+        assertArrayEquals(new float[] { 0, 5, 1, 0, 0, -1 }, copy(wood.vertices, 12 + 9 + 1), 1e-5f);
+    }
+
+    private static float[] copy(float[] vertices, int vertex) {
+        float[] result = new float[VERTEX_SIZE];
+        System.arraycopy(vertices, vertex * VERTEX_SIZE, result, 0, VERTEX_SIZE);
+        return result;
+    }
+
+    /** Часть больше MAX_VERTICES делится между мешами по целым треугольникам */
+    @Test
+    public void largePartIsSplit() {
+        int triangles = 12000;
+        ModelData source = new ModelData();
+        source.materials.add(material("wood", Color.BROWN));
+        source.meshes.add(triangles("big", triangles));
+        source.nodes.add(node("n", null, null, new String[] { "wood" }, new String[] { "big0" }));
+        ModelData merged = new StaticModelOptimizer().optimize(source);
+
+        assertEquals(2, merged.meshes.size);
+        assertEquals(2, merged.nodes.first().parts.length);
+        int totalVertices = 0, totalIndices = 0;
+        for (ModelMesh mesh : merged.meshes) {
+            int vertices = mesh.vertices.length / VERTEX_SIZE;
+            assertTrue(vertices <= StaticModelOptimizer.MAX_VERTICES);
+            short[] indices = mesh.parts[0].indices;
+            assertEquals(0, indices.length % 3);
+            for (short index : indices) assertTrue(index >= 0 && index < vertices);
+            // Треугольники не разорваны: три вершины каждого - соседние вершины одного исходного треугольника
+            for (int i = 0; i < indices.length; i += 3) {
+                float x = mesh.vertices[indices[i] * VERTEX_SIZE];
+                assertEquals(x + 1, mesh.vertices[indices[i + 1] * VERTEX_SIZE], 0);
+                assertEquals(x, mesh.vertices[indices[i + 2] * VERTEX_SIZE], 0);
+            }
+            totalVertices += vertices;
+            totalIndices += indices.length;
+        }
+        assertEquals(triangles * 3, totalVertices);
+        assertEquals(triangles * 3, totalIndices);
+    }
+
+    /** Уровни строятся по каждой исходной части до слияния, части сливаются только внутри ячейки */
+    @Test
+    public void levelsArePerPartAndCell() {
+        float[] sphere = MeshSimplifierTest.sphereVertices(16, 32);
+        short[] sphereIndices = MeshSimplifierTest.sphereIndices(16, 32);
+        ModelData source = new ModelData();
+        source.materials.add(material("wood", Color.BROWN));
+        ModelMesh mesh = new ModelMesh();
+        mesh.id = "sphere";
+        mesh.attributes = new VertexAttribute[] { VertexAttribute.Position() };
+        mesh.vertices = sphere;
+        ModelMeshPart part = new ModelMeshPart();
+        part.id = "sphere0";
+        part.primitiveType = GL20.GL_TRIANGLES;
+        part.indices = sphereIndices;
+        mesh.parts = new ModelMeshPart[] { part };
+        source.meshes.add(mesh);
+        String[] wood = { "wood" }, parts = { "sphere0" };
+        source.nodes.add(node("near0", new Vector3(0.5f, 0, 0), null, wood, parts));
+        source.nodes.add(node("near1", new Vector3(0.5f, 0, 0), null, wood, parts));
+        source.nodes.add(node("far", new Vector3(20.5f, 0, 0), null, wood, parts));
+
+        StaticModelOptimizer optimizer = new StaticModelOptimizer();
+        optimizer.setCellSize(4);
+        optimizer.setLevelsOfDetail(true);
+        ModelData merged = optimizer.optimize(source);
+        assertEquals(3, optimizer.getDrawCallsBefore());
+        assertEquals(2, optimizer.getDrawCallsAfter());
+        assertEquals(2 * LodSelector.MAX_LEVELS, optimizer.getLevelParts());
+
+        ModelMesh near = merged.meshes.get(0), far = merged.meshes.get(1);
+        assertEquals(1 + LodSelector.MAX_LEVELS, near.parts.length);
+        assertEquals(1 + LodSelector.MAX_LEVELS, far.parts.length);
+        assertEquals(2 * sphereIndices.length, near.parts[0].indices.length);
+        for (int k = 1; k <= LodSelector.MAX_LEVELS; k++) {
+            assertEquals(near.parts[0].id + LodSelector.LEVEL_SUFFIX + k, near.parts[k].id);
+            // Уровень ячейки - уровни ее частей, каждая часть на своих вершинах:
+            // две одинаковые части дают две одинаковые половины со сдвигом индексов
+            short[] level = near.parts[k].indices;
+            int vertices = near.vertices.length / 3, half = level.length / 2;
+            for (short index : level) assertTrue(index >= 0 && index < vertices);
+            for (int i = 0; i < half; i++) {
+                assertTrue(level[i] < vertices / 2);
+                assertEquals(level[i] + vertices / 2, level[half + i]);
+            }
+            assertTrue(half / 3 <= sphereIndices.length / 3 / (2 * k));
+            assertTrue(far.parts[k].indices.length / 3 <= sphereIndices.length / 3 / (2 * k));
+        }
+
+        // Без сетки все части сливаются в одну
+        optimizer.setCellSize(0);
+        assertEquals(1, optimizer.optimize(source).nodes.first().parts.length);
+    }
+
+    @Test
+    public void cacheRoundTrip() throws IOException {
+        ModelData merged = new StaticModelOptimizer().optimize(sample());
+        File file = folder.newFile("model.bin");
+        StaticModelCache.save(file, 42, merged);
+        assertNull(StaticModelCache.load(file, 43));
+        ModelData loaded = StaticModelCache.load(file, 42);
+        assertNotNull(loaded);
+
+        assertEquals(merged.id, loaded.id);
+        assertEquals(merged.materials.size, loaded.materials.size);
+        for (int i = 0; i < merged.materials.size; i++) {
+            assertEquals(merged.materials.get(i).id, loaded.materials.get(i).id);
+            assertEquals(merged.materials.get(i).diffuse, loaded.materials.get(i).diffuse);
+        }
+        assertEquals(merged.meshes.size, loaded.meshes.size);
+        for (int i = 0; i < merged.meshes.size; i++) {
+            ModelMesh expected = merged.meshes.get(i), actual = loaded.meshes.get(i);
+            assertEquals(expected.id, actual.id);
+            assertEquals(expected.attributes.length, actual.attributes.length);
+            for (int a = 0; a < expected.attributes.length; a++) {
+                assertEquals(expected.attributes[a].usage, actual.attributes[a].usage);
+                assertEquals(expected.attributes[a].alias, actual.attributes[a].alias);
+            }
+            assertArrayEquals(expected.vertices, actual.vertices, 0);
+            assertEquals(expected.parts.length, actual.parts.length);
+            for (int p = 0; p < expected.parts.length; p++) {
+                assertEquals(expected.parts[p].id, actual.parts[p].id);
+                assertEquals(expected.parts[p].primitiveType, actual.parts[p].primitiveType);
+                assertArrayEquals(expected.parts[p].indices, actual.parts[p].indices);
+            }
+        }
+        ModelNodePart[] expectedParts = merged.nodes.first().parts, actualParts = loaded.nodes.first().parts;
+        assertEquals(expectedParts.length, actualParts.length);
+        for (int i = 0; i < expectedParts.length; i++) {
+            assertEquals(expectedParts[i].materialId, actualParts[i].materialId);
+            assertEquals(expectedParts[i].meshPartId, actualParts[i].meshPartId);
+        }
+
+        // Обрезанный файл не читается
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 1);
+        } finally {
+            raf.close();
+        }
+        assertNull(StaticModelCache.load(file, 42));
+    }
+}
@@ -0,0 +1,157 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.math.Matrix3;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.Vector3;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Матрица перепроекции для известных поворотов и выбор между отрисовкой сцены
+ * и перепроекцией (без GL) */
+
+public class TimewarpTest {
+    private static final long BUDGET = 16666667L;
+    private static final float EPSILON = 1e-5f;
+
+    private static void assertMatrixEquals(String message, Matrix3 expected, Matrix3 actual) {
+        for (int i = 0; i < 9; i++) {
+            assertEquals(message + ", element " + i, expected.val[i], actual.val[i], EPSILON);
+        }
+    }
+
+    /** Ожидаемая Rr^T * R через матрицы поворота libGDX */
+    private static Matrix3 reference(Quaternion rendered, Quaternion latest) {
+        Matrix3 r = new Matrix3().set(new Matrix4().set(new Quaternion(rendered).nor())).transpose();
+        return r.mul(new Matrix3().set(new Matrix4().set(new Quaternion(latest).nor())));
+    }
+
+    /** Матрица поворота вокруг оси (MathUtils.cosDeg в Matrix3.setToRotation табличный и неточен) */
+    private static Matrix3 rotation(Vector3 axis, float degrees) {
+        return new Matrix3().set(new Matrix4().set(new Quaternion(axis, degrees)));
+    }
+
+    @Test
+    public void rotationDeltaOfKnownRotations() {
+        Timewarp timewarp = new Timewarp(BUDGET);
+        Matrix3 out = new Matrix3();
+        Matrix3 expected = new Matrix3();
+
+        // Одинаковые ориентации - единичная матрица
+        Quaternion q = new Quaternion(Vector3.Y, 37);
+        assertMatrixEquals("same", expected.idt(), timewarp.rotationDelta(q, q, out));
+
+        // Поворот вокруг одной оси: разность углов
+        timewarp.rotationDelta(new Quaternion(Vector3.Y, 10), new Quaternion(Vector3.Y, 40), out);
+        assertMatrixEquals("yaw", rotation(Vector3.Y, 30), out);
+        timewarp.rotationDelta(new Quaternion(Vector3.X, 25), new Quaternion(Vector3.X, -5), out);
+        assertMatrixEquals("pitch", rotation(Vector3.X, -30), out);
+
+        // Исходная ориентация единичная - матрица самого поворота
+        timewarp.rotationDelta(new Quaternion(), new Quaternion(Vector3.Z, 90), out);
+        assertMatrixEquals("roll", rotation(Vector3.Z, 90), out);
+
+        // Ненормированные кватернионы
+        timewarp.rotationDelta(new Quaternion(Vector3.Y, 10).mul(2f), new Quaternion(Vector3.Y, 40).mul(0.5f), out);
+        assertMatrixEquals("unnormalized", rotation(Vector3.Y, 30), out);
+    }
+
+    @Test
+    public void rotationDeltaOfRandomRotations() {
+        Timewarp timewarp = new Timewarp(BUDGET);
+        Random random = new Random(3);
+        Quaternion rendered = new Quaternion(), latest = new Quaternion();
+        Matrix3 out = new Matrix3();
+        for (int i = 0; i < 1000; i++) {
+            rendered.set((float)random.nextGaussian(), (float)random.nextGaussian(), (float)random.nextGaussian(),
+                    (float)random.nextGaussian()).nor();
+            latest.set((float)random.nextGaussian(), (float)random.nextGaussian(), (float)random.nextGaussian(),
+                    (float)random.nextGaussian()).nor();
+            timewarp.rotationDelta(rendered, latest, out);
+            assertMatrixEquals("rendered " + rendered + ", latest " + latest, reference(rendered, latest), out);
+        }
+    }
+
+    /** getMatrix берет ориентацию последней отрисовки */
+    @Test
+    public void matrixFromRenderedOrientation() {
+        Timewarp timewarp = new Timewarp(BUDGET);
+        timewarp.rendered(new Quaternion(Vector3.Y, 20));
+        Matrix3 expected = rotation(Vector3.Y, 15);
+        assertMatrixEquals("delta", expected, timewarp.getMatrix(new Quaternion(Vector3.Y, 35)));
+        assertMatrixEquals("fresh", expected.idt(), timewarp.getMatrix(new Quaternion(Vector3.Y, 20)));
+    }
+
+    /** Центр картинки после поворота на угол a вокруг вертикали сдвигается на tan(a) / (2 tanH) */
+    @Test
+    public void reprojectsViewCenter() {
+        float tanH = 0.9f, tanV = 1f;
+        Vector2 uv = new Vector2();
+        Matrix3 m = new Matrix3();
+        assertTrue(Timewarp.reproject(m, 0.5f, 0.5f, tanH, tanV, uv));
+        assertEquals(0.5f, uv.x, EPSILON);
+        assertEquals(0.5f, uv.y, EPSILON);
+
+        float angle = 10;
+        m = rotation(Vector3.Y, angle);
+        assertTrue(Timewarp.reproject(m, 0.5f, 0.5f, tanH, tanV, uv));
+        assertEquals(0.5f - (float)Math.tan(Math.toRadians(angle)) / (2 * tanH), uv.x, EPSILON);
+        assertEquals(0.5f, uv.y, EPSILON);
+
+        // Направление позади нарисованной картинки
+        m = rotation(Vector3.Y, 180);
+        assertFalse(Timewarp.reproject(m, 0.5f, 0.5f, tanH, tanV, uv));
+    }
+
+    @Test
+    public void neverReprojectsWithoutImages() {
+        Timewarp timewarp = new Timewarp(BUDGET);
+        for (int i = 0; i < 10; i++) assertTrue(timewarp.beginFrame(BUDGET * 3, BUDGET * 2));
+        assertEquals(10, timewarp.getFreshFrames());
+        assertEquals(0, timewarp.getReprojectedFrames());
+    }
+
+    @Test
+    public void missedFrameIsReprojectedOnce() {
+        Timewarp timewarp = new Timewarp(BUDGET);
+        assertTrue(timewarp.beginFrame(0, 0));
+        timewarp.rendered(new Quaternion());
+
+        // Кадры в бюджете (в том числе интервал неизвестен)
+        assertTrue(timewarp.beginFrame(BUDGET, BUDGET / 2));
+        timewarp.rendered(new Quaternion());
+        assertTrue(timewarp.beginFrame(0, BUDGET));
+        timewarp.rendered(new Quaternion());
+
+        // Пропуск vsync или работа больше бюджета - перепроекция
+        assertFalse(timewarp.beginFrame(BUDGET * 2, BUDGET / 2));
+        assertTrue(timewarp.beginFrame(BUDGET, BUDGET / 2));
+        timewarp.rendered(new Quaternion());
+        assertFalse(timewarp.beginFrame(BUDGET, BUDGET + 1));
+        assertEquals(4, timewarp.getFreshFrames());
+        assertEquals(2, timewarp.getReprojectedFrames());
+    }
+
+    /** При постоянной перегрузке сцена рисуется через кадр, двух перепроекций подряд нет */
+    @Test
+    public void sustainedOverloadAlternates() {
+        Timewarp timewarp = new Timewarp(BUDGET);
+        assertTrue(timewarp.beginFrame(0, 0));
+        timewarp.rendered(new Quaternion());
+        boolean previous = true;
+        for (int i = 0; i < 100; i++) {
+            boolean fresh = timewarp.beginFrame(BUDGET * 2, BUDGET * 2);
+            assertTrue("frame " + i, fresh || previous);
+            assertTrue("frame " + i, fresh != previous);
+            if (fresh) timewarp.rendered(new Quaternion());
+            previous = fresh;
+        }
+        assertEquals(51, timewarp.getFreshFrames());
+        assertEquals(50, timewarp.getReprojectedFrames());
+    }
+}
@@ -0,0 +1,111 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.graphics.PerspectiveCamera;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Quaternion;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import java.util.Random;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/** Численная эквивалентность матриц, которые VRCamera.update(Quaternion) строит напрямую из кватерниона,
+ * прежнему построению через ось/угол, translate/rotate и полное умножение P * V */
+
+public class VRCameraTest {
+    private static final float PARALLAX = 0.4f;
+    private static final float EPSILON = 1e-4f;
+
+    @BeforeClass
+    public static void loadNatives() {
+        // Matrix4.mul в прежнем способе реализован нативно
+        GdxNativesLoader.load();
+    }
+
+    /** Прежнее построение матриц глаза (до прямого построения из кватерниона) */
+    private static void legacyUpdate(Quaternion q, Vector3 position, float parallax, PerspectiveCamera cam) {
+        float angle = 2 * (float)Math.acos(q.w);
+        float s = 1f / (float)Math.sqrt(1 - q.w * q.w);
+        cam.view.idt();
+        cam.view.translate(parallax, 0, 0);
+        cam.view.rotateRad(q.x * s, q.y * s, q.z * s, -angle);
+        cam.view.translate(-position.x, -position.y, -position.z);
+        cam.combined.set(cam.projection);
+        Matrix4.mul(cam.combined.val, cam.view.val);
+    }
+
+    private static void assertMatrixEquals(String message, Matrix4 expected, Matrix4 actual) {
+        for (int i = 0; i < 16; i++) {
+            float tolerance = EPSILON * Math.max(1, Math.abs(expected.val[i]));
+            assertEquals(message + ", element " + i, expected.val[i], actual.val[i], tolerance);
+        }
+    }
+
+    private static void assertVectorEquals(String message, Vector3 expected, Vector3 actual) {
+        assertEquals(message, expected.x, actual.x, EPSILON);
+        assertEquals(message, expected.y, actual.y, EPSILON);
+        assertEquals(message, expected.z, actual.z, EPSILON);
+    }
+
+    @Test
+    public void matchesLegacyLookAtPath() {
+        VRCamera camera = new VRCamera(90, PARALLAX, 0.1f, 30f, 1920, 1080);
+        camera.setPosition(-1.7f, 3f, 3f);
+        PerspectiveCamera left = new PerspectiveCamera(90, 960, 1080), right = new PerspectiveCamera(90, 960, 1080);
+        left.near = right.near = 0.1f;
+        left.far = right.far = 30f;
+        left.update();
+        right.update();
+
+        Random random = new Random(7);
+        Quaternion q = new Quaternion();
+        Vector3 direction = new Vector3(), up = new Vector3();
+        for (int i = 0; i < 1000; i++) {
+            // Случайная ориентация (в том числе с w < 0 - тот же поворот)
+            q.set((float)random.nextGaussian(), (float)random.nextGaussian(), (float)random.nextGaussian(),
+                    (float)random.nextGaussian()).nor();
+            // Прежний способ не определен для нулевого поворота (деление на sqrt(1 - w^2))
+            if (Math.abs(q.w) > 0.9999f) continue;
+            camera.update(q);
+            legacyUpdate(q, camera.getPosition(), PARALLAX, left);
+            legacyUpdate(q, camera.getPosition(), -PARALLAX, right);
+            String message = "orientation " + q;
+            assertMatrixEquals(message + ", left view", left.view, camera.getLeftCam().view);
+            assertMatrixEquals(message + ", right view", right.view, camera.getRightCam().view);
+            assertMatrixEquals(message + ", left combined", left.combined, camera.getLeftCam().combined);
+            assertMatrixEquals(message + ", right combined", right.combined, camera.getRightCam().combined);
+
+            // Векторы направления - как прежний поворот осей кватернионом
+            q.transform(direction.set(0, 0, 1));
+            q.transform(up.set(0, 1, 0));
+            assertVectorEquals(message + ", direction", direction, camera.getDirection());
+            assertVectorEquals(message + ", up", up, camera.getUp());
+            assertVectorEquals(message + ", upDirCross", direction.crs(up).nor(), camera.getUpDirCross());
+        }
+    }
+
+    /** Без поворота вид - только перенос на -position и +-parallax */
+    @Test
+    public void identityOrientation() {
+        VRCamera camera = new VRCamera(90, PARALLAX, 0.1f, 30f, 1920, 1080);
+        camera.setPosition(1, 2, 3);
+        camera.update(new Quaternion());
+        Matrix4 expected = new Matrix4().setToTranslation(PARALLAX - 1, -2, -3);
+        assertMatrixEquals("left view", expected, camera.getLeftCam().view);
+        expected.setToTranslation(-PARALLAX - 1, -2, -3);
+        assertMatrixEquals("right view", expected, camera.getRightCam().view);
+    }
+
+    /** Ненормированный кватернион дает тот же поворот, что и нормированный */
+    @Test
+    public void unnormalizedQuaternion() {
+        VRCamera camera = new VRCamera(90, PARALLAX, 0.1f, 30f, 1920, 1080);
+        Quaternion q = new Quaternion(0.2f, -0.5f, 0.3f, 0.7f).nor();
+        camera.update(q);
+        Matrix4 expected = new Matrix4(camera.getLeftCam().combined);
+        camera.update(new Quaternion(q).mul(3f));
+        assertMatrixEquals("combined", expected, camera.getLeftCam().combined);
+    }
+}
@@ -0,0 +1,133 @@
+package com.sinuxvr.sample;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Воспроизведение трассы без Gdx.graphics (каждый запрос снимка - шаг): подача показаний
+ * до текущего момента трассы, перевод меток времени в System.nanoTime(), переполнение колец, конец трассы */
+
+public class VRSensorManagerReplayTest {
+    /** Начало трассы в ее часах, заведомо далеко от System.nanoTime() */
+    private static final long START = 1000000000000000L;
+    private static final long GYRO_PERIOD = 5000000L;
+    private static final long ACCEL_PERIOD = 10000000L;
+    private static final int GYRO_COUNT = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Гироскоп каждые 5 мс и акселерометр каждые 10 мс в течение 0.5 с */
+    private File trace() throws IOException {
+        File file = folder.newFile("replay.trace");
+        SensorTraceWriter writer = new SensorTraceWriter(file, true, false);
+        for (int i = 0; i < GYRO_COUNT; i++) {
+            long timestamp = START + i * GYRO_PERIOD;
+            if (timestamp % ACCEL_PERIOD == 0) writer.write(SensorTraceWriter.TYPE_ACCELEROMETER, timestamp, 0, 0, 9.81f);
+            writer.write(SensorTraceWriter.TYPE_GYROSCOPE, timestamp, 0, 0, 0);
+        }
+        writer.close();
+        return file;
+    }
+
+    /** Число записей с меткой не позже заданного момента */
+    private static long count(long period, long traceTime, long last) {
+        if (traceTime < START) return 0;
+        return Math.min((traceTime - START) / period, (last - START) / period) + 1;
+    }
+
+    @Test
+    public void fixedStepFeedsSamplesUpToTraceTime() throws IOException {
+        VRSensorManagerReplay replay = new VRSensorManagerReplay(trace(), false);
+        SensorFusion fusion = replay.sensorFusion;
+        PoseSnapshot snapshot = new PoseSnapshot();
+        long lastGyro = START + (GYRO_COUNT - 1) * GYRO_PERIOD;
+        try {
+            for (int step = 1; !replay.isFinished(); step++) {
+                assertTrue("step " + step, step <= 31);
+                long before = System.nanoTime();
+                replay.getPoseSnapshot(snapshot);
+                long after = System.nanoTime();
+
+                // Шаг трассы фиксирован и не зависит от реального времени
+                long traceTime = START + step * VRSensorManagerReplay.FRAME_STEP_NANOS;
+                assertEquals("step " + step, count(GYRO_PERIOD, traceTime, lastGyro),
+                        fusion.gyroscopeRing.getWrittenCount());
+                assertEquals("step " + step, count(ACCEL_PERIOD, traceTime, lastGyro),
+                        fusion.accelerometerRing.getWrittenCount());
+                long gyroTimestamp = START + (fusion.gyroscopeRing.getWrittenCount() - 1) * GYRO_PERIOD;
+                assertEquals(gyroTimestamp, fusion.getPoseTimestamp());
+
+                // Метка снимка в отсчете System.nanoTime(): момент трассы соответствует моменту шага
+                long lag = traceTime - gyroTimestamp;
+                assertTrue("step " + step, snapshot.timestamp >= before - lag);
+                assertTrue("step " + step, snapshot.timestamp <= after - lag);
+            }
+            assertEquals(GYRO_COUNT, fusion.gyroscopeRing.getWrittenCount());
+            assertEquals(0, fusion.getDroppedCount());
+
+            // После конца трассы показаний больше нет
+            replay.getPoseSnapshot(snapshot);
+            assertEquals(GYRO_COUNT, fusion.gyroscopeRing.getWrittenCount());
+            assertTrue(replay.isFinished());
+        } finally {
+            replay.close();
+        }
+    }
+
+    /** Показания сверх емкости колец остаются в трассе до следующего шага, а не отбрасываются */
+    @Test
+    public void fullRingsHoldSamplesBack() throws IOException {
+        File file = folder.newFile("burst.trace");
+        SensorTraceWriter writer = new SensorTraceWriter(file, true, false);
+        int burst = 150;
+        for (int i = 0; i < burst; i++) writer.write(SensorTraceWriter.TYPE_GYROSCOPE, START + i, 0, 0, 0);
+        writer.close();
+
+        VRSensorManagerReplay replay = new VRSensorManagerReplay(file, false);
+        SensorFusion fusion = replay.sensorFusion;
+        int capacity = fusion.gyroscopeRing.capacity();
+        PoseSnapshot snapshot = new PoseSnapshot();
+        try {
+            long expected = 0;
+            while (expected < burst) {
+                assertFalse(replay.isFinished());
+                replay.getPoseSnapshot(snapshot);
+                expected = Math.min(expected + capacity, burst);
+                assertEquals(expected, fusion.gyroscopeRing.getWrittenCount());
+                assertEquals(START + expected - 1, fusion.getPoseTimestamp());
+            }
+            assertTrue(replay.isFinished());
+            assertEquals(0, fusion.getDroppedCount());
+        } finally {
+            replay.close();
+        }
+    }
+
+    /** Пауза останавливает трассу */
+    @Test
+    public void pausedReplayDoesNotAdvance() throws IOException {
+        VRSensorManagerReplay replay = new VRSensorManagerReplay(trace(), false);
+        SensorFusion fusion = replay.sensorFusion;
+        PoseSnapshot snapshot = new PoseSnapshot();
+        try {
+            replay.getPoseSnapshot(snapshot);
+            long written = fusion.gyroscopeRing.getWrittenCount();
+            replay.endTracking();
+            for (int i = 0; i < 10; i++) replay.getPoseSnapshot(snapshot);
+            assertEquals(written, fusion.gyroscopeRing.getWrittenCount());
+            replay.startTracking();
+            replay.getPoseSnapshot(snapshot);
+            assertEquals(count(GYRO_PERIOD, START + 2 * VRSensorManagerReplay.FRAME_STEP_NANOS, Long.MAX_VALUE),
+                    fusion.gyroscopeRing.getWrittenCount());
+        } finally {
+            replay.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.backends.headless.mock.graphics.MockGraphics;
+import com.badlogic.gdx.graphics.GL20;
+
+/** Графика headless-бэкенда с размером экрана и заглушкой GL
+ * MockGraphics из libgdx 1.9.3 сообщает экран 0x0 и не дает GL20. Номер кадра и время кадра
+ * берутся из исходного MockGraphics, который продвигает цикл HeadlessApplication */
+
+class HeadlessGraphics extends MockGraphics {
+    private final MockGraphics frames;      // Исходная графика приложения (счетчик кадров)
+    private final GL20 gl;
+    private final int width, height;
+
+    /** Конструктор
+     * @param frames - исходный Gdx.graphics headless-приложения
+     * @param gl - заглушка GL
+     * @param width, height - размер экрана (пикс) */
+    HeadlessGraphics(MockGraphics frames, GL20 gl, int width, int height) {
+        this.frames = frames;
+        this.gl = gl;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public GL20 getGL20() {
+        return gl;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getBackBufferWidth() {
+        return width;
+    }
+
+    @Override
+    public int getBackBufferHeight() {
+        return height;
+    }
+
+    @Override
+    public long getFrameId() {
+        return frames.getFrameId();
+    }
+
+    @Override
+    public float getDeltaTime() {
+        return frames.getDeltaTime();
+    }
+
+    @Override
+    public float getRawDeltaTime() {
+        return frames.getRawDeltaTime();
+    }
+
+    @Override
+    public int getFramesPerSecond() {
+        return frames.getFramesPerSecond();
+    }
+}
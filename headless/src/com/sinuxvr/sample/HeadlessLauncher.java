@@ -0,0 +1,36 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+
+/** Запуск GdxVR без устройства и GPU для длительных прогонов и замеров CPU-части кадра
+ * Для каждого профиля движения головы GdxVR работает в headless-приложении без ограничения
+ * частоты кадров, после чего печатаются кадры в секунду, время кадра и выделение памяти.
+ * android/assets должен быть в classpath (оттуда грузится сцена), кэши пишутся в рабочий каталог.
+ * Запуск: gradlew headless:soak [-Pframes=10000] [-Pmotion=FAST_FLICKS] */
+
+public class HeadlessLauncher {
+    /** Размер экрана (пикс), как у типичного телефона в горизонтальной ориентации */
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    /** Кадров прогрева JIT после загрузки сцены */
+    private static final int WARMUP_FRAMES = 600;
+
+    public static void main(String[] args) throws InterruptedException {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        if (frames <= 0) throw new IllegalArgumentException("Frame count must be positive");
+        VRSensorManagerSynthetic.Motion[] motions = args.length > 1
+                ? new VRSensorManagerSynthetic.Motion[] { VRSensorManagerSynthetic.Motion.valueOf(args[1]) }
+                : VRSensorManagerSynthetic.Motion.values();
+
+        HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+        config.renderInterval = 0;      // Без ограничения частоты кадров
+        for (VRSensorManagerSynthetic.Motion motion : motions) {
+            SoakRunner runner = new SoakRunner(new VRSensorManagerSynthetic(motion), WIDTH, HEIGHT, WARMUP_FRAMES, frames);
+            new HeadlessApplication(runner, config);
+            runner.await();
+            System.out.println("== " + motion);
+            System.out.println(runner.report());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.ApplicationListener;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.mock.graphics.MockGraphics;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+/** Прогон GdxVR заданное число кадров в headless-приложении
+ * Подменяет графику (размер экрана, заглушка GL), ждет загрузки сцены и прогрева JIT, затем
+ * замеряет время каждого render(), треугольники и смены состояния кадра, возраст ориентации при отрисовке глаза,
+ * выделение памяти потоком рендера и сборки мусора.
+ * После последнего кадра приложение завершается, результат доступен из другого потока через await() */
+
+class SoakRunner implements ApplicationListener {
+    private final GdxVR app;
+    private final int width, height;
+    private final int warmupFrames;         // Кадров прогрева после загрузки сцены
+    private final int measuredFrames;       // Кадров замера
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final Histogram frameTimes = new Histogram();
+    private final Histogram latchAges = new Histogram();    // Возраст ориентации стереопары кадра
+    private final com.sun.management.ThreadMXBean threads;     // null - замер выделений недоступен
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private int warmupLeft;
+    private int measured;
+    private long threadId;
+    private long startNanos, endNanos;      // Начало и конец замера
+    private long lastAllocated;             // Выделено потоком рендера к началу кадра (байт)
+    private long allocatedBytes;            // Выделено за замер (байт)
+    private long maxFrameBytes;             // Наибольшее выделение за кадр (байт)
+    private int allocatingFrames;           // Кадров с выделением памяти
+    private long triangles;                 // Треугольников за замер (оба глаза)
+    private long shaderSwitches, materialChanges, textureBinds;     // Смены состояния за замер (оба глаза)
+    private long gcCount, gcMillis;         // Сборки мусора за замер
+    private Throwable failure;              // Исключение из потока приложения
+
+    /** Конструктор
+     * @param sensorManager - источник ориентации
+     * @param width, height - размер экрана (пикс)
+     * @param warmupFrames - кадров прогрева после загрузки сцены
+     * @param measuredFrames - кадров замера */
+    SoakRunner(VRSensorManager sensorManager, int width, int height, int warmupFrames, int measuredFrames) {
+        // Без GPU нет FBO, поэтому глаза рисуются прямо на (несуществующий) экран
+        app = new GdxVR(sensorManager, false);
+        this.width = width;
+        this.height = height;
+        this.warmupFrames = warmupLeft = warmupFrames;
+        this.measuredFrames = measuredFrames;
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        threads = bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean)bean : null;
+    }
+
+    @Override
+    public void create() {
+        MockGL20 gl = new MockGL20();
+        Gdx.graphics = new HeadlessGraphics((MockGraphics)Gdx.graphics, gl, width, height);
+        Gdx.gl = Gdx.gl20 = gl;
+        threadId = Thread.currentThread().getId();
+        try {
+            app.create();
+        } catch (RuntimeException e) {
+            failure = e;
+            Gdx.app.exit();
+        }
+    }
+
+    @Override
+    public void render() {
+        // exit() срабатывает только к следующему кадру, лишние кадры не рисуются и не учитываются
+        if (measured == measuredFrames || failure != null) return;
+        try {
+            if (!app.isSceneLoaded() || warmupLeft > 0) {
+                if (app.isSceneLoaded()) warmupLeft--;
+                app.render();
+                if (app.isSceneLoaded() && warmupLeft == 0) begin();
+                return;
+            }
+
+            long start = System.nanoTime();
+            app.render();
+            frameTimes.record(System.nanoTime() - start);
+            triangles += app.getTrianglesDrawn();
+            // Без FBO перепроекции нет, поэтому статистика пакетника относится к этому кадру
+            StereoModelBatch batch = app.getModelBatch();
+            shaderSwitches += batch.getShaderSwitches();
+            materialChanges += batch.getMaterialChanges();
+            textureBinds += batch.getTextureBinds();
+            latchAges.record(app.getLatchAge());
+            if (threads != null) {
+                long allocated = threads.getThreadAllocatedBytes(threadId);
+                long frameBytes = allocated - lastAllocated;
+                lastAllocated = allocated;
+                if (frameBytes > 0) allocatingFrames++;
+                if (frameBytes > maxFrameBytes) maxFrameBytes = frameBytes;
+            }
+            if (++measured == measuredFrames) {
+                end();
+                Gdx.app.exit();
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+            Gdx.app.exit();
+        }
+    }
+
+    /** Начало замера */
+    private void begin() {
+        gcCount = gcMillis = 0;
+        for (GarbageCollectorMXBean gc : collectors) {
+            gcCount -= gc.getCollectionCount();
+            gcMillis -= gc.getCollectionTime();
+        }
+        if (threads != null) allocatedBytes = lastAllocated = threads.getThreadAllocatedBytes(threadId);
+        startNanos = System.nanoTime();
+    }
+
+    /** Конец замера */
+    private void end() {
+        endNanos = System.nanoTime();
+        if (threads != null) allocatedBytes = threads.getThreadAllocatedBytes(threadId) - allocatedBytes;
+        for (GarbageCollectorMXBean gc : collectors) {
+            gcCount += gc.getCollectionCount();
+            gcMillis += gc.getCollectionTime();
+        }
+    }
+
+    @Override
+    public void resize(int width, int height) {
+        app.resize(width, height);
+    }
+
+    @Override
+    public void pause() {
+        app.pause();
+    }
+
+    @Override
+    public void resume() {
+        app.resume();
+    }
+
+    @Override
+    public void dispose() {
+        try {
+            app.dispose();
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    /** Ожидание конца прогона
+     * @throws IllegalStateException - если прогон упал */
+    void await() throws InterruptedException {
+        finished.await();
+        if (failure != null) throw new IllegalStateException("Soak run failed", failure);
+    }
+
+    /** Отчет: кадры в секунду, время кадра, треугольники, смены состояния, возраст ориентации, выделение памяти и сборки мусора */
+    String report() {
+        double seconds = (endNanos - startNanos) * 1e-9;
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.US, "%d frames (+%d warm-up) in %.3f s, %.1f fps%n",
+                measured, warmupFrames, seconds, measured / seconds));
+        text.append(String.format(Locale.US, "frame  p50=%.3f p99=%.3f max=%.3f mean=%.3f ms%n",
+                frameTimes.getPercentile(0.5f) * 1e-6, frameTimes.getPercentile(0.99f) * 1e-6,
+                frameTimes.getMax() * 1e-6, frameTimes.getMean() * 1e-6));
+        text.append(String.format(Locale.US, "tris   %.1f per frame (both eyes)%n", (double)triangles / measured));
+        text.append(String.format(Locale.US,
+                "state  %.1f shader switches, %.1f material changes, %.1f texture binds per frame%n",
+                (double)shaderSwitches / measured, (double)materialChanges / measured, (double)textureBinds / measured));
+        text.append(String.format(Locale.US, "pose   p50=%.3f p99=%.3f max=%.3f ms old at latch%n",
+                latchAges.getPercentile(0.5f) * 1e-6, latchAges.getPercentile(0.99f) * 1e-6, latchAges.getMax() * 1e-6));
+        if (threads != null) {
+            text.append(String.format(Locale.US, "alloc  %.1f B/frame, %d frames allocating, max %d B/frame%n",
+                    (double)allocatedBytes / measured, allocatingFrames, maxFrameBytes));
+        } else {
+            text.append(String.format("alloc  unavailable on this JVM%n"));
+        }
+        text.append(String.format(Locale.US, "gc     %d collections, %d ms", gcCount, gcMillis));
+        return text.toString();
+    }
+}
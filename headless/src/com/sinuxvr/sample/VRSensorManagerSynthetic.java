@@ -0,0 +1,149 @@
+package com.sinuxvr.sample;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.Quaternion;
+
+/** Параметрическое движение головы вместо датчиков (для прогонов без устройства)
+ * Ориентация и угловая скорость вычисляются по формуле профиля движения и публикуются через
+ * PoseBuffer раз за кадр (Gdx.graphics.getFrameId()). Время профиля идет фиксированным шагом
+ * на кадр, поэтому при любой скорости прогона кадры видят одну и ту же последовательность поз */
+
+class VRSensorManagerSynthetic implements VRSensorManager {
+    /** Шаг времени профиля за кадр (с) */
+    static final float FRAME_STEP = 1f / 60;
+    /** Шаг численного дифференцирования ориентации (с) */
+    private static final float DIFF_STEP = 1e-3f;
+
+    /** Профили движения */
+    enum Motion {
+        IDLE,           // Голова почти неподвижна (дыхание)
+        SLOW_PAN,       // Плавный непрерывный поворот по кругу
+        FAST_FLICKS,    // Резкие повороты на 60 градусов с паузами
+        JITTER          // Покой с высокочастотным дрожанием
+    }
+
+    private final Motion motion;
+    private final PoseBuffer poseBuffer = new PoseBuffer();
+    private final PoseSnapshot snapshot = new PoseSnapshot();
+    private final Quaternion headQuaternion = new Quaternion();
+    private final Quaternion before = new Quaternion();
+    private final Quaternion after = new Quaternion();
+    private long lastFrameId = -1;              // Кадр, в котором поза вычислялась последний раз
+    private boolean tracking = true;
+    private float time;                         // Время профиля (с)
+
+    /** Конструктор
+     * @param motion - профиль движения */
+    VRSensorManagerSynthetic(Motion motion) {
+        this.motion = motion;
+    }
+
+    @Override
+    public boolean isGyroAvailable() {
+        return true;
+    }
+
+    @Override
+    public boolean isMagAvailable() {
+        return true;
+    }
+
+    @Override
+    public void startTracking() {
+        tracking = true;
+    }
+
+    @Override
+    public void endTracking() {
+        tracking = false;
+    }
+
+    /** Движение задано точно, корректировать нечего */
+    @Override
+    public void useDriftCorrection(boolean use) { }
+
+    @Override
+    public void useTimestampIntegration(boolean use) { }
+
+    @Override
+    public boolean setOrientationFilter(OrientationFilter.Type type) {
+        return true;
+    }
+
+    /** Продвижение профиля (раз за кадр) и копирование последнего снимка ориентации */
+    @Override
+    public PoseSnapshot getPoseSnapshot(PoseSnapshot out) {
+        step();
+        return out.set(poseBuffer.read());
+    }
+
+    @Override
+    public Quaternion getHeadQuaternion() {
+        return getPoseSnapshot(snapshot).getOrientation(headQuaternion);
+    }
+
+    @Override
+    public Quaternion getPredictedHeadQuaternion(long targetNanos) {
+        return getPoseSnapshot(snapshot).predict(targetNanos, headQuaternion);
+    }
+
+    /** Вычисление позы на текущий момент профиля и публикация снимка */
+    private void step() {
+        long frameId = Gdx.graphics.getFrameId();
+        if (frameId == lastFrameId) return;
+        lastFrameId = frameId;
+        if (tracking) time += FRAME_STEP;
+
+        PoseSnapshot published = poseBuffer.beginWrite();
+        orientation(time, headQuaternion);
+        published.x = headQuaternion.x;
+        published.y = headQuaternion.y;
+        published.z = headQuaternion.z;
+        published.w = headQuaternion.w;
+
+        // Угловая скорость в осях головы: 2 * vec(q(t - h)^-1 * q(t + h)) / 2h
+        orientation(time - DIFF_STEP, before).conjugate();
+        orientation(time + DIFF_STEP, after);
+        before.mul(after);
+        published.wX = before.x / DIFF_STEP;
+        published.wY = before.y / DIFF_STEP;
+        published.wZ = before.z / DIFF_STEP;
+        published.aX = published.aY = published.aZ = 0;
+        published.timestamp = System.nanoTime();
+        poseBuffer.publish();
+    }
+
+    /** Ориентация головы в момент t: рыскание (Y), затем тангаж (X)
+     * @return out */
+    private Quaternion orientation(float t, Quaternion out) {
+        float yaw, pitch;
+        switch (motion) {
+            case SLOW_PAN:
+                yaw = 0.25f * t;
+                pitch = 0.1f * (float)Math.sin(0.2f * t);
+                break;
+            case FAST_FLICKS: {
+                // Поворот за 0.15 с каждые 0.8 с, направление чередуется
+                float period = 0.8f, turn = 0.15f;
+                int flick = (int)(t / period);
+                float phase = Math.min((t - flick * period) / turn, 1f);
+                float smooth = phase * phase * (3 - 2 * phase);
+                float from = (flick & 1) == 0 ? -0.5f : 0.5f;
+                yaw = (float)Math.toRadians(60) * (from + ((flick & 1) == 0 ? smooth : -smooth));
+                pitch = (float)Math.toRadians(20) * ((flick & 2) == 0 ? smooth : 1 - smooth) - 0.17f;
+                break;
+            }
+            case JITTER:
+                // Несоизмеримые частоты 11-37 Гц с амплитудой около половины градуса
+                yaw = 0.01f * (float)Math.sin(0.3f * t)
+                        + 0.005f * (float)Math.sin(71f * t) + 0.003f * (float)Math.sin(157f * t + 1.3f);
+                pitch = 0.005f * (float)Math.sin(0.25f * t)
+                        + 0.004f * (float)Math.sin(89f * t + 0.7f) + 0.003f * (float)Math.sin(233f * t + 2.1f);
+                break;
+            default:
+                yaw = 0.01f * (float)Math.sin(0.3f * t);
+                pitch = 0.005f * (float)Math.sin(0.25f * t);
+        }
+        return out.setEulerAnglesRad(yaw, pitch, 0);
+    }
+}